@@ -1,6 +1,9 @@
 package halfpipe.validation;
 
 import com.google.common.base.Joiner;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Ordering;
 import com.google.common.collect.Sets;
@@ -20,6 +23,27 @@ import static java.lang.String.format;
  */
 public class Validator {
     private final ValidatorFactory factory = Validation.buildDefaultValidatorFactory();
+    // validators are thread-safe, no need to ask the factory for one per call
+    private final javax.validation.Validator validator = factory.getValidator();
+    private final LoadingCache<Class<?>, Boolean> constrained = CacheBuilder.newBuilder()
+            .weakKeys()
+            .build(new CacheLoader<Class<?>, Boolean>() {
+                @Override
+                public Boolean load(Class<?> type) {
+                    return validator.getConstraintsForClass(type).isBeanConstrained();
+                }
+            });
+
+    /**
+     * Returns whether instances of the given class have any constraints (on the class, its properties or
+     * cascaded properties). Objects of an unconstrained class are always valid.
+     *
+     * @param type   a class
+     * @return {@code true} if validating an instance of {@code type} could produce errors
+     */
+    public boolean isConstrained(Class<?> type) {
+        return constrained.getUnchecked(type);
+    }
 
     /**
      * Validates the given object, and returns a list of error messages, if any. If the returned
@@ -42,8 +66,12 @@ public class Validator {
     * @return a list of error messages, if any, regarding {@code o}'s validity
     */
     public <T> ImmutableList<String> validate(T o, Class<?>... groups) {
+        final Set<ConstraintViolation<T>> violations = validator.validate(o, groups);
+        if (violations.isEmpty()) {
+            return ImmutableList.of();
+        }
+
         final Set<String> errors = Sets.newHashSet();
-        final Set<ConstraintViolation<T>> violations = factory.getValidator().validate(o,groups);
         for (ConstraintViolation<T> v : violations) {
             if (v.getConstraintDescriptor().getAnnotation() instanceof ValidationMethod) {
                 final ImmutableList<Path.Node> nodes = ImmutableList.copyOf(v.getPropertyPath());
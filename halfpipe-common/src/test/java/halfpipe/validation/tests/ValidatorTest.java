@@ -30,6 +30,10 @@ public class ValidatorTest {
         }
     }
 
+    public static class Unconstrained {
+        private String anything = null;
+    }
+
     private final Validator validator = new Validator();
 
     @Test
@@ -50,4 +54,10 @@ public class ValidatorTest {
         assertThat(validator.validate(example),
                    is(ImmutableList.<String>of()));
     }
+
+    @Test
+    public void knowsWhetherAClassHasConstraints() throws Exception {
+        assertThat(validator.isConstrained(Example.class), is(true));
+        assertThat(validator.isConstrained(Unconstrained.class), is(false));
+    }
 }
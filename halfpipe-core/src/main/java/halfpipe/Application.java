@@ -44,6 +44,8 @@ public abstract class Application<C> {
             registerRootContext(contextClass); //TODO: fix shell
 
             rootContext.refresh();
+            // closing the root context on exit stops what it started, like metrics reporters
+            rootContext.registerShutdownHook();
 
             if (serverViewContextClass != null) {
                 registerCtx(rootContext).registerSingleton("viewContextClass", serverViewContextClass);
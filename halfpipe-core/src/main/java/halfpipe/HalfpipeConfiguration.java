@@ -10,7 +10,9 @@ import com.google.common.collect.Maps;
 import com.netflix.config.ConcurrentCompositeConfiguration;
 import com.netflix.config.ConfigurationManager;
 import com.netflix.config.DynamicPropertyFactory;
+import com.sun.jersey.api.container.filter.GZIPContentEncodingFilter;
 import com.sun.jersey.api.core.PackagesResourceConfig;
+import com.sun.jersey.api.core.ResourceConfig;
 import com.sun.jersey.api.json.JSONConfiguration;
 import com.sun.jersey.spi.container.servlet.ServletContainer;
 import halfpipe.jersey.HalfpipeResources;
@@ -55,6 +57,11 @@ public class HalfpipeConfiguration {
         props.put(ServletContainer.RESOURCE_CONFIG_CLASS, HalfpipeResourceConfig.class.getName());
         props.put(PackagesResourceConfig.PROPERTY_PACKAGES, jerseyPackages);
         props.put(JSONConfiguration.FEATURE_POJO_MAPPING, Boolean.TRUE.toString());
+        if (config.http.gzip.enabled.get()) {
+            // inflate Content-Encoding: gzip entities before they reach the message body readers,
+            // responses are compressed by the GzipFilter in HalfpipeServer
+            props.put(ResourceConfig.PROPERTY_CONTAINER_REQUEST_FILTERS, GZIPContentEncodingFilter.class.getName());
+        }
         return props;
     }
 
@@ -5,18 +5,30 @@ import com.google.common.base.Joiner;
 import com.google.common.collect.Iterables;
 import com.sun.jersey.spi.spring.container.servlet.SpringServlet;
 import com.yammer.metrics.web.DefaultWebappMetricsFilter;
+import com.yammer.metrics.core.Gauge;
+import com.yammer.metrics.core.MetricName;
+import com.yammer.metrics.core.MetricsRegistry;
 import halfpipe.HalfpipeConfiguration;
+import halfpipe.configuration.CallbackDispatcher;
 import halfpipe.configuration.Configuration;
+import halfpipe.configuration.ConnectorConfiguration;
+import halfpipe.configuration.GzipConfiguration;
+import halfpipe.configuration.PropertyCallback;
+import halfpipe.configuration.ThreadPoolConfiguration;
 import halfpipe.jersey.HalfpipeResources;
 import halfpipe.logging.Log;
+import halfpipe.metrics.RequestTimingFilter;
 import org.apache.commons.cli.CommandLine;
 import org.eclipse.jetty.server.Handler;
 import org.eclipse.jetty.server.Server;
 import org.eclipse.jetty.server.handler.DefaultHandler;
 import org.eclipse.jetty.server.handler.HandlerList;
+import org.eclipse.jetty.server.nio.SelectChannelConnector;
 import org.eclipse.jetty.servlet.DefaultServlet;
 import org.eclipse.jetty.servlet.FilterHolder;
 import org.eclipse.jetty.servlet.ServletHolder;
+import org.eclipse.jetty.servlets.GzipFilter;
+import org.eclipse.jetty.util.thread.QueuedThreadPool;
 import org.eclipse.jetty.webapp.WebAppContext;
 import org.springframework.beans.factory.config.ConfigurableBeanFactory;
 import org.springframework.shell.core.CommandMarker;
@@ -35,6 +47,10 @@ import javax.servlet.Servlet;
 import java.util.EnumSet;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
 
 import static halfpipe.Halfpipe.ROOT_URL_PATTERN;
 import static halfpipe.HalfpipeConfiguration.jerseyProperties;
@@ -51,6 +67,15 @@ public class HalfpipeServer implements CommandMarker {
     @Inject
     Configuration config;
 
+    @Inject
+    MetricsRegistry metricsRegistry;
+
+    // read by the configuration callback and drain threads
+    private volatile Server server;
+    private volatile QueuedThreadPool threadPool;
+    private volatile int maxQueued;
+    private volatile SelectChannelConnector connector;
+
     @CliAvailabilityIndicator({"server"})
     public boolean isCommandAvailable() {
         return true;
@@ -67,8 +92,6 @@ public class HalfpipeServer implements CommandMarker {
     }
 
     public void run(CommandLine commandLine) throws Exception {
-        Server server = new Server(config.http.port.get());
-
         WebAppContext context = new WebAppContext();
         context.setContextPath("/");
         context.setResourceBase("."); //TODO: has to be set to non null?
@@ -76,9 +99,15 @@ public class HalfpipeServer implements CommandMarker {
 
         //context.addServlet(JspServlet.class, "*.jsp");*/
 
+        // first, so that the time of every other filter is counted
+        addFilter(context, "requestTimingFilter", new RequestTimingFilter(config.http.timing), ROOT_URL_PATTERN);
         addFilter(context, "springSecurityFilterChain", new DelegatingFilterProxy(), ROOT_URL_PATTERN);
         addFilter(context, "webappMetricsFilter", new DefaultWebappMetricsFilter(), ROOT_URL_PATTERN);
 
+        if (config.http.gzip.enabled.get()) {
+            addGzipFilter(context, config.http.gzip);
+        }
+
         context.getServletContext().setAttribute(WebApplicationContext.ROOT_WEB_APPLICATION_CONTEXT_ATTRIBUTE, rootContext);
 
         ConfigurableBeanFactory beanFactory = (ConfigurableBeanFactory) rootContext.getAutowireCapableBeanFactory();
@@ -109,12 +138,235 @@ public class HalfpipeServer implements CommandMarker {
 
         HandlerList handlers = new HandlerList();
         handlers.setHandlers(new Handler[] { context, new DefaultHandler() });
-        server.setHandler(handlers);
+
+        start(handlers);
+        server.join();
+    }
+
+    /**
+     * Starts jetty with the configured thread pool and connector, then follows changes to the http configuration.
+     */
+    Server start(Handler handler) throws Exception {
+        final Server server = new Server();
+        threadPool = createThreadPool(config.http.threadPool);
+        maxQueued = config.http.threadPool.maxQueued.get();
+        connector = createConnector(config.http.connector);
+        server.setThreadPool(threadPool);
+        server.addConnector(connector);
+        server.setHandler(handler);
+        this.server = server;
 
         LOG.info("staring jetty on port {}", config.http.port.get());
         server.start();
-        LOG.info("waiting for connections on port {}", config.http.port.get());
-        server.join();
+        watchConfiguration();
+        LOG.info("waiting for connections on port {}", connector.getLocalPort());
+        return server;
+    }
+
+    /**
+     * Applies changes to the http configuration to the running server, once per poll however many changed.
+     */
+    private void watchConfiguration() {
+        final Runnable reconfigure = CallbackDispatcher.dispatch(new Runnable() {
+            @Override
+            public void run() {
+                reconfigure();
+            }
+
+            @Override
+            public String toString() {
+                return "HalfpipeServer.reconfigure";
+            }
+        }, PropertyCallback.Dispatch.COALESCED, "http");
+
+        config.http.port.addCallback(reconfigure);
+        ThreadPoolConfiguration poolConfig = config.http.threadPool;
+        poolConfig.minThreads.addCallback(reconfigure);
+        poolConfig.maxThreads.addCallback(reconfigure);
+        poolConfig.maxQueued.addCallback(reconfigure);
+        poolConfig.idleTimeout.addCallback(reconfigure);
+        ConnectorConfiguration connectorConfig = config.http.connector;
+        connectorConfig.acceptors.addCallback(reconfigure);
+        connectorConfig.acceptQueueSize.addCallback(reconfigure);
+        connectorConfig.idleTimeout.addCallback(reconfigure);
+        connectorConfig.lowResourcesIdleTimeout.addCallback(reconfigure);
+        connectorConfig.requestHeaderSize.addCallback(reconfigure);
+        connectorConfig.requestBufferSize.addCallback(reconfigure);
+        connectorConfig.responseHeaderSize.addCallback(reconfigure);
+        connectorConfig.responseBufferSize.addCallback(reconfigure);
+        connectorConfig.reuseAddress.addCallback(reconfigure);
+    }
+
+    synchronized void reconfigure() {
+        if (server == null || !server.isRunning()) {
+            return;
+        }
+        resizeThreadPool(config.http.threadPool);
+
+        ConnectorConfiguration connectorConfig = config.http.connector;
+        if (config.http.port.get() != connector.getPort()) {
+            replaceConnector(connectorConfig);
+            return;
+        }
+        if (connectorConfig.acceptors.get() != connector.getAcceptors()
+                || connectorConfig.acceptQueueSize.get() != connector.getAcceptQueueSize()
+                || connectorConfig.reuseAddress.get() != connector.getReuseAddress()) {
+            LOG.warn("acceptors, acceptQueueSize and reuseAddress only change with the port or on restart");
+        }
+        // only affects connections accepted from now on
+        configureConnector(connector, connectorConfig);
+    }
+
+    private void resizeThreadPool(ThreadPoolConfiguration poolConfig) {
+        int minThreads = poolConfig.minThreads.get();
+        int maxThreads = poolConfig.maxThreads.get();
+        if (minThreads > maxThreads) {
+            LOG.warn("Ignoring thread pool minThreads {} above maxThreads {}", minThreads, maxThreads);
+            return;
+        }
+        // keep min <= max at every step
+        if (maxThreads >= threadPool.getMinThreads()) {
+            threadPool.setMaxThreads(maxThreads);
+            threadPool.setMinThreads(minThreads);
+        } else {
+            threadPool.setMinThreads(minThreads);
+            threadPool.setMaxThreads(maxThreads);
+        }
+        threadPool.setMaxIdleTimeMs((int) poolConfig.idleTimeout.get().toMilliseconds());
+
+        if (poolConfig.maxQueued.get() != maxQueued) {
+            LOG.warn("thread pool maxQueued only changes on restart, still {}", maxQueued);
+        }
+        LOG.info("thread pool resized to {}-{} threads", minThreads, maxThreads);
+    }
+
+    /**
+     * Opens a connector on the new port and then drains the old one: it stops accepting, but its open
+     * connections finish their requests until they close or the drain timeout passes.
+     */
+    private void replaceConnector(ConnectorConfiguration connectorConfig) {
+        final SelectChannelConnector old = connector;
+        final SelectChannelConnector replacement = createConnector(connectorConfig);
+        try {
+            server.addConnector(replacement);
+            replacement.start();
+        } catch (Exception e) {
+            LOG.error(e, "Unable to open port {}, staying on port {}", replacement.getPort(), old.getPort());
+            server.removeConnector(replacement);
+            return;
+        }
+        connector = replacement;
+        LOG.info("waiting for connections on port {}, draining port {}", replacement.getPort(), old.getPort());
+
+        final long drainMillis = connectorConfig.drainTimeout.get().toMilliseconds();
+        Thread drain = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                drain(old, drainMillis);
+            }
+        }, "halfpipe-http-drain-" + old.getPort());
+        drain.setDaemon(true);
+        drain.start();
+    }
+
+    private void drain(SelectChannelConnector old, long drainMillis) {
+        try {
+            old.close();
+            long deadline = System.currentTimeMillis() + drainMillis;
+            while (old.getConnectionsOpen() > 0 && System.currentTimeMillis() < deadline) {
+                TimeUnit.MILLISECONDS.sleep(100);
+            }
+            int open = old.getConnectionsOpen();
+            if (open > 0) {
+                LOG.warn("closing {} connections still open on port {}", open, old.getPort());
+            }
+            old.stop();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            LOG.error(e, "Error draining port {}", old.getPort());
+        } finally {
+            server.removeConnector(old);
+        }
+        LOG.info("drained port {}", old.getPort());
+    }
+
+    private QueuedThreadPool createThreadPool(ThreadPoolConfiguration poolConfig) {
+        int maxQueued = poolConfig.maxQueued.get();
+        final BlockingQueue<Runnable> queue;
+        if (maxQueued > 0) {
+            queue = new ArrayBlockingQueue<Runnable>(maxQueued);
+        } else {
+            queue = new LinkedBlockingQueue<Runnable>();
+        }
+
+        final QueuedThreadPool threadPool = new QueuedThreadPool(queue);
+        threadPool.setName("halfpipe-http");
+        threadPool.setMinThreads(poolConfig.minThreads.get());
+        threadPool.setMaxThreads(poolConfig.maxThreads.get());
+        threadPool.setMaxIdleTimeMs((int) poolConfig.idleTimeout.get().toMilliseconds());
+
+        // lets us tell a starved pool (no idle threads) from a backed up one (deep queue)
+        metricsRegistry.newGauge(threadPoolMetric("threads"), new Gauge<Integer>() {
+            @Override
+            public Integer value() {
+                return threadPool.getThreads();
+            }
+        });
+        metricsRegistry.newGauge(threadPoolMetric("idle-threads"), new Gauge<Integer>() {
+            @Override
+            public Integer value() {
+                return threadPool.getIdleThreads();
+            }
+        });
+        metricsRegistry.newGauge(threadPoolMetric("queue-size"), new Gauge<Integer>() {
+            @Override
+            public Integer value() {
+                return queue.size();
+            }
+        });
+        metricsRegistry.newGauge(threadPoolMetric("low-on-threads"), new Gauge<Boolean>() {
+            @Override
+            public Boolean value() {
+                return threadPool.isLowOnThreads();
+            }
+        });
+        return threadPool;
+    }
+
+    private MetricName threadPoolMetric(String name) {
+        return new MetricName(QueuedThreadPool.class, name);
+    }
+
+    private SelectChannelConnector createConnector(ConnectorConfiguration connectorConfig) {
+        SelectChannelConnector connector = new SelectChannelConnector();
+        connector.setPort(config.http.port.get());
+        connector.setAcceptors(connectorConfig.acceptors.get());
+        connector.setAcceptQueueSize(connectorConfig.acceptQueueSize.get());
+        connector.setReuseAddress(connectorConfig.reuseAddress.get());
+        // counts open connections, to know when a replaced connector has drained
+        connector.setStatsOn(true);
+        configureConnector(connector, connectorConfig);
+        return connector;
+    }
+
+    private void configureConnector(SelectChannelConnector connector, ConnectorConfiguration connectorConfig) {
+        connector.setMaxIdleTime((int) connectorConfig.idleTimeout.get().toMilliseconds());
+        connector.setLowResourcesMaxIdleTime((int) connectorConfig.lowResourcesIdleTimeout.get().toMilliseconds());
+        connector.setRequestHeaderSize((int) connectorConfig.requestHeaderSize.get().toBytes());
+        connector.setRequestBufferSize((int) connectorConfig.requestBufferSize.get().toBytes());
+        connector.setResponseHeaderSize((int) connectorConfig.responseHeaderSize.get().toBytes());
+        connector.setResponseBufferSize((int) connectorConfig.responseBufferSize.get().toBytes());
+    }
+
+    private FilterHolder addGzipFilter(WebAppContext context, GzipConfiguration gzipConfig) {
+        FilterHolder filterHolder = addFilter(context, "gzipFilter", new GzipFilter(), ROOT_URL_PATTERN);
+        filterHolder.setInitParameter("minGzipSize", String.valueOf(gzipConfig.minimumEntitySize.get().toBytes()));
+        filterHolder.setInitParameter("bufferSize", String.valueOf(gzipConfig.bufferSize.get().toBytes()));
+        filterHolder.setInitParameter("mimeTypes", gzipConfig.compressedMimeTypes.get());
+        filterHolder.setInitParameter("deflateCompressionLevel", String.valueOf(gzipConfig.compressionLevel.get()));
+        filterHolder.setInitParameter("vary", gzipConfig.vary.get());
+        return filterHolder;
     }
 
     private ServletHolder addServlet(WebAppContext context, String name, Servlet servlet, String viewPattern) {
@@ -0,0 +1,129 @@
+package halfpipe.configuration;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.yammer.metrics.Metrics;
+import com.yammer.metrics.core.MetricName;
+import com.yammer.metrics.core.Timer;
+import com.yammer.metrics.core.TimerContext;
+import halfpipe.logging.Log;
+
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Wraps {@link PropertyCallback} callbacks to run as their {@link PropertyCallback.Dispatch} says. Each run is
+ * timed by a {@code PropertyCallback} timer named after the callback class and scoped by the property, or the
+ * configuration class for a coalesced class callback. Exceptions are logged rather than left to the thread
+ * changing the property.
+ *
+ * Asynchronous callbacks share {@link #THREADS_PROPERTY} threads, 2 by default.
+ */
+public class CallbackDispatcher {
+    public static final String THREADS_PROPERTY = "halfpipe.propertyCallbacks.threads";
+
+    private static final Log LOG = Log.forThisClass();
+
+    private static final ThreadPoolExecutor EXECUTOR;
+    static {
+        final int threads = Integer.getInteger(THREADS_PROPERTY, 2);
+        EXECUTOR = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+                new ThreadFactoryBuilder().setNameFormat("property-callback-%d")
+                                          .setDaemon(true)
+                                          .build());
+        EXECUTOR.allowCoreThreadTimeOut(true);
+    }
+
+    private CallbackDispatcher() {
+    }
+
+    public static Runnable dispatch(Runnable callback, PropertyCallback.Dispatch dispatch, String scope) {
+        final Timer timer = Metrics.newTimer(new MetricName(PropertyCallback.class, callback.getClass().getSimpleName(),
+                scope), TimeUnit.MILLISECONDS, TimeUnit.SECONDS);
+        final Timed timed = new Timed(callback, timer);
+        switch (dispatch) {
+            case ASYNC:
+                return new Async(timed, false);
+            case COALESCED:
+                return new Async(timed, true);
+            default:
+                return timed;
+        }
+    }
+
+    private static class Timed implements Runnable {
+        private final Runnable callback;
+        private final Timer timer;
+
+        Timed(Runnable callback, Timer timer) {
+            this.callback = callback;
+            this.timer = timer;
+        }
+
+        @Override
+        public void run() {
+            final TimerContext context = timer.time();
+            try {
+                callback.run();
+            } catch (RuntimeException e) {
+                LOG.error(e, "Error running property callback {}", callback);
+            } finally {
+                context.stop();
+            }
+        }
+
+        @Override
+        public String toString() {
+            return callback.toString();
+        }
+    }
+
+    private static class Async implements Runnable {
+        private final Timed timed;
+        private final boolean coalesce;
+        /** whether a run is queued and yet to start */
+        private final AtomicBoolean pending = new AtomicBoolean();
+
+        private final Runnable task = new Runnable() {
+            @Override
+            public void run() {
+                pending.set(false);
+                synchronized (Async.this) {
+                    timed.run();
+                }
+            }
+        };
+
+        private final Runnable submit = new Runnable() {
+            @Override
+            public void run() {
+                EXECUTOR.execute(task);
+            }
+        };
+
+        Async(Timed timed, boolean coalesce) {
+            this.timed = timed;
+            this.coalesce = coalesce;
+        }
+
+        /**
+         * Called when the property changes
+         */
+        @Override
+        public void run() {
+            if (!pending.compareAndSet(false, true)) {
+                // the queued run will see this change too
+                return;
+            }
+            if (!coalesce || !PollBatch.defer(submit)) {
+                submit.run();
+            }
+        }
+
+        @Override
+        public String toString() {
+            return timed.toString();
+        }
+    }
+}
@@ -23,5 +23,7 @@ public class Configuration {
 
     public LoggingConfiguration logging;
 
+    public MetricsConfiguration metrics;
+
     public Class<?> appConfigClass = DefaultContext.class;
 }
@@ -3,7 +3,11 @@ package halfpipe.configuration;
 import static org.springframework.util.ReflectionUtils.*;
 
 import com.google.common.base.Throwables;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
 import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 import com.netflix.config.*;
 import org.apache.commons.lang.StringUtils;
 import org.springframework.core.convert.ConversionService;
@@ -12,6 +16,9 @@ import org.springframework.util.Assert;
 import javax.ws.rs.DefaultValue;
 import java.lang.reflect.*;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 /**
  * User: spencergibb
  * Date: 10/4/12
@@ -19,8 +26,6 @@ import java.util.List;
  * TODO: json config http://svn.apache.org/viewvc/commons/proper/configuration/branches/configuration2_experimental/src/main/java/org/apache/commons/configuration2/
  */
 public class ConfigurationBuilder {
-    public static ConversionService conversions;
-
     public abstract class PropBuilder<P, T> {
         abstract Class<P> getPropType();
         abstract T defaultVal();
@@ -103,7 +108,38 @@ public class ConfigurationBuilder {
         Object defaultVal() { return null; }
 
         DynamicProp<Object> getProp(String propName, Object defaultVal, Class<?> valueClass) {
-            return new DynamicProp<Object>(propName, defaultVal, valueClass);
+            return new DynamicProp<Object>(propName, defaultVal, valueClass, conversionService);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    class MapBuilder extends PropBuilder<DynamicPropMap, Map<String, Object>> {
+        Class<DynamicPropMap> getPropType() {
+            return DynamicPropMap.class;
+        }
+
+        Map<String, Object> defaultVal() { return null; }
+
+        /**
+         * parses key=value,key=value
+         */
+        @Override
+        Map<String, Object> convert(String s, Class<?> valueClass) throws Exception {
+            Map<String, Object> map = Maps.newLinkedHashMap();
+            for (String entry : StringUtils.split(s, ',')) {
+                String[] keyValue = StringUtils.split(entry, '=');
+                Assert.isTrue(keyValue.length == 2, "Map entries must be key=value: '"+entry+"'");
+                String value = keyValue[1].trim();
+                if (!conversionService.canConvert(String.class, valueClass)) {
+                    throw new IllegalArgumentException("Unable to convert '"+value+" to type "+valueClass);
+                }
+                map.put(keyValue[0].trim(), conversionService.convert(value, valueClass));
+            }
+            return map;
+        }
+
+        DynamicPropMap<Object> getProp(String propName, Map<String, Object> defaultVal, Class<?> valueClass) {
+            return new DynamicPropMap<Object>(propName, defaultVal, valueClass, conversionService);
         }
     }
 
@@ -119,8 +155,8 @@ public class ConfigurationBuilder {
         builders.add(new FloatBuilder());
         builders.add(new DoubleBuilder());
         builders.add(new GenericBuilder());
+        builders.add(new MapBuilder());
         this.conversionService = conversionService;
-        conversions = conversionService;
     }
 
     public void build(Object config) throws Exception {
@@ -128,20 +164,114 @@ public class ConfigurationBuilder {
         build(config, "");
     }
 
+    /**
+     * How to build the fields of one configuration class: which builder makes each property, with what value
+     * class, default and callback. Worked out once per class and shared by builders of the same kinds with the
+     * same {@link ConversionService}, as it is all that converts the defaults.
+     */
+    static class Plan {
+        final PropertyCallback classPropertyCallback;
+        final List<Binding> bindings = Lists.newArrayList();
+
+        Plan(PropertyCallback classPropertyCallback) {
+            this.classPropertyCallback = classPropertyCallback;
+        }
+    }
+
+    static class Binding {
+        final Field field;
+        /** index of the property's builder, or -1 for a nested configuration */
+        final int builder;
+        final Class<?> valueClass;
+        final Object defaultValue;
+        final PropertyCallback propertyCallback;
+
+        Binding(Field field, int builder, Class<?> valueClass, Object defaultValue, PropertyCallback propertyCallback) {
+            this.field = field;
+            this.builder = builder;
+            this.valueClass = valueClass;
+            this.defaultValue = defaultValue;
+            this.propertyCallback = propertyCallback;
+        }
+    }
+
+    /** plans by the builder kinds and configuration class, per conversion service */
+    private static final LoadingCache<ConversionService, ConcurrentMap<List<Class<?>>, Plan>> PLANS =
+            CacheBuilder.newBuilder().weakKeys().build(new CacheLoader<ConversionService, ConcurrentMap<List<Class<?>>, Plan>>() {
+                @Override
+                public ConcurrentMap<List<Class<?>>, Plan> load(ConversionService key) {
+                    return new ConcurrentHashMap<List<Class<?>>, Plan>();
+                }
+            });
+
     @SuppressWarnings("unchecked")
     protected void build(final Object config, final String context) throws Exception {
-        Class<?> configClass = config.getClass();
-        final PropertyCallback classPropertyCallback = configClass.getAnnotation(PropertyCallback.class);
+        final Plan plan = plan(config.getClass());
+
+        // one instance for all properties of the class, run once per poll
+        Runnable coalescedCallback = null;
+        if (plan.classPropertyCallback != null
+                && plan.classPropertyCallback.dispatch() == PropertyCallback.Dispatch.COALESCED) {
+            final Runnable callback = (Runnable) plan.classPropertyCallback.value().newInstance();
+            if (callback instanceof AbstractCallback) {
+                AbstractCallback.class.cast(callback).setConfig(config);
+            }
+            coalescedCallback = CallbackDispatcher.dispatch(callback, PropertyCallback.Dispatch.COALESCED,
+                    config.getClass().getName());
+        }
+
+        for (Binding binding : plan.bindings) {
+            final Field field = binding.field;
+            final String propName = getPropName(field, context);
+
+            if (binding.builder >= 0) {
+                final PropBuilder propBuilder = builders.get(binding.builder);
+                final Object property = propBuilder.getProp(propName, binding.defaultValue, binding.valueClass);
+
+                addCallback(config, property, propName, binding.propertyCallback);
+                if (coalescedCallback != null) {
+                    addCallback(property, coalescedCallback);
+                } else {
+                    addCallback(config, property, propName, plan.classPropertyCallback);
+                }
+
+                field.set(config, property);
+            } else if (field.get(config) == null) {
+                final Object fieldConfig = field.getType().newInstance();
+                build(fieldConfig, propName);
+                field.set(config, fieldConfig);
+            }
+        }
+    }
+
+    private Plan plan(Class<?> configClass) {
+        final List<Class<?>> key = Lists.newArrayListWithCapacity(builders.size() + 1);
+        for (PropBuilder<?, ?> propBuilder : builders) {
+            key.add(propBuilder.getClass());
+        }
+        key.add(configClass);
+
+        final ConcurrentMap<List<Class<?>>, Plan> plans = PLANS.getUnchecked(conversionService);
+        Plan plan = plans.get(key);
+        if (plan == null) {
+            plan = createPlan(configClass);
+            plans.putIfAbsent(key, plan);
+        }
+        return plan;
+    }
+
+    @SuppressWarnings("unchecked")
+    private Plan createPlan(Class<?> configClass) {
+        final Plan plan = new Plan(configClass.getAnnotation(PropertyCallback.class));
 
         doWithFields(configClass, new FieldCallback(){
             public void doWith(Field field) throws IllegalArgumentException, IllegalAccessException {
                 Class<?> type = field.getType();
-                String propName = getPropName(field, context);
+                makeAccessible(field);
 
-                boolean fieldSet = false;
-                for (PropBuilder propBuilder: builders) {
+                for (int i = 0; i < builders.size(); i++) {
+                    PropBuilder propBuilder = builders.get(i);
                     if (propBuilder.getPropType().isAssignableFrom(type)) {
-                        makeAccessible(field);
                         Object defaultValue = null;
                         //TODO: use spring converters
                         DefaultValue annotation = field.getAnnotation(DefaultValue.class);
@@ -162,33 +292,19 @@ public class ConfigurationBuilder {
                             Throwables.propagate(e);
                         }
 
-                        Object property = propBuilder.getProp(propName, defaultValue, valueClass);
-
-                        PropertyCallback propertyCallback = field.getAnnotation(PropertyCallback.class);
-                        addCallback(config, property, propertyCallback);
-                        addCallback(config, property, classPropertyCallback);
-
-                        field.set(config, property);
-
-                        fieldSet = true;
-                        break;
+                        plan.bindings.add(new Binding(field, i, valueClass, defaultValue,
+                                field.getAnnotation(PropertyCallback.class)));
+                        return;
                     }
                 }
 
-                if (!fieldSet && field.get(config) == null) {
-                    try {
-                        Object fieldConfig = type.newInstance();
-                        build(fieldConfig, propName);
-                        field.set(config, fieldConfig);
-                    } catch (Exception e) {
-                        Throwables.propagate(e);
-                    }
-                }
+                plan.bindings.add(new Binding(field, -1, null, null, null));
             }});
+        return plan;
     }
 
     @SuppressWarnings("unchecked")
-    protected void addCallback(Object config, Object prop, PropertyCallback propertyCallback) {
+    protected void addCallback(Object config, Object prop, String propName, PropertyCallback propertyCallback) {
         if (propertyCallback == null)
             return;
         try {
@@ -196,24 +312,30 @@ public class ConfigurationBuilder {
 
             Runnable callback = (Runnable) callbackClass.newInstance();
 
-            if (prop instanceof PropertyWrapper) {
-                PropertyWrapper<?> property = (PropertyWrapper<?>) prop;
-
-                if (callback instanceof AbstractCallback) {
-                    AbstractCallback abstractCallback = AbstractCallback.class.cast(callback);
-                    abstractCallback.setConfig(config);
-                    abstractCallback.setProp(property);
+            if (callback instanceof AbstractCallback) {
+                AbstractCallback abstractCallback = AbstractCallback.class.cast(callback);
+                abstractCallback.setConfig(config);
+                if (prop instanceof PropertyWrapper) {
+                    abstractCallback.setProp((PropertyWrapper<?>) prop);
                 }
-
-                property.addCallback(callback);
-            } else {
-                System.err.println("prop is not a PropertyWrapper: "+prop.getClass()); //TODO: replace with logging
             }
+
+            addCallback(prop, CallbackDispatcher.dispatch(callback, propertyCallback.dispatch(), propName));
         } catch (Exception e) {
             Throwables.propagate(e);
         }
     }
 
+    protected void addCallback(Object prop, Runnable callback) {
+        if (prop instanceof PropertyWrapper) {
+            ((PropertyWrapper<?>) prop).addCallback(callback);
+        } else if (prop instanceof DynamicPropMap) {
+            ((DynamicPropMap<?>) prop).addCallback(callback);
+        } else {
+            System.err.println("prop is not a PropertyWrapper: "+prop.getClass()); //TODO: replace with logging
+        }
+    }
+
     protected String getPropName(Field field, String context) {
         if (StringUtils.isBlank(context))
             return field.getName();
@@ -0,0 +1,72 @@
+package halfpipe.configuration;
+
+import com.netflix.config.PropertyWrapper;
+
+import java.util.Map;
+
+/**
+ * The values of all properties of a configuration subtree at one point, as published by a
+ * {@link ConfigurationSnapshotPublisher}. A reader that needs several properties to be consistent with each
+ * other, like a port and the settings of its connector, takes one snapshot and reads them all from it:
+ * <pre>
+ * ConfigurationSnapshot snapshot = publisher.get();
+ * bind(snapshot.get(config.http.port), snapshot.get(config.http.connector.idleTimeout));
+ * </pre>
+ * Snapshots never change. Each one published has a higher version than the one before.
+ */
+public final class ConfigurationSnapshot {
+    private final long version;
+    private final long timestamp;
+    private final Map<String, Object> values;
+
+    ConfigurationSnapshot(long version, Map<String, Object> values) {
+        this.version = version;
+        this.timestamp = System.currentTimeMillis();
+        this.values = values;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * @return when the snapshot was taken, in milliseconds since the epoch
+     */
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    @SuppressWarnings("unchecked")
+    public <V> V get(PropertyWrapper<V> prop) {
+        return (V) get(prop.getName());
+    }
+
+    @SuppressWarnings("unchecked")
+    public <V> Map<String, V> get(DynamicPropMap<V> map) {
+        return (Map<String, V>) get(map.getName());
+    }
+
+    /**
+     * @param name the full name of the property, e.g. {@code http.port}
+     * @throws IllegalArgumentException if the property is not part of the snapshot
+     */
+    public Object get(String name) {
+        final Object value = values.get(name);
+        if (value == null && !values.containsKey(name)) {
+            throw new IllegalArgumentException("No property "+name+" in this snapshot");
+        }
+        return value;
+    }
+
+    /**
+     * @return all values by property name, unmodifiable
+     */
+    public Map<String, Object> asMap() {
+        return values;
+    }
+
+    @Override
+    public String toString() {
+        return "ConfigurationSnapshot: {version=" + version + ", values=" + values + "}";
+    }
+}
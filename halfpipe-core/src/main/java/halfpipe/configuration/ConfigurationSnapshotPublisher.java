@@ -0,0 +1,139 @@
+package halfpipe.configuration;
+
+import static org.springframework.util.ReflectionUtils.*;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.netflix.config.ConcurrentCompositeConfiguration;
+import com.netflix.config.DynamicPropertyFactory;
+import com.netflix.config.PropertyWrapper;
+import org.apache.commons.configuration.AbstractConfiguration;
+import halfpipe.logging.Log;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Publishes {@link ConfigurationSnapshot}s of a configuration subtree built by {@link ConfigurationBuilder}, e.g. a
+ * whole {@link Configuration} or just its {@link HttpConfiguration}.
+ *
+ * A new snapshot is taken after each poll of a {@link DynamicURLConfiguration} has been applied, so properties
+ * changed by one poll show up together. It's only published, and callbacks run once, if any value differs from
+ * the current snapshot. Changes from elsewhere, like system properties set at runtime, are picked up by the next
+ * poll or by calling {@link #publish()}.
+ */
+public class ConfigurationSnapshotPublisher {
+    private static final Log LOG = Log.forThisClass();
+
+    private final List<PropertyWrapper<?>> props = Lists.newArrayList();
+    private final List<DynamicPropMap<?>> maps = Lists.newArrayList();
+    private final List<Runnable> callbacks = new CopyOnWriteArrayList<Runnable>();
+
+    private volatile ConfigurationSnapshot snapshot;
+
+    public ConfigurationSnapshotPublisher(Object config) {
+        this(config, DynamicPropertyFactory.getBackingConfigurationSource());
+    }
+
+    /**
+     * @param source a {@link DynamicURLConfiguration}, or a composite of them, whose polls publish new snapshots
+     */
+    ConfigurationSnapshotPublisher(Object config, Object source) {
+        collect(config, Sets.newSetFromMap(Maps.<Object, Boolean>newIdentityHashMap()));
+        snapshot = new ConfigurationSnapshot(1, values());
+
+        final Runnable publish = new Runnable() {
+            public void run() {
+                publish();
+            }
+        };
+        if (source instanceof DynamicURLConfiguration) {
+            ((DynamicURLConfiguration) source).addPollCallback(publish);
+        } else if (source instanceof ConcurrentCompositeConfiguration) {
+            for (AbstractConfiguration c : ((ConcurrentCompositeConfiguration) source).getConfigurations()) {
+                if (c instanceof DynamicURLConfiguration) {
+                    ((DynamicURLConfiguration) c).addPollCallback(publish);
+                }
+            }
+        }
+    }
+
+    private void collect(final Object config, final Set<Object> seen) {
+        if (!seen.add(config)) {
+            return;
+        }
+        doWithFields(config.getClass(), new FieldCallback() {
+            public void doWith(Field field) throws IllegalArgumentException, IllegalAccessException {
+                if (Modifier.isStatic(field.getModifiers()) || field.getType().isPrimitive()) {
+                    return;
+                }
+                makeAccessible(field);
+                final Object value = field.get(config);
+                if (value instanceof PropertyWrapper) {
+                    props.add((PropertyWrapper<?>) value);
+                } else if (value instanceof DynamicPropMap) {
+                    maps.add((DynamicPropMap<?>) value);
+                } else if (value != null && !(value instanceof Class) && !value.getClass().getName().startsWith("java")) {
+                    collect(value, seen);
+                }
+            }
+        });
+    }
+
+    private Map<String, Object> values() {
+        final Map<String, Object> values = Maps.newLinkedHashMap();
+        for (PropertyWrapper<?> prop : props) {
+            values.put(prop.getName(), prop.getValue());
+        }
+        for (DynamicPropMap<?> map : maps) {
+            values.put(map.getName(), map.get());
+        }
+        return Collections.unmodifiableMap(values);
+    }
+
+    /**
+     * @return the current snapshot
+     */
+    public ConfigurationSnapshot get() {
+        return snapshot;
+    }
+
+    /**
+     * Runs once for each snapshot published, after it has become the current one
+     */
+    public void addCallback(Runnable callback) {
+        callbacks.add(callback);
+    }
+
+    /**
+     * Publishes a new snapshot if any value changed since the current one
+     *
+     * @return the current snapshot
+     */
+    public ConfigurationSnapshot publish() {
+        final ConfigurationSnapshot published;
+        synchronized (this) {
+            final Map<String, Object> values = values();
+            if (values.equals(snapshot.asMap())) {
+                return snapshot;
+            }
+            published = new ConfigurationSnapshot(snapshot.getVersion() + 1, values);
+            snapshot = published;
+        }
+        LOG.debug("Published configuration snapshot version {}", published.getVersion());
+        for (Runnable callback : callbacks) {
+            try {
+                callback.run();
+            } catch (RuntimeException e) {
+                LOG.error(e, "Error running configuration snapshot callback {}", callback);
+            }
+        }
+        return published;
+    }
+}
@@ -0,0 +1,56 @@
+package halfpipe.configuration;
+
+import com.netflix.config.DynamicBooleanProperty;
+import com.netflix.config.DynamicIntProperty;
+import halfpipe.util.Duration;
+import halfpipe.util.Size;
+
+import javax.ws.rs.DefaultValue;
+
+/**
+ * Tuning of the jetty {@link org.eclipse.jetty.server.nio.SelectChannelConnector}.
+ */
+public class ConnectorConfiguration {
+
+    /**
+     * Jetty 8 runs one selector per acceptor, so this also sets the number of selectors
+     */
+    @DefaultValue("2")
+    public DynamicIntProperty acceptors;
+
+    /**
+     * Accept queue (backlog) size, 0 uses the OS default
+     */
+    @DefaultValue("0")
+    public DynamicIntProperty acceptQueueSize;
+
+    @DefaultValue("200s")
+    public DynamicProp<Duration> idleTimeout;
+
+    /**
+     * Idle timeout used once the thread pool is low on threads
+     */
+    @DefaultValue("5s")
+    public DynamicProp<Duration> lowResourcesIdleTimeout;
+
+    @DefaultValue("6KB")
+    public DynamicProp<Size> requestHeaderSize;
+
+    @DefaultValue("16KB")
+    public DynamicProp<Size> requestBufferSize;
+
+    @DefaultValue("6KB")
+    public DynamicProp<Size> responseHeaderSize;
+
+    @DefaultValue("32KB")
+    public DynamicProp<Size> responseBufferSize;
+
+    @DefaultValue("true")
+    public DynamicBooleanProperty reuseAddress;
+
+    /**
+     * When the port changes, how long the old connector has to finish its open connections before it is stopped
+     */
+    @DefaultValue("30s")
+    public DynamicProp<Duration> drainTimeout;
+}
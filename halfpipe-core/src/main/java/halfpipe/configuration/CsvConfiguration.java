@@ -0,0 +1,22 @@
+package halfpipe.configuration;
+
+import com.netflix.config.DynamicIntProperty;
+import com.netflix.config.DynamicStringProperty;
+
+import javax.ws.rs.DefaultValue;
+
+/**
+ * Appends metrics to a CSV file per day, metrics-yyyy-MM-dd.csv in UTC, with a timestamp,metric,field,value row per
+ * value
+ */
+public class CsvConfiguration extends ReporterConfiguration {
+
+    @DefaultValue("metrics")
+    public DynamicStringProperty directory;
+
+    /**
+     * Files kept, older ones are deleted when a new one is started
+     */
+    @DefaultValue("7")
+    public DynamicIntProperty maxHistory;
+}
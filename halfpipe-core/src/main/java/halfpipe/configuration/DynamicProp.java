@@ -1,34 +1,56 @@
 package halfpipe.configuration;
 
 import com.netflix.config.PropertyWrapper;
+import org.springframework.core.convert.ConversionService;
+import halfpipe.logging.Log;
 
 /**
  * User: spencergibb
  * Date: 10/14/12
  * Time: 1:28 PM
+ *
+ * The converted value is cached and only converted again when the property changes, so a get is a single
+ * volatile read. A value that can't be converted is logged when it is set and the last good value is kept.
  */
 public class DynamicProp<V> extends PropertyWrapper<V> {
+    private static final Log LOG = Log.forThisClass();
+
     protected Class<V> valueClass;
+    private final ConversionService conversionService;
+    private volatile V value;
 
     @SuppressWarnings("unchecked")
-    public DynamicProp(String propName, V defaultValue, Class<?> valueClass) {
+    public DynamicProp(String propName, V defaultValue, Class<?> valueClass, ConversionService conversionService) {
         super(propName, defaultValue);
         if (valueClass == null)
             throw new IllegalStateException("Can not figure out value type parameterization for "+getClass().getName());
+        if (!conversionService.canConvert(String.class, valueClass))
+            throw new IllegalStateException("Unable to convert "+propName+" to type "+valueClass);
         this.valueClass = (Class<V>) valueClass;
+        this.conversionService = conversionService;
+        this.value = defaultValue;
+        propertyChanged();
     }
 
-    public V get() {
+    /**
+     * Runs before any other callback of the property
+     */
+    @Override
+    protected void propertyChanged() {
         String val = prop.getString();
         if (val == null) {
-            return defaultValue;
+            value = defaultValue;
+            return;
         }
-
-        //TODO: another static hack
-        if (ConfigurationBuilder.conversions.canConvert(val.getClass(), valueClass)) {
-            return ConfigurationBuilder.conversions.convert(val, valueClass);
+        try {
+            value = conversionService.convert(val, valueClass);
+        } catch (RuntimeException e) {
+            LOG.error(e, "Unable to convert {}='{}' to type {}, keeping {}", prop.getName(), val, valueClass, value);
         }
-        throw new IllegalArgumentException("Unable to convert '"+val+" to type "+valueClass);
+    }
+
+    public V get() {
+        return value;
     }
 
     public V getValue() { return get(); }
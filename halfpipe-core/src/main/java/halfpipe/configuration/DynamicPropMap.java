@@ -0,0 +1,122 @@
+package halfpipe.configuration;
+
+import com.google.common.collect.Maps;
+import com.netflix.config.DynamicPropertyFactory;
+import org.apache.commons.configuration.AbstractConfiguration;
+import org.apache.commons.configuration.event.ConfigurationEvent;
+import org.apache.commons.configuration.event.ConfigurationListener;
+import org.springframework.core.convert.ConversionService;
+import halfpipe.logging.Log;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * A map whose entries are all the dynamic properties under a common prefix, e.g. the property
+ * {@code logging.loggers.org.eclipse.jetty=INFO} is the entry {@code org.eclipse.jetty -> INFO} of the map
+ * {@code logging.loggers}. Defaults come from a {@code key=value,key=value} {@link javax.ws.rs.DefaultValue}
+ * and are overridden entry by entry.
+ *
+ * Callbacks run whenever a property under the prefix is set or cleared.
+ *
+ * Like {@link DynamicProp} the converted entries are cached and only rebuilt when a property under the prefix
+ * changes. Entries that can't be converted are logged and left out.
+ */
+public class DynamicPropMap<V> implements ConfigurationListener {
+    private static final Log LOG = Log.forThisClass();
+
+    private final String name;
+    private final String prefix;
+    private final Map<String, V> defaults;
+    private final Class<V> valueClass;
+    private final ConversionService conversionService;
+    private final List<Runnable> callbacks = new CopyOnWriteArrayList<Runnable>();
+    private volatile Map<String, V> map;
+
+    @SuppressWarnings("unchecked")
+    public DynamicPropMap(String propName, Map<String, V> defaults, Class<?> valueClass,
+                          ConversionService conversionService) {
+        if (valueClass == null)
+            throw new IllegalStateException("Can not figure out value type parameterization for "+propName);
+        if (!conversionService.canConvert(String.class, valueClass))
+            throw new IllegalStateException("Unable to convert "+propName+" to type "+valueClass);
+        this.name = propName;
+        this.prefix = propName + ".";
+        this.defaults = (defaults == null) ? Collections.<String, V>emptyMap() : defaults;
+        this.valueClass = (Class<V>) valueClass;
+        this.conversionService = conversionService;
+        final AbstractConfiguration config = config();
+        this.map = load(config);
+        config.addConfigurationListener(this);
+    }
+
+    private static AbstractConfiguration config() {
+        // getInstance() falls back to the default configuration when none was installed
+        DynamicPropertyFactory.getInstance();
+        final Object source = DynamicPropertyFactory.getBackingConfigurationSource();
+        if (!(source instanceof AbstractConfiguration)) {
+            throw new IllegalStateException("DynamicPropMap needs an AbstractConfiguration source, got "+source);
+        }
+        return (AbstractConfiguration) source;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return the current entries, unmodifiable
+     */
+    public Map<String, V> get() {
+        return map;
+    }
+
+    public V get(String key) {
+        return map.get(key);
+    }
+
+    private Map<String, V> load(AbstractConfiguration config) {
+        final Map<String, V> map = Maps.newLinkedHashMap(defaults);
+        final Iterator<String> keys = config.getKeys(name);
+        while (keys.hasNext()) {
+            final String key = keys.next();
+            if (key.startsWith(prefix)) {
+                final String val = config.getString(key);
+                try {
+                    // hierarchical configurations (yaml) escape dots within a node name as ..
+                    map.put(key.substring(prefix.length()).replace("..", "."), conversionService.convert(val, valueClass));
+                } catch (RuntimeException e) {
+                    LOG.error(e, "Unable to convert {}='{}' to type {}, leaving it out", key, val, valueClass);
+                }
+            }
+        }
+        return Collections.unmodifiableMap(map);
+    }
+
+    public void addCallback(Runnable callback) {
+        callbacks.add(callback);
+    }
+
+    @Override
+    public void configurationChanged(ConfigurationEvent event) {
+        if (event.isBeforeUpdate()) {
+            return;
+        }
+        final String propName = event.getPropertyName();
+        // a null name is a clear of the whole configuration
+        if (propName == null || propName.startsWith(prefix)) {
+            map = load(config());
+            for (Runnable callback : callbacks) {
+                callback.run();
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "DynamicPropMap: {name=" + name + ", current value=" + get() + ", default = " + defaults + "}";
+    }
+}
@@ -1,35 +1,49 @@
 package halfpipe.configuration;
 
+import com.netflix.config.AbstractPollingScheduler;
 import com.netflix.config.DynamicConfiguration;
 import com.netflix.config.FixedDelayPollingScheduler;
+import com.netflix.config.PollResult;
+import org.apache.commons.configuration.Configuration;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 /**
- * A {@link com.netflix.config.DynamicConfiguration} that uses a {@link com.netflix.config.sources.URLConfigurationSource} and
- * {@link com.netflix.config.FixedDelayPollingScheduler}.
+ * A {@link com.netflix.config.DynamicConfiguration} that uses a {@link URLConfigurationSource}. It is reloaded by a
+ * {@link FileWatchPollingScheduler} as soon as one of its files changes, or polled by a
+ * {@link com.netflix.config.FixedDelayPollingScheduler} if none of the URLs are files.
  *
  */
 @SuppressWarnings("unchecked")
 public class DynamicURLConfiguration extends DynamicConfiguration {
+    private final List<Runnable> pollCallbacks = new CopyOnWriteArrayList<Runnable>();
 
     /**
-     * Create an instance with default {@link com.netflix.config.sources.URLConfigurationSource#URLConfigurationSource()} and
-     * {@link com.netflix.config.FixedDelayPollingScheduler#FixedDelayPollingScheduler()} and start polling the source
-     * if there is any URLs available for polling.
+     * Create an instance with default {@link URLConfigurationSource#URLConfigurationSource()} and start watching
+     * or polling the source if there is any URLs available for polling.
      */
     public DynamicURLConfiguration() {
         URLConfigurationSource source = new URLConfigurationSource();
         if (source.getConfigUrls() != null && source.getConfigUrls().size() > 0) {
-            startPolling(source, new FixedDelayPollingScheduler());
+            startPolling(source, scheduler(source));
         }
     }
 
     public DynamicURLConfiguration(String... urls) {
         URLConfigurationSource source = new URLConfigurationSource(urls);
         if (source.getConfigUrls() != null && source.getConfigUrls().size() > 0) {
-            startPolling(source, new FixedDelayPollingScheduler());
+            startPolling(source, scheduler(source));
         }
     }
 
+    private static AbstractPollingScheduler scheduler(URLConfigurationSource source) {
+        if (FileWatchPollingScheduler.hasFiles(source.getConfigUrls())) {
+            return new FileWatchPollingScheduler(source.getConfigUrls());
+        }
+        return new FixedDelayScheduler();
+    }
+
     /**
      * Create an instance and start polling the source.
      *
@@ -41,7 +55,47 @@ public class DynamicURLConfiguration extends DynamicConfiguration {
      */
     public DynamicURLConfiguration(int initialDelayMillis, int delayMillis, boolean ignoreDeletesFromSource,
                                    String... urls) {
-        super(new URLConfigurationSource(urls),
-                new FixedDelayPollingScheduler(initialDelayMillis, delayMillis, ignoreDeletesFromSource));
+        // polling starts here rather than in the super constructor, once pollCallbacks is set
+        startPolling(new URLConfigurationSource(urls),
+                new FixedDelayScheduler(initialDelayMillis, delayMillis, ignoreDeletesFromSource));
+    }
+
+    /**
+     * Adds a callback run after each poll has been applied, unlike a
+     * {@link com.netflix.config.PollListener} which is told before.
+     */
+    public void addPollCallback(Runnable callback) {
+        pollCallbacks.add(callback);
+    }
+
+    /**
+     * Called by the polling schedulers once a poll has been applied to {@code config}
+     */
+    static void pollApplied(Configuration config) {
+        if (config instanceof DynamicURLConfiguration) {
+            for (Runnable callback : ((DynamicURLConfiguration) config).pollCallbacks) {
+                callback.run();
+            }
+        }
+    }
+
+    static class FixedDelayScheduler extends FixedDelayPollingScheduler {
+        FixedDelayScheduler() {
+        }
+
+        FixedDelayScheduler(int initialDelayMillis, int delayMillis, boolean ignoreDeletesFromSource) {
+            super(initialDelayMillis, delayMillis, ignoreDeletesFromSource);
+        }
+
+        @Override
+        protected void populateProperties(PollResult result, Configuration config) {
+            PollBatch.begin();
+            try {
+                super.populateProperties(result, config);
+            } finally {
+                PollBatch.end();
+            }
+            pollApplied(config);
+        }
     }
 }
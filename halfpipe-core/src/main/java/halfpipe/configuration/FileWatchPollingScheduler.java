@@ -0,0 +1,200 @@
+package halfpipe.configuration;
+
+import static java.nio.file.StandardWatchEventKinds.*;
+
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.io.Closeables;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.netflix.config.AbstractPollingScheduler;
+import com.netflix.config.FixedDelayPollingScheduler;
+import com.netflix.config.PollResult;
+import org.apache.commons.configuration.Configuration;
+
+/**
+ * Polls a source as soon as one of its {@code file:} URLs changes, as reported by a {@link WatchService},
+ * rather than at a fixed delay. Changes within {@code debounceMillis} of each other, like an editor writing
+ * a backup and then the file, trigger a single poll once they stop. If there are URLs other than files, the
+ * source is also polled at a fixed delay.
+ *
+ * Polls run one at a time on a single thread.
+ */
+public class FileWatchPollingScheduler extends AbstractPollingScheduler {
+    public static final String DEBOUNCE_PROPERTY = "halfpipe.fileWatchPollingScheduler.debounceMillis";
+
+    private static final Logger logger = LoggerFactory.getLogger(FileWatchPollingScheduler.class);
+
+    /** watched file names by directory */
+    private final Map<Path, Set<Path>> watched = new HashMap<Path, Set<Path>>();
+    private final boolean pollAtFixedDelay;
+    private final int debounceMillis;
+    private final int delayMillis;
+
+    private ScheduledExecutorService executor;
+    private WatchService watchService;
+    private ScheduledFuture<?> pending;
+
+    /**
+     * Debounce and fixed delay are read from the system properties {@link #DEBOUNCE_PROPERTY} (default 250ms)
+     * and {@link FixedDelayPollingScheduler#DELAY_PROPERTY} (default 60s).
+     */
+    public FileWatchPollingScheduler(List<URL> urls) {
+        this(urls, Integer.getInteger(DEBOUNCE_PROPERTY, 250),
+                Integer.getInteger(FixedDelayPollingScheduler.DELAY_PROPERTY, 60000), false);
+    }
+
+    public FileWatchPollingScheduler(List<URL> urls, int debounceMillis, int delayMillis,
+                                     boolean ignoreDeletesFromSource) {
+        super(ignoreDeletesFromSource);
+        this.debounceMillis = debounceMillis;
+        this.delayMillis = delayMillis;
+
+        boolean others = false;
+        for (URL url : urls) {
+            final Path file = toPath(url);
+            if (file == null) {
+                others = true;
+                continue;
+            }
+            Set<Path> names = watched.get(file.getParent());
+            if (names == null) {
+                names = new HashSet<Path>();
+                watched.put(file.getParent(), names);
+            }
+            names.add(file.getFileName());
+        }
+        this.pollAtFixedDelay = others;
+    }
+
+    /**
+     * @return whether any of the urls can be watched
+     */
+    public static boolean hasFiles(List<URL> urls) {
+        for (URL url : urls) {
+            if (toPath(url) != null) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static Path toPath(URL url) {
+        if (!"file".equals(url.getProtocol())) {
+            return null;
+        }
+        try {
+            return Paths.get(url.toURI()).toAbsolutePath();
+        } catch (URISyntaxException e) {
+            return null;
+        }
+    }
+
+    @Override
+    protected void populateProperties(PollResult result, Configuration config) {
+        PollBatch.begin();
+        try {
+            super.populateProperties(result, config);
+        } finally {
+            PollBatch.end();
+        }
+        DynamicURLConfiguration.pollApplied(config);
+    }
+
+    @Override
+    protected synchronized void schedule(final Runnable poll) {
+        executor = Executors.newSingleThreadScheduledExecutor(
+                new ThreadFactoryBuilder().setNameFormat("pollingConfigurationSource")
+                                          .setDaemon(true)
+                                          .build());
+        try {
+            watchService = FileSystems.getDefault().newWatchService();
+            for (Path dir : watched.keySet()) {
+                dir.register(watchService, ENTRY_CREATE, ENTRY_MODIFY, ENTRY_DELETE);
+            }
+        } catch (IOException e) {
+            logger.warn("Unable to watch " + watched.keySet() + ", polling at a fixed delay instead", e);
+            Closeables.closeQuietly(watchService);
+            executor.scheduleWithFixedDelay(poll, delayMillis, delayMillis, TimeUnit.MILLISECONDS);
+            return;
+        }
+
+        if (pollAtFixedDelay) {
+            executor.scheduleWithFixedDelay(poll, delayMillis, delayMillis, TimeUnit.MILLISECONDS);
+        }
+
+        final Thread watcher = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                watch(poll);
+            }
+        }, "configurationFileWatcher");
+        watcher.setDaemon(true);
+        watcher.start();
+    }
+
+    private void watch(Runnable poll) {
+        while (true) {
+            final WatchKey key;
+            try {
+                key = watchService.take();
+            } catch (InterruptedException e) {
+                return;
+            } catch (ClosedWatchServiceException e) {
+                return;
+            }
+
+            final Path dir = (Path) key.watchable();
+            final Set<Path> names = watched.get(dir);
+            boolean changed = false;
+            for (WatchEvent<?> event : key.pollEvents()) {
+                changed |= event.kind() == OVERFLOW || names.contains(event.context());
+            }
+            if (!key.reset()) {
+                logger.warn("No longer watching " + dir + ", it's no longer accessible");
+            }
+            if (changed) {
+                debounce(poll);
+            }
+        }
+    }
+
+    private synchronized void debounce(Runnable poll) {
+        if (executor == null) {
+            return;
+        }
+        if (pending != null) {
+            pending.cancel(false);
+        }
+        pending = executor.schedule(poll, debounceMillis, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public synchronized void stop() {
+        if (executor != null) {
+            executor.shutdownNow();
+            executor = null;
+        }
+        Closeables.closeQuietly(watchService);
+    }
+}
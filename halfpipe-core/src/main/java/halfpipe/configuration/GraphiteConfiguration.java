@@ -0,0 +1,18 @@
+package halfpipe.configuration;
+
+import com.netflix.config.DynamicIntProperty;
+import com.netflix.config.DynamicStringProperty;
+
+import javax.ws.rs.DefaultValue;
+
+/**
+ * Sends metrics to Graphite in its plaintext protocol, over one TCP connection kept open between reports
+ */
+public class GraphiteConfiguration extends ReporterConfiguration {
+
+    @DefaultValue("localhost")
+    public DynamicStringProperty host;
+
+    @DefaultValue("2003")
+    public DynamicIntProperty port;
+}
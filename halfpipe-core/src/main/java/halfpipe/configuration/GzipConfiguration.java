@@ -1,6 +1,11 @@
 package halfpipe.configuration;
 
 import com.netflix.config.DynamicBooleanProperty;
+import com.netflix.config.DynamicIntProperty;
+import com.netflix.config.DynamicStringProperty;
+import halfpipe.util.Size;
+
+import javax.ws.rs.DefaultValue;
 
 /**
  * User: spencergibb
@@ -8,5 +13,32 @@ import com.netflix.config.DynamicBooleanProperty;
  * Time: 11:55 PM
  */
 public class GzipConfiguration {
-    DynamicBooleanProperty enabled;
+    /**
+     * Compress responses and decompress gzip encoded request entities
+     */
+    public DynamicBooleanProperty enabled;
+
+    /**
+     * Responses smaller than this are sent uncompressed
+     */
+    @DefaultValue("256B")
+    public DynamicProp<Size> minimumEntitySize;
+
+    @DefaultValue("8KB")
+    public DynamicProp<Size> bufferSize;
+
+    /**
+     * Comma separated list of mime types to compress
+     */
+    @DefaultValue("application/json,text/html,text/plain,text/css,text/xml,application/xml,application/javascript")
+    public DynamicStringProperty compressedMimeTypes;
+
+    /**
+     * Level used for deflate encoded responses, -1 is the {@link java.util.zip.Deflater} default
+     */
+    @DefaultValue("-1")
+    public DynamicIntProperty compressionLevel;
+
+    @DefaultValue("Accept-Encoding")
+    public DynamicStringProperty vary;
 }
@@ -3,6 +3,7 @@ package halfpipe.configuration;
 import static halfpipe.Halfpipe.*;
 
 import com.netflix.config.*;
+import halfpipe.logging.Log;
 
 import javax.ws.rs.DefaultValue;
 
@@ -13,6 +14,7 @@ import javax.ws.rs.DefaultValue;
  */
 @PropertyCallback(HttpConfiguration.Callback.class)
 public class HttpConfiguration {
+    private static final Log LOG = Log.forThisClass();
 
     @PropertyCallback(PortCallback.class)
     @DefaultValue("8080")
@@ -34,17 +36,25 @@ public class HttpConfiguration {
 
     public GzipConfiguration gzip;
 
+    public ThreadPoolConfiguration threadPool;
+
+    public ConnectorConfiguration connector;
+
+    public JacksonConfiguration jackson;
+
+    public RequestTimingConfiguration timing;
+
     public static class PortCallback extends AbstractCallback<HttpConfiguration, Integer> {
         @Override
         public void run() {
-            System.err.println("http port changed to "+prop.getValue());
+            LOG.info("http port changed to {}", prop.getValue());
         }
     }
 
     public static class Callback extends AbstractCallback<HttpConfiguration, Object> {
         @Override
         public void run() {
-            System.err.println("property named: "+prop.getName()+" changed to "+prop.getValue());
+            LOG.debug("property named: {} changed to {}", prop.getName(), prop.getValue());
         }
     }
 }
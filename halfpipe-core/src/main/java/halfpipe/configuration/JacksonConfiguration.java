@@ -0,0 +1,31 @@
+package halfpipe.configuration;
+
+import com.netflix.config.DynamicBooleanProperty;
+import com.netflix.config.DynamicIntProperty;
+
+import javax.ws.rs.DefaultValue;
+
+/**
+ * Settings for {@link halfpipe.jersey.JacksonMessageBodyProvider}
+ */
+public class JacksonConfiguration {
+
+    /**
+     * Write entities straight to the response stream, serializing Iterator and
+     * Iterable entities one element at a time
+     */
+    @DefaultValue("false")
+    public DynamicBooleanProperty streaming;
+
+    /**
+     * Number of Iterator/Iterable elements written between flushes when streaming
+     */
+    @DefaultValue("100")
+    public DynamicIntProperty flushInterval;
+
+    /**
+     * Maximum number of cached readers and of cached writers, one per entity type, view and media type
+     */
+    @DefaultValue("512")
+    public DynamicIntProperty cacheSize;
+}
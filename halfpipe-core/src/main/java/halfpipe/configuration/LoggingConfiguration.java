@@ -2,7 +2,12 @@ package halfpipe.configuration;
 
 import ch.qos.logback.classic.Level;
 import com.netflix.config.DynamicBooleanProperty;
+import com.netflix.config.DynamicIntProperty;
 import com.netflix.config.DynamicStringProperty;
+import halfpipe.logging.AsyncAppender;
+import halfpipe.logging.LoggingUtils;
+import halfpipe.util.Duration;
+import halfpipe.util.Size;
 
 import javax.ws.rs.DefaultValue;
 import java.util.TimeZone;
@@ -14,6 +19,13 @@ import java.util.TimeZone;
  */
 public class LoggingConfiguration {
 
+    public enum Format {
+        /** lines formatted by LogFormatter, or logFormat if set */
+        TEXT,
+        /** one JSON object per line, logFormat is ignored */
+        JSON
+    }
+
     public static class ConsoleConfiguration {
         @DefaultValue("true")
         public DynamicBooleanProperty enabled;
@@ -21,14 +33,98 @@ public class LoggingConfiguration {
         @DefaultValue("ALL")
         public DynamicProp<Level> threshold;
 
+        @DefaultValue("TEXT")
+        public DynamicProp<Format> format;
+
         public DynamicStringProperty logFormat;
 
         @DefaultValue("UTC")
         public DynamicProp<TimeZone> timeZone;
     }
 
+    public static class FileConfiguration {
+        @DefaultValue("false")
+        public DynamicBooleanProperty enabled;
+
+        @DefaultValue("ALL")
+        public DynamicProp<Level> threshold;
+
+        public DynamicStringProperty logFormat;
+
+        @DefaultValue("UTC")
+        public DynamicProp<TimeZone> timeZone;
+
+        @DefaultValue("./logs/halfpipe.log")
+        public DynamicStringProperty currentLogFilename;
+
+        /**
+         * Roll over once the current file would grow past this size
+         */
+        @DefaultValue("100MB")
+        public DynamicProp<Size> maxFileSize;
+
+        /**
+         * Roll over at the start of every period, aligned to UTC
+         */
+        @DefaultValue("1d")
+        public DynamicProp<Duration> rolloverPeriod;
+
+        @DefaultValue("5")
+        public DynamicIntProperty archivedFileCount;
+
+        /**
+         * gzip rolled over files
+         */
+        @DefaultValue("true")
+        public DynamicBooleanProperty compress;
+
+        /**
+         * Events are written to disk when the buffer fills up or once per batch dispatched by the AsyncAppender
+         */
+        @DefaultValue("64KB")
+        public DynamicProp<Size> bufferSize;
+    }
+
+    public static class AsyncConfiguration {
+        /**
+         * Events buffered per appender, rounded up to a power of two
+         */
+        @DefaultValue("8192")
+        public DynamicIntProperty capacity;
+
+        @DefaultValue("DISCARD_BELOW_WARN")
+        public DynamicProp<AsyncAppender.OverflowPolicy> overflowPolicy;
+    }
+
     public ConsoleConfiguration console;
 
+    public FileConfiguration file;
+
+    public AsyncConfiguration async;
+
+    @PropertyCallback(LevelCallback.class)
     @DefaultValue("WARN")
     public DynamicProp<Level> level;
+
+    /**
+     * Levels of individual loggers, e.g. logging.loggers.org.eclipse.jetty=INFO. Changes only touch the
+     * loggers involved, once per poll however many of them changed.
+     */
+    @PropertyCallback(value = LoggersCallback.class, dispatch = PropertyCallback.Dispatch.COALESCED)
+    @DefaultValue("org.springframework.shell=INFO,com.sun.jersey.api.core.ScanningResourceConfig=INFO,halfpipe=INFO")
+    public DynamicPropMap<Level> loggers;
+
+    public static class LevelCallback extends AbstractCallback<LoggingConfiguration, Level> {
+        @Override
+        public void run() {
+            LoggingUtils.updateRootLevel(prop.getValue());
+        }
+    }
+
+    public static class LoggersCallback extends AbstractCallback<LoggingConfiguration, Object> {
+        @Override
+        public void run() {
+            LoggingUtils.updateLevels(config.loggers.get());
+        }
+    }
 }
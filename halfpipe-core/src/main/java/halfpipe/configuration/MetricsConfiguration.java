@@ -0,0 +1,22 @@
+package halfpipe.configuration;
+
+import halfpipe.util.Duration;
+
+import javax.ws.rs.DefaultValue;
+
+/**
+ * Metrics kept in the {@link com.yammer.metrics.core.MetricsRegistry}.
+ */
+public class MetricsConfiguration {
+
+    public TimerConfiguration timers;
+
+    public ReportersConfiguration reporters;
+
+    /**
+     * How long /mgmt/metrics and /mgmt/prometheus serve the same rendering to requests asking for the same metrics,
+     * 0 to render each
+     */
+    @DefaultValue("0s")
+    public DynamicProp<Duration> cacheTime;
+}
@@ -0,0 +1,41 @@
+package halfpipe.configuration;
+
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * Holds back work until the poll being applied on this thread is done, running each piece of work once however
+ * often it was deferred.
+ */
+final class PollBatch {
+    private static final ThreadLocal<Set<Runnable>> DEFERRED = new ThreadLocal<Set<Runnable>>();
+
+    private PollBatch() {
+    }
+
+    static void begin() {
+        DEFERRED.set(new LinkedHashSet<Runnable>());
+    }
+
+    static void end() {
+        final Set<Runnable> deferred = DEFERRED.get();
+        DEFERRED.remove();
+        if (deferred != null) {
+            for (Runnable runnable : deferred) {
+                runnable.run();
+            }
+        }
+    }
+
+    /**
+     * @return false if no poll is being applied on this thread
+     */
+    static boolean defer(Runnable runnable) {
+        final Set<Runnable> deferred = DEFERRED.get();
+        if (deferred == null) {
+            return false;
+        }
+        deferred.add(runnable);
+        return true;
+    }
+}
@@ -11,4 +11,26 @@ import java.lang.annotation.*;
 @Retention(RetentionPolicy.RUNTIME)
 public @interface PropertyCallback {
     Class value();
+
+    Dispatch dispatch() default Dispatch.INLINE;
+
+    enum Dispatch {
+        /**
+         * Runs on the thread that changed the property, usually the one polling the configuration
+         */
+        INLINE,
+
+        /**
+         * Runs on a shared callback executor, so a slow callback doesn't hold up other changes. Runs of one
+         * callback don't overlap and changes made while it is waiting to run are folded into that run.
+         */
+        ASYNC,
+
+        /**
+         * Like {@link #ASYNC}, but waits for the whole poll to be applied and runs once for it. On a class, a
+         * single instance of the callback is shared by all properties of the class, so its
+         * {@link AbstractCallback#prop} is null.
+         */
+        COALESCED
+    }
 }
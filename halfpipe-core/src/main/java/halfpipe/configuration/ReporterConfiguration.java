@@ -0,0 +1,35 @@
+package halfpipe.configuration;
+
+import com.netflix.config.DynamicBooleanProperty;
+import com.netflix.config.DynamicStringProperty;
+import halfpipe.util.Duration;
+
+import javax.ws.rs.DefaultValue;
+
+/**
+ * What every {@link halfpipe.metrics.MetricsReporters} reporter has. A change to any property of a reporter restarts
+ * it with the new values.
+ */
+public abstract class ReporterConfiguration {
+
+    @DefaultValue("false")
+    public DynamicBooleanProperty enabled;
+
+    @DefaultValue("1m")
+    public DynamicProp<Duration> interval;
+
+    /**
+     * Put before every metric name, e.g. the host or application
+     */
+    public DynamicStringProperty prefix;
+
+    /**
+     * Only report metrics whose full name, group.type[.scope].name, this regex matches somewhere
+     */
+    public DynamicStringProperty include;
+
+    /**
+     * Don't report metrics whose full name this regex matches somewhere
+     */
+    public DynamicStringProperty exclude;
+}
@@ -0,0 +1,13 @@
+package halfpipe.configuration;
+
+/**
+ * Reporters pushing metrics out, see {@link halfpipe.metrics.MetricsReporters}. Each is off until enabled.
+ */
+public class ReportersConfiguration {
+
+    public GraphiteConfiguration graphite;
+
+    public StatsdConfiguration statsd;
+
+    public CsvConfiguration csv;
+}
@@ -0,0 +1,23 @@
+package halfpipe.configuration;
+
+import com.netflix.config.DynamicBooleanProperty;
+
+import javax.ws.rs.DefaultValue;
+
+/**
+ * Timing of the phases of resource requests, see {@link halfpipe.metrics.RequestTiming}
+ */
+public class RequestTimingConfiguration {
+
+    /**
+     * Whether to time the phases of each request, in timers of the type set in metrics.timers
+     */
+    @DefaultValue("true")
+    public DynamicBooleanProperty enabled;
+
+    /**
+     * Whether to tell clients the phase timings in a Server-Timing response header
+     */
+    @DefaultValue("false")
+    public DynamicBooleanProperty serverTiming;
+}
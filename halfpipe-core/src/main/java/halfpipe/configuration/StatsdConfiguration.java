@@ -0,0 +1,24 @@
+package halfpipe.configuration;
+
+import com.netflix.config.DynamicIntProperty;
+import com.netflix.config.DynamicStringProperty;
+
+import javax.ws.rs.DefaultValue;
+
+/**
+ * Sends metrics to StatsD as gauges, as many to a UDP packet as fit
+ */
+public class StatsdConfiguration extends ReporterConfiguration {
+
+    @DefaultValue("localhost")
+    public DynamicStringProperty host;
+
+    @DefaultValue("8125")
+    public DynamicIntProperty port;
+
+    /**
+     * Largest packet to send, in bytes. The default fits an ethernet frame; 8932 suits jumbo frames, 512 the internet.
+     */
+    @DefaultValue("1432")
+    public DynamicIntProperty maxPacketSize;
+}
@@ -0,0 +1,30 @@
+package halfpipe.configuration;
+
+import com.netflix.config.DynamicIntProperty;
+import halfpipe.util.Duration;
+
+import javax.ws.rs.DefaultValue;
+
+/**
+ * Sizing of the jetty worker {@link org.eclipse.jetty.util.thread.QueuedThreadPool}.
+ */
+public class ThreadPoolConfiguration {
+
+    @DefaultValue("8")
+    public DynamicIntProperty minThreads;
+
+    @DefaultValue("254")
+    public DynamicIntProperty maxThreads;
+
+    /**
+     * Jobs waiting for a free worker, once full new connections are rejected. 0 or less for unbounded
+     */
+    @DefaultValue("1024")
+    public DynamicIntProperty maxQueued;
+
+    /**
+     * How long an idle thread above minThreads is kept around
+     */
+    @DefaultValue("60s")
+    public DynamicProp<Duration> idleTimeout;
+}
@@ -0,0 +1,49 @@
+package halfpipe.configuration;
+
+import com.netflix.config.DynamicBooleanProperty;
+import com.netflix.config.DynamicIntProperty;
+import halfpipe.util.Duration;
+
+import javax.ws.rs.DefaultValue;
+
+/**
+ * Timers created for {@code @Timed} beans and resources by {@link halfpipe.metrics.Timers}. Read when a timer is
+ * created, so changes only apply to timers created afterwards.
+ */
+public class TimerConfiguration {
+
+    public enum Type {
+        /** metrics-core timers, sampling an exponentially decaying reservoir */
+        SAMPLED,
+        /** {@link halfpipe.metrics.HistogramTimer}s, counting every duration in a log-linear histogram */
+        HISTOGRAM
+    }
+
+    @DefaultValue("SAMPLED")
+    public DynamicProp<Type> type;
+
+    /**
+     * Significant digits of histogram durations, 1 to 5. Each extra digit makes a histogram stripe 8 to 16 times
+     * larger, at 2 digits a stripe is about 37KB.
+     */
+    @DefaultValue("2")
+    public DynamicIntProperty precision;
+
+    /**
+     * Longer durations count as this one in histogram percentiles
+     */
+    @DefaultValue("1h")
+    public DynamicProp<Duration> highestTrackable;
+
+    /**
+     * Threads recording into a histogram without contending, each stripe is allocated when first used
+     */
+    @DefaultValue("4")
+    public DynamicIntProperty stripes;
+
+    /**
+     * Whether reading a histogram resets it, so each read reports the durations since the one before
+     */
+    @DefaultValue("false")
+    public DynamicBooleanProperty interval;
+}
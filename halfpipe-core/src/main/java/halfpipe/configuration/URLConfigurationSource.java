@@ -2,33 +2,68 @@ package halfpipe.configuration;
 
 import static com.netflix.config.sources.URLConfigurationSource.*;
 
+import java.io.ByteArrayInputStream;
+import java.io.File;
 import java.io.InputStream;
+import java.net.HttpURLConnection;
 import java.net.URL;
+import java.net.URLConnection;
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
-import org.apache.commons.configuration.ConfigurationException;
-import org.apache.commons.configuration.FileConfiguration;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hashing;
+import com.google.common.io.ByteStreams;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.netflix.config.PollResult;
 import com.netflix.config.PolledConfigurationSource;
-import halfpipe.configuration.json.JSONConfiguration;
-import halfpipe.configuration.yaml.YamlConfiguration;
+import com.yammer.metrics.Metrics;
+import com.yammer.metrics.core.Meter;
+import com.yammer.metrics.core.MetricName;
+import com.yammer.metrics.core.Timer;
+import com.yammer.metrics.core.TimerContext;
+import halfpipe.configuration.json.JSONFlattener;
+import halfpipe.configuration.yaml.YamlFlattener;
 
 /**
- * A polled configuration source based on a set of URLs. For each poll,
- * it always returns the complete union of properties defined in all files. If one property
+ * A polled configuration source based on a set of URLs. The initial poll returns the union of properties
+ * defined in all files, later polls only what changed since. If one property
  * is defined in more than one URL, the value in file later on the list will override
- * the value in the previous one. The content of the URL should conform to the properties file format.
+ * the value in the previous one. The content of the URL should be json, yaml or conform to the properties
+ * file format.
+ *
+ * URLs are fetched concurrently on up to {@link #THREADS_PROPERTY} threads, with connect and read timeouts of
+ * {@link #CONNECT_TIMEOUT_PROPERTY} and {@link #READ_TIMEOUT_PROPERTY}. The initial poll fails if any URL can't
+ * be loaded, on later polls a URL that fails or times out keeps what it last loaded. Fetch latency and
+ * failures are timed per URL as {@code URLConfigurationSource.fetch} and
+ * {@code URLConfigurationSource.fetch-failures} metrics scoped by the URL, without any user info.
  *
  * @author awang
  *
  */
 public class URLConfigurationSource implements PolledConfigurationSource {
+    public static final String THREADS_PROPERTY = "halfpipe.urlConfigurationSource.threads";
+    public static final String CONNECT_TIMEOUT_PROPERTY = "halfpipe.urlConfigurationSource.connectTimeoutMillis";
+    public static final String READ_TIMEOUT_PROPERTY = "halfpipe.urlConfigurationSource.readTimeoutMillis";
 
     private final URL[] configUrls;
 
+    private final int connectTimeoutMillis = Integer.getInteger(CONNECT_TIMEOUT_PROPERTY, 5000);
+    private final int readTimeoutMillis = Integer.getInteger(READ_TIMEOUT_PROPERTY, 10000);
+
+    private ThreadPoolExecutor executor;
+    private Timer[] fetchTimers;
+    private Meter[] fetchFailures;
+
     private static final Logger logger = LoggerFactory.getLogger(URLConfigurationSource.class);
 
     /**
@@ -89,7 +124,7 @@ public class URLConfigurationSource implements PolledConfigurationSource {
                     + CONFIG_URL + " or make " + DEFAULT_CONFIG_FILE_FROM_CLASSPATH + " available on classpath.");
         } else {
             configUrls = urlList.toArray(new URL[urlList.size()]);
-            logger.info("URLs to be used as dynamic configuration source: " + urlList);
+            logger.info("URLs to be used as dynamic configuration source: " + describe(configUrls));
         }
     }
 
@@ -128,14 +163,49 @@ public class URLConfigurationSource implements PolledConfigurationSource {
 
 
     /**
-     * Retrieve the content of the property files. For each poll, it always
-     * returns the complete union of properties defined in all URLs. If one
-     * property is defined in content of more than one URL, the value in file later on the
-     * list will override the value in the previous one.
+     * What was loaded from one URL and what to compare with to tell whether it changed.
+     */
+    static class Loaded {
+        final long lastModified;
+        final long length;
+        final String etag;
+        final HashCode hash;
+        final Map<String, Object> properties;
+
+        Loaded(long lastModified, long length, String etag, HashCode hash, Map<String, Object> properties) {
+            this.lastModified = lastModified;
+            this.length = length;
+            this.etag = etag;
+            this.hash = hash;
+            this.properties = properties;
+        }
+    }
+
+    /**
+     * Handed back by the polling scheduler on the next poll. Holds what was loaded from each URL and the
+     * union of their properties.
+     */
+    static class CheckPoint {
+        final Loaded[] loaded;
+        final Map<String, Object> properties;
+
+        CheckPoint(Loaded[] loaded, Map<String, Object> properties) {
+            this.loaded = loaded;
+            this.properties = properties;
+        }
+    }
+
+    /**
+     * Retrieve the content of the property files. If one property is defined in content of more than one
+     * URL, the value in file later on the list will override the value in the previous one.
      *
-     * @param initial this parameter is ignored by the implementation
-     * @param checkPoint this parameter is ignored by the implementation
-     * @throws java.io.IOException IOException occurred in file operation
+     * The initial poll returns all properties as added. Subsequent polls only re-parse URLs whose content
+     * changed, judged by modification time and size for files, ETag and Last-Modified for HTTP and a hash
+     * of the content otherwise, and return just the properties that were added, changed or deleted.
+     *
+     * @param initial whether this is the initial poll, which ignores the check point
+     * @param checkPoint the {@link CheckPoint} returned by the previous poll
+     * @throws Exception if this is the initial poll and any of the URLs could not be loaded
      */
     @Override
     public PollResult poll(boolean initial, Object checkPoint)
@@ -143,39 +213,219 @@ public class URLConfigurationSource implements PolledConfigurationSource {
         if (configUrls == null || configUrls.length == 0) {
             return PollResult.createFull(null);
         }
-        Map<String, Object> map = new HashMap<String, Object>();
-        for (URL url: configUrls) {
-
-            String urlString = url.toString();
-            if (urlString.endsWith(".json")) {
-                loadConfig(map, new JSONConfiguration(url));
-            } else if (urlString.endsWith(".yaml") || urlString.endsWith(".yml")) {
-                loadConfig(map, new YamlConfiguration(url));
-            } else {
-                Properties props = new Properties();
-                InputStream fin = url.openStream();
-                props.load(fin);
-                fin.close();
-                for (Map.Entry<Object, Object> entry: props.entrySet()) {
-                    map.put((String) entry.getKey(), entry.getValue());
+        final CheckPoint previous = (!initial && checkPoint instanceof CheckPoint) ? (CheckPoint) checkPoint : null;
+
+        final Loaded[] loaded = loadAll(previous == null ? null : previous.loaded);
+        boolean changed = previous == null;
+        for (int i = 0; i < configUrls.length && !changed; i++) {
+            changed = loaded[i].properties != previous.loaded[i].properties;
+        }
+
+        final Map<String, Object> empty = Collections.emptyMap();
+        if (!changed) {
+            return PollResult.createIncremental(empty, empty, empty, new CheckPoint(loaded, previous.properties));
+        }
+
+        final Map<String, Object> map = new HashMap<String, Object>();
+        for (Loaded l : loaded) {
+            map.putAll(l.properties);
+        }
+        if (previous == null) {
+            return PollResult.createIncremental(map, empty, empty, new CheckPoint(loaded, map));
+        }
+
+        final Map<String, Object> added = new HashMap<String, Object>();
+        final Map<String, Object> modified = new HashMap<String, Object>();
+        final Map<String, Object> deleted = new HashMap<String, Object>();
+        for (Map.Entry<String, Object> entry : map.entrySet()) {
+            final Object old = previous.properties.get(entry.getKey());
+            if (old == null) {
+                added.put(entry.getKey(), entry.getValue());
+            } else if (!old.equals(entry.getValue())) {
+                modified.put(entry.getKey(), entry.getValue());
+            }
+        }
+        for (Map.Entry<String, Object> entry : previous.properties.entrySet()) {
+            if (!map.containsKey(entry.getKey())) {
+                deleted.put(entry.getKey(), entry.getValue());
+            }
+        }
+        logger.debug("Polled {}: {} added, {} changed, {} deleted",
+                new Object[]{this, added.size(), modified.size(), deleted.size()});
+        return PollResult.createIncremental(added, modified, deleted, new CheckPoint(loaded, map));
+    }
+
+    /**
+     * Loads all URLs concurrently, waiting at most the connect and read timeouts for them.
+     *
+     * @param last what each URL loaded on the previous poll, null on the initial poll
+     * @return what each URL loaded, in list order
+     */
+    private Loaded[] loadAll(final Loaded[] last) throws Exception {
+        start();
+        final List<Future<Loaded>> futures = new ArrayList<Future<Loaded>>(configUrls.length);
+        for (int i = 0; i < configUrls.length; i++) {
+            final int index = i;
+            futures.add(executor.submit(new Callable<Loaded>() {
+                @Override
+                public Loaded call() throws Exception {
+                    final TimerContext context = fetchTimers[index].time();
+                    try {
+                        return load(configUrls[index], (last == null) ? null : last[index]);
+                    } finally {
+                        context.stop();
+                    }
                 }
+            }));
+        }
+
+        final long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(connectTimeoutMillis + readTimeoutMillis);
+        final Loaded[] loaded = new Loaded[configUrls.length];
+        Exception failure = null;
+        for (int i = 0; i < configUrls.length; i++) {
+            final Future<Loaded> future = futures.get(i);
+            try {
+                loaded[i] = future.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+                continue;
+            } catch (ExecutionException e) {
+                failure = (e.getCause() instanceof Exception) ? (Exception) e.getCause() : e;
+            } catch (TimeoutException e) {
+                future.cancel(true);
+                failure = new TimeoutException("Timed out loading " + withoutUserInfo(configUrls[i]));
             }
+            fetchFailures[i].mark();
+            if (last == null) {
+                // nothing to fall back on, a URL that is never loaded shouldn't go unnoticed
+                for (Future<Loaded> pending : futures) {
+                    pending.cancel(true);
+                }
+                throw failure;
+            }
+            loaded[i] = last[i];
+            logger.warn("Unable to load " + withoutUserInfo(configUrls[i]) + ", keeping what it last loaded", failure);
+        }
+        return loaded;
+    }
+
+    private synchronized void start() {
+        if (executor != null) {
+            return;
+        }
+        final int threads = Math.min(configUrls.length, Integer.getInteger(THREADS_PROPERTY, 4));
+        executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+                new ThreadFactoryBuilder().setNameFormat("urlConfigurationSource-%d")
+                                          .setDaemon(true)
+                                          .build());
+        executor.allowCoreThreadTimeOut(true);
+
+        fetchTimers = new Timer[configUrls.length];
+        fetchFailures = new Meter[configUrls.length];
+        for (int i = 0; i < configUrls.length; i++) {
+            final String scope = scope(configUrls[i]);
+            fetchTimers[i] = Metrics.newTimer(new MetricName(URLConfigurationSource.class, "fetch", scope),
+                    TimeUnit.MILLISECONDS, TimeUnit.SECONDS);
+            fetchFailures[i] = Metrics.newMeter(new MetricName(URLConfigurationSource.class, "fetch-failures", scope),
+                    "failures", TimeUnit.SECONDS);
+        }
+    }
+
+    /**
+     * @return the URL without user info, as a valid JMX property value
+     */
+    static String scope(URL url) {
+        return withoutUserInfo(url).replaceAll("[^\\w.-]+", "_");
+    }
+
+    /**
+     * @return the URL with any {@code user:password@} left out, fit for logs and metric names
+     */
+    static String withoutUserInfo(URL url) {
+        final String userInfo = url.getUserInfo();
+        if (userInfo == null) {
+            return url.toString();
+        }
+        return url.toString().replace(userInfo + "@", "");
+    }
+
+    private static String describe(URL[] urls) {
+        if (urls == null) {
+            return "null";
         }
-        return PollResult.createFull(map);
+        final List<String> described = new ArrayList<String>(urls.length);
+        for (URL url : urls) {
+            described.add(withoutUserInfo(url));
+        }
+        return described.toString();
+    }
+
+    /**
+     * @return {@code last} itself if the URL hasn't changed since, otherwise what it contains now
+     */
+    private Loaded load(URL url, Loaded last) throws Exception {
+        final URLConnection connection = url.openConnection();
+        connection.setConnectTimeout(connectTimeoutMillis);
+        connection.setReadTimeout(readTimeoutMillis);
+        long lastModified = 0;
+        long length = -1;
+        String etag = null;
+
+        if ("file".equals(url.getProtocol())) {
+            final File file = new File(url.toURI());
+            lastModified = file.lastModified();
+            length = file.length();
+            if (last != null && lastModified == last.lastModified && length == last.length) {
+                return last;
+            }
+        } else if (connection instanceof HttpURLConnection) {
+            if (last != null && last.etag != null) {
+                connection.setRequestProperty("If-None-Match", last.etag);
+            }
+            if (last != null && last.lastModified > 0) {
+                connection.setIfModifiedSince(last.lastModified);
+            }
+            if (((HttpURLConnection) connection).getResponseCode() == HttpURLConnection.HTTP_NOT_MODIFIED) {
+                ((HttpURLConnection) connection).disconnect();
+                return last;
+            }
+            etag = connection.getHeaderField("ETag");
+            lastModified = connection.getLastModified();
+        }
+
+        final byte[] content;
+        final InputStream in = connection.getInputStream();
+        try {
+            content = ByteStreams.toByteArray(in);
+        } finally {
+            in.close();
+        }
+        final HashCode hash = Hashing.md5().hashBytes(content);
+        if (last != null && hash.equals(last.hash)) {
+            // touched, but the same content
+            return new Loaded(lastModified, length, etag, hash, last.properties);
+        }
+        return new Loaded(lastModified, length, etag, hash, parse(url, content));
     }
 
-    private void loadConfig(Map<String, Object> map, FileConfiguration config) throws ConfigurationException {
-        config.load();
-        Iterator<String> keys = config.getKeys();
-        while (keys.hasNext()) {
-            String key = keys.next();
-            map.put(key, config.getProperty(key));
+    private Map<String, Object> parse(URL url, byte[] content) throws Exception {
+        String urlString = url.toString();
+        if (urlString.endsWith(".json")) {
+            return JSONFlattener.flatten(new ByteArrayInputStream(content));
+        }
+        if (urlString.endsWith(".yaml") || urlString.endsWith(".yml")) {
+            return YamlFlattener.flatten(new ByteArrayInputStream(content));
+        }
+        Map<String, Object> map = new HashMap<String, Object>();
+        Properties props = new Properties();
+        props.load(new ByteArrayInputStream(content));
+        for (Map.Entry<Object, Object> entry: props.entrySet()) {
+            map.put((String) entry.getKey(), entry.getValue());
         }
+        return map;
     }
 
     @Override
     public String toString() {
-        return "FileConfigurationSource [fileUrls=" + Arrays.toString(configUrls)
+        return "FileConfigurationSource [fileUrls=" + describe(configUrls)
                 + "]";
     }
 }
@@ -0,0 +1,168 @@
+package halfpipe.configuration.json;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import org.apache.commons.configuration.ConfigurationException;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Reads a JSON document straight into flattened properties with Jackson's streaming parser, without building a
+ * {@link JSONConfiguration} node tree to then walk.
+ *
+ * The properties are the same as the keys and values of a {@link JSONConfiguration} loaded from the document:
+ * <ul>
+ * <li>nested objects are joined with dots, {@code {"map":{"foo":"bar"}}} is {@code map.foo=bar}, and dots
+ * within a name are escaped as {@code ..}</li>
+ * <li>integers are {@link java.math.BigInteger}s, reals {@link java.math.BigDecimal}s</li>
+ * <li>arrays are {@link List}s and null values are left out</li>
+ * <li>a key that occurs more than once has the list of its values</li>
+ * </ul>
+ * The one difference is objects within arrays, which are {@link Map}s of their flattened properties rather than
+ * {@link JSONConfiguration}s.
+ */
+public class JSONFlattener {
+    private static final JsonFactory FACTORY = new JsonFactory()
+            .enable(JsonParser.Feature.ALLOW_UNQUOTED_CONTROL_CHARS)
+            .enable(JsonParser.Feature.ALLOW_BACKSLASH_ESCAPING_ANY_CHARACTER);
+
+    /**
+     * Keys given more than one value, whose values are lists we created
+     */
+    private final Set<String> repeated = new HashSet<String>();
+
+    private final StringBuilder path = new StringBuilder();
+
+    private JSONFlattener() {
+    }
+
+    public static Map<String, Object> flatten(InputStream in) throws ConfigurationException {
+        try {
+            return flatten(FACTORY.createParser(in));
+        } catch (IOException e) {
+            throw new ConfigurationException(e);
+        }
+    }
+
+    public static Map<String, Object> flatten(Reader in) throws ConfigurationException {
+        try {
+            return flatten(FACTORY.createParser(in));
+        } catch (IOException e) {
+            throw new ConfigurationException(e);
+        }
+    }
+
+    private static Map<String, Object> flatten(JsonParser parser) throws IOException, ConfigurationException {
+        try {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new ConfigurationException("A JSON configuration must be an object, found " + parser.getCurrentToken()
+                        + " at " + parser.getCurrentLocation());
+            }
+            final Map<String, Object> properties = new LinkedHashMap<String, Object>();
+            new JSONFlattener().object(parser, properties);
+            if (parser.nextToken() != null) {
+                throw new ConfigurationException("Unexpected " + parser.getCurrentToken() + " after the configuration at "
+                        + parser.getCurrentLocation());
+            }
+            return properties;
+        } finally {
+            parser.close();
+        }
+    }
+
+    /**
+     * Reads the fields of the current object into {@code properties}, prefixed by the current path
+     */
+    private void object(JsonParser parser, Map<String, Object> properties) throws IOException {
+        final int length = path.length();
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            if (length > 0) {
+                path.append('.');
+            }
+            appendEscaped(parser.getCurrentName());
+
+            final JsonToken token = parser.nextToken();
+            if (token == JsonToken.START_OBJECT) {
+                object(parser, properties);
+            } else {
+                final Object value = value(parser, token);
+                if (value != null) {
+                    put(properties, path.toString(), value);
+                }
+            }
+            path.setLength(length);
+        }
+    }
+
+    private void appendEscaped(String name) {
+        if (name.indexOf('.') < 0) {
+            path.append(name);
+            return;
+        }
+        for (int i = 0; i < name.length(); i++) {
+            final char c = name.charAt(i);
+            path.append(c);
+            if (c == '.') {
+                path.append('.');
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void put(Map<String, Object> properties, String key, Object value) {
+        final Object existing = properties.put(key, value);
+        if (existing == null) {
+            return;
+        }
+        if (repeated.contains(key)) {
+            ((List<Object>) existing).add(value);
+            properties.put(key, existing);
+        } else {
+            final List<Object> values = new ArrayList<Object>(2);
+            values.add(existing);
+            values.add(value);
+            properties.put(key, values);
+            repeated.add(key);
+        }
+    }
+
+    private Object value(JsonParser parser, JsonToken token) throws IOException {
+        switch (token) {
+            case START_ARRAY:
+                final List<Object> list = new ArrayList<Object>();
+                JsonToken element;
+                while ((element = parser.nextToken()) != JsonToken.END_ARRAY) {
+                    list.add(value(parser, element));
+                }
+                return list;
+            case START_OBJECT:
+                // only within arrays, an object elsewhere adds to the path
+                final Map<String, Object> properties = new LinkedHashMap<String, Object>();
+                new JSONFlattener().object(parser, properties);
+                return properties;
+            case VALUE_STRING:
+                return parser.getText();
+            case VALUE_NUMBER_INT:
+                return parser.getBigIntegerValue();
+            case VALUE_NUMBER_FLOAT:
+                return parser.getDecimalValue();
+            case VALUE_TRUE:
+                return Boolean.TRUE;
+            case VALUE_FALSE:
+                return Boolean.FALSE;
+            case VALUE_NULL:
+                return null;
+            default:
+                throw new IOException("Unexpected " + token + " at " + parser.getCurrentLocation());
+        }
+    }
+}
@@ -0,0 +1,388 @@
+package halfpipe.configuration.yaml;
+
+import org.apache.commons.configuration.ConfigurationException;
+import org.yaml.snakeyaml.error.YAMLException;
+import org.yaml.snakeyaml.events.AliasEvent;
+import org.yaml.snakeyaml.events.Event;
+import org.yaml.snakeyaml.events.NodeEvent;
+import org.yaml.snakeyaml.events.ScalarEvent;
+import org.yaml.snakeyaml.nodes.NodeId;
+import org.yaml.snakeyaml.nodes.Tag;
+import org.yaml.snakeyaml.parser.Parser;
+import org.yaml.snakeyaml.parser.ParserImpl;
+import org.yaml.snakeyaml.reader.StreamReader;
+import org.yaml.snakeyaml.reader.UnicodeReader;
+import org.yaml.snakeyaml.resolver.Resolver;
+
+import java.io.InputStream;
+import java.io.Reader;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Reads a YAML stream straight into flattened properties from SnakeYAML's parser events, without composing
+ * the node tree and building a {@link YamlConfiguration} from it.
+ *
+ * The properties are the same as the keys and values of a {@link YamlConfiguration} loaded from the document:
+ * <ul>
+ * <li>nested mappings are joined with dots, {@code map: {foo: bar}} is {@code map.foo=bar}, and dots within a
+ * key are escaped as {@code ..}</li>
+ * <li>booleans are {@link Boolean}s, integers {@link Long}s, floats {@link Double}s and other scalars, like
+ * timestamps, the {@link String} as written</li>
+ * <li>sequences are {@link List}s and null values are left out</li>
+ * <li>a key that occurs more than once has the list of its values</li>
+ * </ul>
+ * Mappings within sequences are {@link Map}s of their flattened properties rather than {@link YamlConfiguration}s.
+ *
+ * Beyond {@link YamlConfiguration}, aliases are expanded to the properties of their anchored node, {@code <<}
+ * merges the keys of a mapping or sequence of mappings that the mapping doesn't have itself, and a stream of
+ * several documents is read in order with later documents overriding earlier ones. As in YAML, merging is shallow:
+ * a key the mapping has, even set to null, keeps its own value whole, without anything merged into a nested
+ * mapping.
+ */
+public class YamlFlattener {
+    private static final Resolver RESOLVER = new Resolver();
+
+    private final Parser parser;
+
+    /** the events of the aliases being expanded, innermost first */
+    private final Deque<Iterator<Event>> replaying = new ArrayDeque<Iterator<Event>>();
+
+    /** the events of each anchored node of the current document */
+    private final Map<String, List<Event>> anchors = new HashMap<String, List<Event>>();
+
+    /** anchored collections still being read */
+    private final List<Recording> recording = new ArrayList<Recording>();
+
+    private YamlFlattener(Parser parser) {
+        this.parser = parser;
+    }
+
+    public static Map<String, Object> flatten(InputStream in) throws ConfigurationException {
+        return flatten(new UnicodeReader(in));
+    }
+
+    public static Map<String, Object> flatten(Reader in) throws ConfigurationException {
+        try {
+            return new YamlFlattener(new ParserImpl(new StreamReader(in))).stream();
+        } catch (YAMLException e) {
+            throw new ConfigurationException(e);
+        } catch (NumberFormatException e) {
+            throw new ConfigurationException(e);
+        }
+    }
+
+    private Map<String, Object> stream() throws ConfigurationException {
+        final Map<String, Object> properties = new LinkedHashMap<String, Object>();
+        next(); // stream start
+        while (next().is(Event.ID.DocumentStart)) {
+            anchors.clear();
+            final Map<String, Object> document = new LinkedHashMap<String, Object>();
+            final Event root = node();
+            if (root.is(Event.ID.MappingStart)) {
+                mapping(document, new StringBuilder(), new HashSet<String>());
+            } else if (!root.is(Event.ID.Scalar) || scalar((ScalarEvent) root) != null) {
+                throw new ConfigurationException("A YAML configuration must be a mapping, found " + root
+                        + " at " + root.getStartMark());
+            }
+            next(); // document end
+            properties.putAll(document);
+        }
+        return properties;
+    }
+
+    /**
+     * @return the next event, from the alias being expanded if any
+     */
+    private Event next() {
+        Event event = null;
+        while (event == null) {
+            final Iterator<Event> replay = replaying.peek();
+            if (replay == null) {
+                event = parser.getEvent();
+            } else if (replay.hasNext()) {
+                event = replay.next();
+            } else {
+                replaying.pop();
+            }
+        }
+        // aliases are recorded as what they expand to
+        if (!event.is(Event.ID.Alias)) {
+            record(event);
+        }
+        return event;
+    }
+
+    private void record(Event event) {
+        for (Iterator<Recording> i = recording.iterator(); i.hasNext(); ) {
+            final Recording r = i.next();
+            r.events.add(event);
+            if (event.is(Event.ID.MappingStart) || event.is(Event.ID.SequenceStart)) {
+                r.depth++;
+            } else if (event.is(Event.ID.MappingEnd) || event.is(Event.ID.SequenceEnd)) {
+                if (--r.depth == 0) {
+                    anchors.put(r.anchor, r.events);
+                    i.remove();
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the start of the next node, or the end of the enclosing collection, with aliases expanded
+     */
+    private Event node() throws ConfigurationException {
+        Event event = next();
+        if (event.is(Event.ID.Alias)) {
+            final String anchor = ((AliasEvent) event).getAnchor();
+            final List<Event> anchored = anchors.get(anchor);
+            if (anchored == null) {
+                throw new ConfigurationException("Undefined alias " + anchor + " at " + event.getStartMark());
+            }
+            replaying.push(anchored.iterator());
+            event = next();
+        }
+        if (event instanceof NodeEvent && ((NodeEvent) event).getAnchor() != null) {
+            final String anchor = ((NodeEvent) event).getAnchor();
+            if (event.is(Event.ID.Scalar)) {
+                final List<Event> events = new ArrayList<Event>(1);
+                events.add(event);
+                anchors.put(anchor, events);
+            } else {
+                recording.add(new Recording(anchor, event));
+            }
+        }
+        return event;
+    }
+
+    /**
+     * Reads the entries of the current mapping into {@code properties}, prefixed by {@code path}
+     *
+     * @return the keys of the mapping, escaped, including those set to null and those merged in
+     */
+    private Set<String> mapping(Map<String, Object> properties, StringBuilder path, Set<String> repeated)
+            throws ConfigurationException {
+        final int length = path.length();
+        final Set<String> keys = new HashSet<String>();
+        Map<String, Map<String, Object>> merged = null;
+        Event key;
+        while (!(key = node()).is(Event.ID.MappingEnd)) {
+            final Event value = node();
+            if (!key.is(Event.ID.Scalar)) {
+                // complex keys have no name to flatten to
+                skip(key);
+                skip(value);
+                continue;
+            }
+            final ScalarEvent name = (ScalarEvent) key;
+            if (Tag.MERGE.equals(tag(name))) {
+                merged = merge(value, path, merged);
+                continue;
+            }
+
+            if (length > 0) {
+                path.append('.');
+            }
+            appendEscaped(path, name.getValue());
+            keys.add(path.substring(length > 0 ? length + 1 : 0));
+            if (value.is(Event.ID.MappingStart)) {
+                mapping(properties, path, repeated);
+            } else {
+                final Object v = value(value);
+                if (v != null) {
+                    put(properties, repeated, path.toString(), v);
+                }
+            }
+            path.setLength(length);
+        }
+
+        if (merged != null) {
+            for (Map.Entry<String, Map<String, Object>> entry : merged.entrySet()) {
+                if (keys.add(entry.getKey())) {
+                    properties.putAll(entry.getValue());
+                }
+            }
+        }
+        return keys;
+    }
+
+    /**
+     * Reads the mapping, or sequence of mappings, of a {@code <<} key into the properties of each of their keys.
+     * Keys already merged take precedence.
+     */
+    private Map<String, Map<String, Object>> merge(Event value, StringBuilder path,
+                                                   Map<String, Map<String, Object>> merged)
+            throws ConfigurationException {
+        if (merged == null) {
+            merged = new LinkedHashMap<String, Map<String, Object>>();
+        }
+        if (value.is(Event.ID.SequenceStart)) {
+            Event element;
+            while (!(element = node()).is(Event.ID.SequenceEnd)) {
+                mergeMapping(element, path, merged);
+            }
+        } else {
+            mergeMapping(value, path, merged);
+        }
+        return merged;
+    }
+
+    private void mergeMapping(Event value, StringBuilder path, Map<String, Map<String, Object>> merged)
+            throws ConfigurationException {
+        if (!value.is(Event.ID.MappingStart)) {
+            throw new ConfigurationException("Only mappings can be merged, found " + value
+                    + " at " + value.getStartMark());
+        }
+        final Map<String, Object> entries = new LinkedHashMap<String, Object>();
+        final Set<String> keys = mapping(entries, path, new HashSet<String>());
+        final Set<String> added = new HashSet<String>();
+        for (String key : keys) {
+            if (!merged.containsKey(key)) {
+                merged.put(key, new LinkedHashMap<String, Object>());
+                added.add(key);
+            }
+        }
+        final int start = path.length() > 0 ? path.length() + 1 : 0;
+        for (Map.Entry<String, Object> entry : entries.entrySet()) {
+            final String key = keyOf(entry.getKey().substring(start), keys);
+            if (added.contains(key)) {
+                merged.get(key).put(entry.getKey(), entry.getValue());
+            }
+        }
+    }
+
+    /**
+     * @return the key of the mapping a property relative to it comes from, the longest in case an escaped dot
+     * makes several match
+     */
+    private static String keyOf(String property, Set<String> keys) {
+        if (keys.contains(property)) {
+            return property;
+        }
+        String found = null;
+        for (String key : keys) {
+            if (property.startsWith(key) && property.length() > key.length() && property.charAt(key.length()) == '.'
+                    && (found == null || key.length() > found.length())) {
+                found = key;
+            }
+        }
+        return found;
+    }
+
+    private Object value(Event event) throws ConfigurationException {
+        if (event.is(Event.ID.Scalar)) {
+            return scalar((ScalarEvent) event);
+        } else if (event.is(Event.ID.SequenceStart)) {
+            final List<Object> list = new ArrayList<Object>();
+            Event element;
+            while (!(element = node()).is(Event.ID.SequenceEnd)) {
+                list.add(value(element));
+            }
+            return list;
+        } else if (event.is(Event.ID.MappingStart)) {
+            // only within sequences, a mapping elsewhere adds to the path
+            final Map<String, Object> properties = new LinkedHashMap<String, Object>();
+            mapping(properties, new StringBuilder(), new HashSet<String>());
+            return properties;
+        }
+        throw new ConfigurationException("Unexpected " + event + " at " + event.getStartMark());
+    }
+
+    /**
+     * Skips the rest of a node whose start has been read
+     */
+    private void skip(Event start) {
+        if (start.is(Event.ID.Scalar)) {
+            return;
+        }
+        int depth = 1;
+        while (depth > 0) {
+            final Event event = next();
+            if (event.is(Event.ID.MappingStart) || event.is(Event.ID.SequenceStart)) {
+                depth++;
+            } else if (event.is(Event.ID.MappingEnd) || event.is(Event.ID.SequenceEnd)) {
+                depth--;
+            }
+        }
+    }
+
+    /**
+     * The tag the composer would give the scalar
+     */
+    private static Tag tag(ScalarEvent event) {
+        final String tag = event.getTag();
+        if (tag == null || "!".equals(tag)) {
+            return RESOLVER.resolve(NodeId.scalar, event.getValue(), event.getImplicit().canOmitTagInPlainScalar());
+        }
+        return new Tag(tag);
+    }
+
+    private static Object scalar(ScalarEvent event) {
+        final Tag tag = tag(event);
+        final String value = event.getValue();
+        if (Tag.BOOL.equals(tag)) {
+            return Boolean.parseBoolean(value);
+        } else if (Tag.INT.equals(tag)) {
+            return Long.parseLong(value);
+        } else if (Tag.FLOAT.equals(tag)) {
+            return Double.parseDouble(value);
+        } else if (Tag.NULL.equals(tag)) {
+            return null;
+        }
+        return value;
+    }
+
+    private static void appendEscaped(StringBuilder path, String name) {
+        if (name.indexOf('.') < 0) {
+            path.append(name);
+            return;
+        }
+        for (int i = 0; i < name.length(); i++) {
+            final char c = name.charAt(i);
+            path.append(c);
+            if (c == '.') {
+                path.append('.');
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static void put(Map<String, Object> properties, Set<String> repeated, String key, Object value) {
+        final Object existing = properties.put(key, value);
+        if (existing == null) {
+            return;
+        }
+        if (repeated.contains(key)) {
+            ((List<Object>) existing).add(value);
+            properties.put(key, existing);
+        } else {
+            final List<Object> values = new ArrayList<Object>(2);
+            values.add(existing);
+            values.add(value);
+            properties.put(key, values);
+            repeated.add(key);
+        }
+    }
+
+    /**
+     * The events of an anchored collection, until it ends
+     */
+    private static class Recording {
+        final String anchor;
+        final List<Event> events = new ArrayList<Event>();
+        int depth = 1;
+
+        Recording(String anchor, Event start) {
+            this.anchor = anchor;
+            events.add(start);
+        }
+    }
+}
@@ -5,7 +5,6 @@ import com.yammer.metrics.HealthChecks;
 import com.yammer.metrics.Metrics;
 import com.yammer.metrics.core.HealthCheck;
 import com.yammer.metrics.core.HealthCheckRegistry;
-import com.yammer.metrics.core.MetricsRegistry;
 import com.yammer.metrics.util.DeadlockHealthCheck;
 import com.fasterxml.jackson.databind.Module;
 import com.fasterxml.jackson.databind.ObjectMapper;
@@ -18,6 +17,7 @@ import org.springframework.core.convert.converter.Converter;
 import halfpipe.cli.HalfpipeBannerProvider;
 import halfpipe.cli.HalfpipeServer;
 import halfpipe.configuration.ConfigurationBeanPostProcessor;
+import halfpipe.configuration.ConfigurationSnapshotPublisher;
 import halfpipe.configuration.convert.StringToTimeZoneConverter;
 import halfpipe.jackson.AnnotationSensitivePropertyNamingStrategy;
 import halfpipe.jackson.GuavaExtrasModule;
@@ -26,6 +26,8 @@ import halfpipe.jersey.HalfpipeObjectMapperProvider;
 import halfpipe.jersey.InvalidEntityExceptionMapper;
 import halfpipe.jersey.JacksonMessageBodyProvider;
 import halfpipe.jersey.OptionalQueryParamInjectableProvider;
+import halfpipe.metrics.HalfpipeMetricsRegistry;
+import halfpipe.metrics.MetricsReporters;
 
 import javax.inject.Named;
 import java.util.List;
@@ -86,8 +88,13 @@ public class BaseContext {
     }
 
     @Bean @Scope("singleton")
-    public JacksonMessageBodyProvider jacksonMessageBodyProvider(ObjectMapper objectMapper) {
-        return new JacksonMessageBodyProvider(objectMapper);
+    public JacksonMessageBodyProvider jacksonMessageBodyProvider(ObjectMapper objectMapper,
+                                                                 halfpipe.configuration.Configuration config) {
+        JacksonMessageBodyProvider provider = new JacksonMessageBodyProvider(objectMapper);
+        provider.setStreaming(config.http.jackson.streaming.get());
+        provider.setFlushInterval(config.http.jackson.flushInterval.get());
+        provider.setCacheSize(config.http.jackson.cacheSize.get());
+        return provider;
     }
 
     @Bean @Scope("singleton")
@@ -109,8 +116,17 @@ public class BaseContext {
     }
 
     @Bean @Scope("singleton")
-    public MetricsRegistry metricsRegistry() {
-        return Metrics.defaultRegistry();
+    public HalfpipeMetricsRegistry metricsRegistry() {
+        return new HalfpipeMetricsRegistry(Metrics.defaultRegistry());
+    }
+
+    /**
+     * Here rather than in {@link MetricsContext}, which view contexts import too, so that there is one per app
+     */
+    @Bean @Scope("singleton")
+    public MetricsReporters metricsReporters(HalfpipeMetricsRegistry metricsRegistry,
+                                             halfpipe.configuration.Configuration config) {
+        return new MetricsReporters(metricsRegistry, config.metrics.reporters);
     }
 
     @Bean @Scope("singleton") @Named("MetricsProxyConfig")
@@ -123,6 +139,11 @@ public class BaseContext {
         return new ConfigurationBeanPostProcessor();
     }
 
+    @Bean @Scope("singleton")
+    public ConfigurationSnapshotPublisher configurationSnapshotPublisher(halfpipe.configuration.Configuration config) {
+        return new ConfigurationSnapshotPublisher(config);
+    }
+
     @Bean @Scope("singleton")
     public HalfpipeServer server() {
         return new HalfpipeServer();
@@ -4,12 +4,15 @@ import com.yammer.metrics.core.MetricsRegistry;
 import com.yammer.metrics.spring.ExceptionMeteredAnnotationBeanPostProcessor;
 import com.yammer.metrics.spring.GaugeAnnotationBeanPostProcessor;
 import com.yammer.metrics.spring.MeteredAnnotationBeanPostProcessor;
+import halfpipe.metrics.HalfpipeMetricsRegistry;
+import halfpipe.metrics.Timers;
 import org.springframework.aop.framework.ProxyConfig;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.Scope;
 
 import javax.inject.Named;
+import javax.inject.Provider;
 
 /**
  * User: spencergibb
@@ -19,6 +22,11 @@ import javax.inject.Named;
 @Configuration
 public class MetricsContext {
 
+    @Bean @Scope("singleton")
+    public Timers timers(HalfpipeMetricsRegistry metricsRegistry, halfpipe.configuration.Configuration config) {
+        return new Timers(metricsRegistry, config.metrics.timers);
+    }
+
     @Bean
     @Scope("singleton")
     public ExceptionMeteredAnnotationBeanPostProcessor exceptionMeteredAnnotationBeanPostProcessor(
@@ -36,9 +44,9 @@ public class MetricsContext {
 
     @Bean @Scope("singleton")
     public TimedAnnotationBeanPostProcessor timedAnnotationBeanPostProcessor(
-            MetricsRegistry metricsRegistry, @Named("MetricsProxyConfig") ProxyConfig proxyConfig)
+            Provider<Timers> timers, @Named("MetricsProxyConfig") ProxyConfig proxyConfig)
     {
-        return new TimedAnnotationBeanPostProcessor(metricsRegistry, proxyConfig, null);
+        return new TimedAnnotationBeanPostProcessor(timers, proxyConfig, null);
     }
 
     @Bean @Scope("singleton")
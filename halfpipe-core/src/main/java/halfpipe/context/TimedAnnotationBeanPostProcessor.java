@@ -1,14 +1,19 @@
 package halfpipe.context;
 
 import com.yammer.metrics.annotation.Timed;
-import com.yammer.metrics.core.MetricsRegistry;
+import com.yammer.metrics.core.Clock;
 import com.yammer.metrics.spring.AbstractProxyingBeanPostProcessor;
-import com.yammer.metrics.spring.TimedMethodInterceptor;
+import halfpipe.metrics.DurationTimer;
+import halfpipe.metrics.Timers;
 import org.aopalliance.intercept.MethodInterceptor;
+import org.aopalliance.intercept.MethodInvocation;
 import org.springframework.aop.Pointcut;
 import org.springframework.aop.framework.ProxyConfig;
 
+import javax.inject.Provider;
 import javax.ws.rs.Path;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
 /**
  * // don't proxy jax-rs resources, currently annotated with @Path
@@ -21,11 +26,15 @@ public class TimedAnnotationBeanPostProcessor extends AbstractProxyingBeanPostPr
     private static final long serialVersionUID = -1589475386869891203L;
 
     private final Pointcut pointcut = new NotClassAnnotationMatchingPointcut(Path.class, Timed.class);
-    private final MetricsRegistry metrics;
+    private final Provider<Timers> timers;
     private final String scope;
 
-    public TimedAnnotationBeanPostProcessor(final MetricsRegistry metrics, final ProxyConfig config, final String scope) {
-        this.metrics = metrics;
+    /**
+     * @param timers looked up when first needed, as they depend on the configuration bean
+     */
+    public TimedAnnotationBeanPostProcessor(final Provider<Timers> timers, final ProxyConfig config,
+                                            final String scope) {
+        this.timers = timers;
         this.scope = scope;
 
         this.copyFrom(config);
@@ -38,7 +47,34 @@ public class TimedAnnotationBeanPostProcessor extends AbstractProxyingBeanPostPr
 
     @Override
     public MethodInterceptor getMethodInterceptor(Class<?> targetClass) {
-        return new TimedMethodInterceptor(metrics, targetClass, scope);
+        return new TimedMethodInterceptor(timers.get().newTimed(targetClass, scope));
+    }
+
+    /**
+     * Times {@code @Timed} methods like metrics-spring's interceptor, in timers of the configured type
+     */
+    private static class TimedMethodInterceptor implements MethodInterceptor {
+        private static final Clock CLOCK = Clock.defaultClock();
+
+        private final Map<String, DurationTimer> timers;
+
+        TimedMethodInterceptor(Map<String, DurationTimer> timers) {
+            this.timers = timers;
+        }
+
+        @Override
+        public Object invoke(MethodInvocation invocation) throws Throwable {
+            final DurationTimer timer = timers.get(invocation.getMethod().getName());
+            if (timer == null) {
+                return invocation.proceed();
+            }
+            final long start = CLOCK.tick();
+            try {
+                return invocation.proceed();
+            } finally {
+                timer.update(CLOCK.tick() - start, TimeUnit.NANOSECONDS);
+            }
+        }
     }
 
 }
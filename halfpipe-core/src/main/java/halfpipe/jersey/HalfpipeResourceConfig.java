@@ -3,9 +3,12 @@ package halfpipe.jersey;
 import com.sun.jersey.api.core.PackagesResourceConfig;
 import com.sun.jersey.api.core.ResourceConfig;
 import com.yammer.metrics.jersey.InstrumentedResourceMethodDispatchAdapter;
+import halfpipe.metrics.Timers;
 
 import java.util.Map;
 
+import static halfpipe.HalfpipeConfiguration.rootContext;
+
 /**
  * User: spencergibb
  * Date: 9/21/12
@@ -18,6 +21,23 @@ public class HalfpipeResourceConfig extends PackagesResourceConfig {
 
         setPropertiesAndFeatures(props);
         getFeatures().put(ResourceConfig.FEATURE_DISABLE_WADL, Boolean.TRUE);
-        getClasses().add(InstrumentedResourceMethodDispatchAdapter.class);
+
+        if (rootContext != null && !rootContext.getBeansOfType(Timers.class).isEmpty()) {
+            final Timers timers = rootContext.getBean(Timers.class);
+            getSingletons().add(new TimedResourceMethodDispatchAdapter(timers));
+
+            final RequestTimingDispatchAdapter requestTiming = new RequestTimingDispatchAdapter(timers);
+            getSingletons().add(requestTiming);
+            getContainerRequestFilters().add(requestTiming);
+            getContainerResponseFilters().add(requestTiming);
+        } else {
+            getClasses().add(InstrumentedResourceMethodDispatchAdapter.class);
+        }
+
+        if (rootContext != null) {
+            for (JacksonMessageBodyProvider provider : rootContext.getBeansOfType(JacksonMessageBodyProvider.class).values()) {
+                provider.warm(getRootResourceClasses());
+            }
+        }
     }
 }
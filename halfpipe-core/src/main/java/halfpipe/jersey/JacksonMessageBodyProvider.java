@@ -1,20 +1,48 @@
 package halfpipe.jersey;
 
+import com.fasterxml.jackson.annotation.JsonView;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
 import com.fasterxml.jackson.jaxrs.json.JacksonJaxbJsonProvider;
+import com.google.common.base.Objects;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
 import com.google.common.collect.ImmutableList;
 import com.fasterxml.jackson.annotation.JsonIgnoreType;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import halfpipe.metrics.RequestTiming;
 import halfpipe.validation.InvalidEntityException;
 import halfpipe.validation.Validator;
 
 import javax.validation.Valid;
+import javax.ws.rs.Consumes;
+import javax.ws.rs.CookieParam;
+import javax.ws.rs.FormParam;
+import javax.ws.rs.HeaderParam;
+import javax.ws.rs.HttpMethod;
+import javax.ws.rs.MatrixParam;
+import javax.ws.rs.PathParam;
+import javax.ws.rs.Produces;
+import javax.ws.rs.QueryParam;
+import javax.ws.rs.core.Context;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.MultivaluedMap;
+import javax.ws.rs.core.Response;
 import javax.ws.rs.ext.Provider;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.lang.annotation.Annotation;
+import java.lang.reflect.Method;
+import java.lang.reflect.ParameterizedType;
 import java.lang.reflect.Type;
+import java.util.Collection;
+import java.util.Iterator;
 
 /**
  * A Jersey provider which enables using Jackson to parse request entities into objects and generate
@@ -24,17 +52,49 @@ import java.lang.reflect.Type;
  *
  * (Essentially, extends {@link org.codehaus.jackson.jaxrs.JacksonJaxbJsonProvider} with validation and support for
  * {@link org.codehaus.jackson.annotate.JsonIgnoreType}.)
+ *
+ * {@link ObjectReader}s and {@link ObjectWriter}s are built once per declared type, view and media type
+ * and kept in a bounded cache, see {@link #warm(Iterable)} to build them before the first request.
+ *
+ * In streaming mode entities are written straight to the response stream with a generator from the
+ * mapper's factory, which hands out per-thread recycled buffers. {@link Iterator} and non-{@link Collection}
+ * {@link Iterable} entities are serialized lazily, one element at a time, flushing every
+ * {@code flushInterval} elements so the container can send them as chunks.
  */
 @Provider
 public class JacksonMessageBodyProvider extends JacksonJaxbJsonProvider {
     private static final Validator VALIDATOR = new Validator();
+    private static final int DEFAULT_CACHE_SIZE = 512;
+
+    private boolean streaming = false;
+    private int flushInterval = 100;
+
+    private LoadingCache<EndpointKey, ObjectReader> readers;
+    private LoadingCache<EndpointKey, ObjectWriter> writers;
+
+    // jersey hands the same annotation array to every read of a given parameter, so cache by identity
+    private final LoadingCache<Annotation[], Boolean> validated = CacheBuilder.newBuilder()
+            .weakKeys()
+            .build(new CacheLoader<Annotation[], Boolean>() {
+                @Override
+                public Boolean load(Annotation[] annotations) {
+                    for (Annotation annotation : annotations) {
+                        if (annotation.annotationType() == Valid.class) {
+                            return true;
+                        }
+                    }
+                    return false;
+                }
+            });
 
     public JacksonMessageBodyProvider(ObjectMapper mapper) {
         setMapper(mapper);
+        setCacheSize(DEFAULT_CACHE_SIZE);
     }
 
     public JacksonMessageBodyProvider() {
         super();
+        setCacheSize(DEFAULT_CACHE_SIZE);
     }
 
     @Override
@@ -52,22 +112,34 @@ public class JacksonMessageBodyProvider extends JacksonJaxbJsonProvider {
                            MediaType mediaType,
                            MultivaluedMap<String, String> httpHeaders,
                            InputStream entityStream) throws IOException {
-        return validate(annotations, super.readFrom(type,
-                                            genericType,
-                                            annotations,
-                                            mediaType,
-                                            httpHeaders,
-                                            entityStream));
-    }
-
-    private Object validate(Annotation[] annotations, Object value) {
-        boolean validating = false;
-        for (Annotation annotation : annotations) {
-            validating = validating || (annotation.annotationType() == Valid.class);
+        final ObjectReader reader = readers.getUnchecked(new EndpointKey(declared(type, genericType), null, mediaType));
+        final JsonParser parser = reader.getFactory().createParser(entityStream);
+        // the container owns the request stream
+        parser.disable(JsonParser.Feature.AUTO_CLOSE_SOURCE);
+        final RequestTiming timing = RequestTiming.current();
+        final long start = timing == null ? 0 : RequestTiming.tick();
+        final Object value;
+        try {
+            if (parser.nextToken() == null) {
+                return null;
+            }
+            value = reader.readValue(parser);
+        } finally {
+            parser.close();
+            if (timing != null) {
+                timing.add(RequestTiming.Phase.READ, RequestTiming.tick() - start);
+            }
         }
+        return validate(annotations, value, timing);
+    }
 
-        if (validating) {
+    private Object validate(Annotation[] annotations, Object value, RequestTiming timing) {
+        if (value != null && validated.getUnchecked(annotations) && VALIDATOR.isConstrained(value.getClass())) {
+            final long start = timing == null ? 0 : RequestTiming.tick();
             final ImmutableList<String> errors = VALIDATOR.validate(value);
+            if (timing != null) {
+                timing.add(RequestTiming.Phase.VALIDATE, RequestTiming.tick() - start);
+            }
             if (!errors.isEmpty()) {
                 throw new InvalidEntityException("The request entity had the following errors:",
                                                  errors);
@@ -77,6 +149,184 @@ public class JacksonMessageBodyProvider extends JacksonJaxbJsonProvider {
         return value;
     }
 
+    @Override
+    public void writeTo(Object value,
+                        Class<?> type,
+                        Type genericType,
+                        Annotation[] annotations,
+                        MediaType mediaType,
+                        MultivaluedMap<String, Object> httpHeaders,
+                        OutputStream entityStream) throws IOException {
+        if (_jsonpFunctionName != null) {
+            super.writeTo(value, type, genericType, annotations, mediaType, httpHeaders, entityStream);
+            return;
+        }
+
+        final ObjectWriter writer = writers.getUnchecked(new EndpointKey(declared(type, genericType),
+                findView(annotations), mediaType));
+        final JsonGenerator generator = writer.getFactory().createGenerator(entityStream,
+                findEncoding(mediaType, httpHeaders));
+        // the container owns the response stream
+        generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+        try {
+            if (streaming && value instanceof Iterator) {
+                writeElements(writer, generator, (Iterator<?>) value);
+            } else if (streaming && value instanceof Iterable && !(value instanceof Collection)) {
+                writeElements(writer, generator, ((Iterable<?>) value).iterator());
+            } else {
+                writer.writeValue(generator, value);
+            }
+        } finally {
+            generator.close();
+        }
+    }
+
+    private void writeElements(ObjectWriter writer, JsonGenerator generator, Iterator<?> elements) throws IOException {
+        final ObjectWriter elementWriter = writer.withType((JavaType) null)
+                .without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+        int written = 0;
+        generator.writeStartArray();
+        while (elements.hasNext()) {
+            elementWriter.writeValue(generator, elements.next());
+            if (++written % flushInterval == 0) {
+                generator.flush();
+            }
+        }
+        generator.writeEndArray();
+    }
+
+    /**
+     * Builds the readers and writers for the entity parameters and return types of the resource methods
+     * of the given classes, so the first requests don't pay for it.
+     */
+    public void warm(Iterable<Class<?>> resourceClasses) {
+        for (Class<?> resourceClass : resourceClasses) {
+            for (Method method : resourceClass.getMethods()) {
+                if (!isResourceMethod(method)) {
+                    continue;
+                }
+
+                Class<?> returnType = method.getReturnType();
+                MediaType produces = mediaType(method.getAnnotation(Produces.class),
+                        resourceClass.getAnnotation(Produces.class));
+                if (returnType != void.class && returnType != Response.class &&
+                        isWriteable(returnType, method.getGenericReturnType(), method.getAnnotations(), produces)) {
+                    writers.getUnchecked(new EndpointKey(method.getGenericReturnType(),
+                            findView(method.getAnnotations()), produces));
+                }
+
+                MediaType consumes = mediaType(method.getAnnotation(Consumes.class),
+                        resourceClass.getAnnotation(Consumes.class));
+                Type[] paramTypes = method.getGenericParameterTypes();
+                Annotation[][] paramAnnotations = method.getParameterAnnotations();
+                for (int i = 0; i < paramTypes.length; i++) {
+                    Class<?> paramType = method.getParameterTypes()[i];
+                    if (isEntityParam(paramAnnotations[i]) &&
+                            isReadable(paramType, paramTypes[i], paramAnnotations[i], consumes)) {
+                        readers.getUnchecked(new EndpointKey(paramTypes[i], null, consumes));
+                    }
+                }
+            }
+        }
+    }
+
+    private boolean isResourceMethod(Method method) {
+        for (Annotation annotation : method.getAnnotations()) {
+            if (annotation.annotationType().isAnnotationPresent(HttpMethod.class)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean isEntityParam(Annotation[] annotations) {
+        for (Annotation annotation : annotations) {
+            Class<? extends Annotation> annotationType = annotation.annotationType();
+            if (annotationType == QueryParam.class || annotationType == PathParam.class ||
+                    annotationType == HeaderParam.class || annotationType == CookieParam.class ||
+                    annotationType == MatrixParam.class || annotationType == FormParam.class ||
+                    annotationType == Context.class) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private MediaType mediaType(Annotation methodLevel, Annotation classLevel) {
+        String[] types = null;
+        if (methodLevel instanceof Produces) {
+            types = ((Produces) methodLevel).value();
+        } else if (methodLevel instanceof Consumes) {
+            types = ((Consumes) methodLevel).value();
+        } else if (classLevel instanceof Produces) {
+            types = ((Produces) classLevel).value();
+        } else if (classLevel instanceof Consumes) {
+            types = ((Consumes) classLevel).value();
+        }
+
+        if (types == null || types.length == 0) {
+            return MediaType.APPLICATION_JSON_TYPE;
+        }
+        return MediaType.valueOf(types[0]);
+    }
+
+    private Class<?> findView(Annotation[] annotations) {
+        for (Annotation annotation : annotations) {
+            if (annotation.annotationType() == JsonView.class) {
+                final Class<?>[] views = ((JsonView) annotation).value();
+                if (views.length > 0) {
+                    return views[0];
+                }
+            }
+        }
+        return null;
+    }
+
+    private Type declared(Class<?> type, Type genericType) {
+        return (genericType != null) ? genericType : type;
+    }
+
+    public void setStreaming(boolean streaming) {
+        this.streaming = streaming;
+    }
+
+    public void setFlushInterval(int flushInterval) {
+        this.flushInterval = Math.max(1, flushInterval);
+    }
+
+    public void setCacheSize(int cacheSize) {
+        readers = CacheBuilder.newBuilder()
+                .maximumSize(cacheSize)
+                .build(new CacheLoader<EndpointKey, ObjectReader>() {
+                    @Override
+                    public ObjectReader load(EndpointKey key) {
+                        ObjectMapper mapper = locateMapper(key.rawClass(), key.mediaType);
+                        return mapper.reader(mapper.constructType(key.type));
+                    }
+                });
+        writers = CacheBuilder.newBuilder()
+                .maximumSize(cacheSize)
+                .build(new CacheLoader<EndpointKey, ObjectWriter>() {
+                    @Override
+                    public ObjectWriter load(EndpointKey key) {
+                        ObjectMapper mapper = locateMapper(key.rawClass(), key.mediaType);
+                        ObjectWriter writer = mapper.writer();
+                        if (key.view != null) {
+                            writer = writer.withView(key.view);
+                        }
+                        // plain classes are serialized by their runtime type, generic declarations keep
+                        // their type parameters (same as JacksonJsonProvider)
+                        if (!(key.type instanceof Class)) {
+                            JavaType rootType = mapper.constructType(key.type);
+                            if (rootType.getRawClass() != Object.class) {
+                                writer = writer.withType(rootType);
+                            }
+                        }
+                        return writer;
+                    }
+                });
+    }
+
     @Override
     public boolean isWriteable(Class<?> type,
                                Type genericType,
@@ -89,4 +339,43 @@ public class JacksonMessageBodyProvider extends JacksonJaxbJsonProvider {
         final JsonIgnoreType ignore = type.getAnnotation(JsonIgnoreType.class);
         return (ignore != null) && ignore.value();
     }
+
+    /**
+     * Declared (not resolved) type, so a lookup costs a hash of the reflective {@link Type} jersey
+     * already holds instead of a {@link JavaType} resolution.
+     */
+    private static class EndpointKey {
+        final Type type;
+        final Class<?> view;
+        final MediaType mediaType;
+
+        EndpointKey(Type type, Class<?> view, MediaType mediaType) {
+            this.type = type;
+            this.view = view;
+            this.mediaType = mediaType;
+        }
+
+        Class<?> rawClass() {
+            if (type instanceof Class) {
+                return (Class<?>) type;
+            } else if (type instanceof ParameterizedType) {
+                return (Class<?>) ((ParameterizedType) type).getRawType();
+            }
+            return Object.class;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) { return true; }
+            if ((obj == null) || (getClass() != obj.getClass())) { return false; }
+            final EndpointKey other = (EndpointKey) obj;
+            return type.equals(other.type) && Objects.equal(view, other.view) &&
+                    Objects.equal(mediaType, other.mediaType);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hashCode(type, view, mediaType);
+        }
+    }
 }
@@ -0,0 +1,158 @@
+package halfpipe.jersey;
+
+import com.sun.jersey.api.core.HttpContext;
+import com.sun.jersey.api.model.AbstractResourceMethod;
+import com.sun.jersey.spi.container.ContainerRequest;
+import com.sun.jersey.spi.container.ContainerRequestFilter;
+import com.sun.jersey.spi.container.ContainerResponse;
+import com.sun.jersey.spi.container.ContainerResponseFilter;
+import com.sun.jersey.spi.container.ContainerResponseWriter;
+import com.sun.jersey.spi.container.ResourceMethodDispatchAdapter;
+import com.sun.jersey.spi.container.ResourceMethodDispatchProvider;
+import com.sun.jersey.spi.dispatch.RequestDispatcher;
+import com.yammer.metrics.core.MetricName;
+import halfpipe.metrics.DurationTimer;
+import halfpipe.metrics.RequestTiming;
+import halfpipe.metrics.RequestTiming.Phase;
+import halfpipe.metrics.Timers;
+
+import javax.ws.rs.ext.Provider;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Marks the Jersey side of {@link RequestTiming}: the end of the filters phase when Jersey gets the request, the
+ * end of routing and the resource phase around the dispatch to the resource method, and the write phase up to
+ * the end of the response. Adds the Server-Timing header when the request asks for it, with the phases up to the
+ * resource method, as the write phase is still to come.
+ *
+ * Each resource method gets timers per phase, of the type configured for {@link Timers}, named
+ * group.type.method.phases with the phase as scope, e.g. {@code com.example.FooResource.get.phases} scoped
+ * {@code read}. They are created on the method's first timed request, so methods aren't given any while
+ * {@code http.timing.enabled} is false.
+ */
+@Provider
+public class RequestTimingDispatchAdapter implements ResourceMethodDispatchAdapter, ContainerRequestFilter,
+        ContainerResponseFilter {
+    public static final String SERVER_TIMING = "Server-Timing";
+
+    private final Timers timers;
+
+    public RequestTimingDispatchAdapter(Timers timers) {
+        this.timers = timers;
+    }
+
+    @Override
+    public ResourceMethodDispatchProvider adapt(final ResourceMethodDispatchProvider provider) {
+        return new ResourceMethodDispatchProvider() {
+            @Override
+            public RequestDispatcher create(AbstractResourceMethod method) {
+                final RequestDispatcher dispatcher = provider.create(method);
+                if (dispatcher == null) {
+                    return null;
+                }
+                return new TimedDispatcher(dispatcher, timers,
+                        method.getDeclaringResource().getResourceClass(), method.getMethod().getName() + ".phases");
+            }
+        };
+    }
+
+    @Override
+    public ContainerRequest filter(ContainerRequest request) {
+        final RequestTiming timing = RequestTiming.current();
+        if (timing != null) {
+            timing.mark(Phase.FILTERS);
+        }
+        return request;
+    }
+
+    @Override
+    public ContainerResponse filter(ContainerRequest request, ContainerResponse response) {
+        final RequestTiming timing = RequestTiming.current();
+        if (timing != null) {
+            response.setContainerResponseWriter(new TimedWriter(response.getContainerResponseWriter(), timing));
+        }
+        return response;
+    }
+
+    private static class TimedDispatcher implements RequestDispatcher {
+        private final RequestDispatcher dispatcher;
+        private final Timers timerFactory;
+        private final Class<?> klass;
+        private final String name;
+        private volatile DurationTimer[] timers;
+
+        TimedDispatcher(RequestDispatcher dispatcher, Timers timerFactory, Class<?> klass, String name) {
+            this.dispatcher = dispatcher;
+            this.timerFactory = timerFactory;
+            this.klass = klass;
+            this.name = name;
+        }
+
+        @Override
+        public void dispatch(Object resource, HttpContext context) {
+            final RequestTiming timing = RequestTiming.current();
+            if (timing == null) {
+                dispatcher.dispatch(resource, context);
+                return;
+            }
+            timing.setTimers(timers());
+            timing.mark(Phase.ROUTING);
+            final long entity = timing.getNanos(Phase.READ) + timing.getNanos(Phase.VALIDATE);
+            try {
+                dispatcher.dispatch(resource, context);
+            } finally {
+                timing.mark(Phase.RESOURCE);
+                // reading and validating the entity happened within the dispatch
+                timing.add(Phase.RESOURCE, entity - timing.getNanos(Phase.READ) - timing.getNanos(Phase.VALIDATE));
+            }
+        }
+
+        private DurationTimer[] timers() {
+            DurationTimer[] result = timers;
+            if (result == null) {
+                synchronized (this) {
+                    result = timers;
+                    if (result == null) {
+                        final Phase[] phases = Phase.values();
+                        result = new DurationTimer[phases.length];
+                        for (int i = 0; i < phases.length; i++) {
+                            result[i] = timerFactory.newTimer(new MetricName(klass, name, phases[i].getLabel()),
+                                    TimeUnit.MILLISECONDS, TimeUnit.SECONDS);
+                        }
+                        timers = result;
+                    }
+                }
+            }
+            return result;
+        }
+    }
+
+    private static class TimedWriter implements ContainerResponseWriter {
+        private final ContainerResponseWriter writer;
+        private final RequestTiming timing;
+
+        TimedWriter(ContainerResponseWriter writer, RequestTiming timing) {
+            this.writer = writer;
+            this.timing = timing;
+        }
+
+        @Override
+        public OutputStream writeStatusAndHeaders(long contentLength, ContainerResponse response) throws IOException {
+            if (timing.isServerTiming()) {
+                response.getHttpHeaders().putSingle(SERVER_TIMING, timing.serverTimingHeader());
+            }
+            return writer.writeStatusAndHeaders(contentLength, response);
+        }
+
+        @Override
+        public void finish() throws IOException {
+            try {
+                writer.finish();
+            } finally {
+                timing.mark(Phase.WRITE);
+            }
+        }
+    }
+}
@@ -0,0 +1,144 @@
+package halfpipe.jersey;
+
+import static com.yammer.metrics.core.MetricName.*;
+
+import com.google.common.base.Strings;
+import com.sun.jersey.api.core.HttpContext;
+import com.sun.jersey.api.model.AbstractResourceMethod;
+import com.sun.jersey.spi.container.ResourceMethodDispatchAdapter;
+import com.sun.jersey.spi.container.ResourceMethodDispatchProvider;
+import com.sun.jersey.spi.dispatch.RequestDispatcher;
+import com.yammer.metrics.Metrics;
+import com.yammer.metrics.annotation.ExceptionMetered;
+import com.yammer.metrics.annotation.Metered;
+import com.yammer.metrics.annotation.Timed;
+import com.yammer.metrics.core.Clock;
+import com.yammer.metrics.core.Meter;
+import com.yammer.metrics.core.MetricName;
+import com.yammer.metrics.jersey.InstrumentedResourceMethodDispatchAdapter;
+import halfpipe.metrics.DurationTimer;
+import halfpipe.metrics.Timers;
+
+import javax.ws.rs.ext.Provider;
+import java.lang.reflect.Method;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Instruments resource methods like {@link InstrumentedResourceMethodDispatchAdapter}, but with {@code @Timed}
+ * methods timed by the type of timer configured for {@link Timers}. metrics-jersey would time them in a timer of
+ * its own, so {@code @Timed} methods are instrumented here, {@code @Metered} and {@code @ExceptionMetered} as
+ * metrics-jersey does, and other methods are left to metrics-jersey.
+ */
+@Provider
+public class TimedResourceMethodDispatchAdapter implements ResourceMethodDispatchAdapter {
+    private final Timers timers;
+    private final InstrumentedResourceMethodDispatchAdapter instrumented = new InstrumentedResourceMethodDispatchAdapter();
+
+    public TimedResourceMethodDispatchAdapter(Timers timers) {
+        this.timers = timers;
+    }
+
+    @Override
+    public ResourceMethodDispatchProvider adapt(final ResourceMethodDispatchProvider provider) {
+        final ResourceMethodDispatchProvider instrumentedProvider = instrumented.adapt(provider);
+        return new ResourceMethodDispatchProvider() {
+            @Override
+            public RequestDispatcher create(AbstractResourceMethod method) {
+                final Timed timed = method.getMethod().getAnnotation(Timed.class);
+                if (timed == null) {
+                    return instrumentedProvider.create(method);
+                }
+                RequestDispatcher dispatcher = provider.create(method);
+                if (dispatcher == null) {
+                    return null;
+                }
+                final Class<?> klass = method.getDeclaringResource().getResourceClass();
+                final Method javaMethod = method.getMethod();
+                final MetricName name = new MetricName(chooseGroup(timed.group(), klass),
+                        chooseType(timed.type(), klass), chooseName(timed.name(), javaMethod));
+                dispatcher = new TimedDispatcher(dispatcher,
+                        timers.newTimer(name, timed.durationUnit(), timed.rateUnit()));
+
+                final Metered metered = javaMethod.getAnnotation(Metered.class);
+                if (metered != null) {
+                    final String meterName = Strings.isNullOrEmpty(metered.name())
+                            ? javaMethod.getName() : metered.name();
+                    dispatcher = new MeteredDispatcher(dispatcher,
+                            Metrics.newMeter(klass, meterName, metered.eventType(), metered.rateUnit()));
+                }
+
+                final ExceptionMetered exceptionMetered = javaMethod.getAnnotation(ExceptionMetered.class);
+                if (exceptionMetered != null) {
+                    final String meterName = Strings.isNullOrEmpty(exceptionMetered.name())
+                            ? javaMethod.getName() + ExceptionMetered.DEFAULT_NAME_SUFFIX : exceptionMetered.name();
+                    dispatcher = new ExceptionMeteredDispatcher(dispatcher,
+                            Metrics.newMeter(klass, meterName, "exceptions", exceptionMetered.rateUnit()),
+                            exceptionMetered.cause());
+                }
+                return dispatcher;
+            }
+        };
+    }
+
+    private static class TimedDispatcher implements RequestDispatcher {
+        private static final Clock CLOCK = Clock.defaultClock();
+
+        private final RequestDispatcher dispatcher;
+        private final DurationTimer timer;
+
+        TimedDispatcher(RequestDispatcher dispatcher, DurationTimer timer) {
+            this.dispatcher = dispatcher;
+            this.timer = timer;
+        }
+
+        @Override
+        public void dispatch(Object resource, HttpContext context) {
+            final long start = CLOCK.tick();
+            try {
+                dispatcher.dispatch(resource, context);
+            } finally {
+                timer.update(CLOCK.tick() - start, TimeUnit.NANOSECONDS);
+            }
+        }
+    }
+
+    private static class MeteredDispatcher implements RequestDispatcher {
+        private final RequestDispatcher dispatcher;
+        private final Meter meter;
+
+        MeteredDispatcher(RequestDispatcher dispatcher, Meter meter) {
+            this.dispatcher = dispatcher;
+            this.meter = meter;
+        }
+
+        @Override
+        public void dispatch(Object resource, HttpContext context) {
+            meter.mark();
+            dispatcher.dispatch(resource, context);
+        }
+    }
+
+    private static class ExceptionMeteredDispatcher implements RequestDispatcher {
+        private final RequestDispatcher dispatcher;
+        private final Meter meter;
+        private final Class<? extends Throwable> cause;
+
+        ExceptionMeteredDispatcher(RequestDispatcher dispatcher, Meter meter, Class<? extends Throwable> cause) {
+            this.dispatcher = dispatcher;
+            this.meter = meter;
+            this.cause = cause;
+        }
+
+        @Override
+        public void dispatch(Object resource, HttpContext context) {
+            try {
+                dispatcher.dispatch(resource, context);
+            } catch (RuntimeException e) {
+                if (cause.isInstance(e) || cause.isInstance(e.getCause())) {
+                    meter.mark();
+                }
+                throw e;
+            }
+        }
+    }
+}
@@ -1,22 +1,58 @@
 package halfpipe.logging;
 
+import ch.qos.logback.classic.Level;
 import ch.qos.logback.classic.spi.ILoggingEvent;
 import ch.qos.logback.core.Appender;
-import ch.qos.logback.core.AppenderBase;
-import com.google.common.collect.Lists;
-import com.google.common.collect.Queues;
+import ch.qos.logback.core.UnsynchronizedAppenderBase;
 import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.yammer.metrics.Metrics;
+import com.yammer.metrics.core.Counter;
+import com.yammer.metrics.core.Gauge;
+import com.yammer.metrics.core.MetricName;
+import com.yammer.metrics.core.MetricsRegistry;
+import com.yammer.metrics.core.Timer;
 
-import java.util.List;
-import java.util.concurrent.BlockingQueue;
+import java.io.Flushable;
+import java.io.IOException;
 import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
 
+/**
+ * Hands events to a single dispatcher thread through a preallocated, bounded ring buffer. Any number of
+ * threads may append; what happens when the buffer is full is decided by the {@link OverflowPolicy}.
+ *
+ * Delegates that are {@link Flushable} are flushed once per dispatched batch rather than per event. Stopping
+ * the appender dispatches what is still buffered and then stops the delegate; events appended once it is
+ * stopping are dropped.
+ *
+ * Queue depth, dropped events and how long events wait in the buffer before they are dispatched are
+ * exported as metrics scoped by the delegate's name.
+ */
 //see original at dropwizard
-public class AsyncAppender extends AppenderBase<ILoggingEvent> implements Runnable {
-    private static final int BATCH_SIZE = 1000;
+public class AsyncAppender extends UnsynchronizedAppenderBase<ILoggingEvent> implements Runnable {
+    private static final int DEFAULT_CAPACITY = 8192;
+    private static final long WAIT_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+    private static final long BLOCK_NANOS = TimeUnit.MICROSECONDS.toNanos(100);
+
+    public enum OverflowPolicy {
+        /** wait for room in the buffer */
+        BLOCK,
+        /** once the buffer is 80% full drop TRACE, DEBUG and INFO events, block for the rest */
+        DISCARD_BELOW_WARN,
+        /** drop any event that doesn't fit */
+        DROP
+    }
 
     public static Appender<ILoggingEvent> wrap(Appender<ILoggingEvent> delegate) {
-        final AsyncAppender appender = new AsyncAppender(delegate, BATCH_SIZE);
+        return wrap(delegate, DEFAULT_CAPACITY, OverflowPolicy.DISCARD_BELOW_WARN);
+    }
+
+    public static Appender<ILoggingEvent> wrap(Appender<ILoggingEvent> delegate, int capacity, OverflowPolicy policy) {
+        final AsyncAppender appender = new AsyncAppender(delegate, capacity, policy, Metrics.defaultRegistry());
         appender.start();
         return appender;
     }
@@ -27,25 +63,125 @@ public class AsyncAppender extends AppenderBase<ILoggingEvent> implements Runnab
                                       .build();
 
     private final Appender<ILoggingEvent> delegate;
-    private final BlockingQueue<ILoggingEvent> queue;
-    private final List<ILoggingEvent> batch;
+    private final AtomicReferenceArray<ILoggingEvent> buffer;
+    // System.nanoTime() each slot's event was enqueued at, published by the event's lazySet
+    private final AtomicLongArray enqueued;
+    private final int mask;
+    private final int discardThreshold;
+    private final OverflowPolicy policy;
+    private final AtomicLong tail = new AtomicLong();
+    private volatile long head;
+    private volatile boolean waiting;
     private final Thread dispatcher;
-    private final int batchSize;
     private volatile boolean running;
 
-    public AsyncAppender(Appender<ILoggingEvent> delegate, int batchSize) {
+    private final MetricsRegistry registry;
+    private final MetricName depthName;
+    private final MetricName droppedName;
+    private final MetricName dispatchName;
+    private final Counter dropped;
+    private final Timer dispatch;
+
+    public AsyncAppender(Appender<ILoggingEvent> delegate, int capacity, OverflowPolicy policy,
+                         MetricsRegistry registry) {
         this.delegate = delegate;
-        this.queue = Queues.newLinkedBlockingQueue();
-        this.batch = Lists.newArrayListWithCapacity(batchSize);
-        this.batchSize = batchSize;
+        this.buffer = new AtomicReferenceArray<ILoggingEvent>(powerOfTwo(capacity));
+        this.enqueued = new AtomicLongArray(buffer.length());
+        this.mask = buffer.length() - 1;
+        this.discardThreshold = buffer.length() / 5;
+        this.policy = policy;
         this.dispatcher = THREAD_FACTORY.newThread(this);
         setContext(delegate.getContext());
+
+        final String scope = delegate.getName();
+        this.registry = registry;
+        this.depthName = new MetricName(AsyncAppender.class, "queue-depth", scope);
+        this.droppedName = new MetricName(AsyncAppender.class, "dropped", scope);
+        this.dispatchName = new MetricName(AsyncAppender.class, "dispatch", scope);
+        this.dropped = registry.newCounter(droppedName);
+        this.dispatch = registry.newTimer(dispatchName, TimeUnit.MICROSECONDS, TimeUnit.SECONDS);
+        registry.newGauge(depthName, new Gauge<Long>() {
+            @Override
+            public Long value() {
+                return size();
+            }
+        });
+    }
+
+    private static int powerOfTwo(int capacity) {
+        int size = 2;
+        while (size < capacity) {
+            size <<= 1;
+        }
+        return size;
+    }
+
+    public long size() {
+        return tail.get() - head;
     }
 
     @Override
     protected void append(ILoggingEvent eventObject) {
+        // once stopping, the dispatcher may already have drained the buffer for the last time
+        if (!running) {
+            dropped.inc();
+            return;
+        }
+        if (policy == OverflowPolicy.DISCARD_BELOW_WARN && isDiscardable(eventObject)
+                && buffer.length() - size() < discardThreshold) {
+            dropped.inc();
+            return;
+        }
+
         eventObject.prepareForDeferredProcessing();
-        queue.add(eventObject);
+        while (!offer(eventObject)) {
+            if (policy == OverflowPolicy.DROP || !running) {
+                dropped.inc();
+                return;
+            }
+            LockSupport.parkNanos(BLOCK_NANOS);
+        }
+    }
+
+    private boolean isDiscardable(ILoggingEvent event) {
+        return event.getLevel().toInt() <= Level.INFO_INT;
+    }
+
+    private boolean offer(ILoggingEvent event) {
+        while (true) {
+            final long slot = tail.get();
+            if (slot - head >= buffer.length()) {
+                return false;
+            }
+            if (tail.compareAndSet(slot, slot + 1)) {
+                final int index = (int) slot & mask;
+                enqueued.lazySet(index, System.nanoTime());
+                buffer.lazySet(index, event);
+                if (waiting) {
+                    LockSupport.unpark(dispatcher);
+                }
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Only called by the dispatcher thread, or by {@link #stop()} once it has ended. A claimed slot may not be published yet, in which case
+     * the event is picked up on the next call.
+     */
+    private ILoggingEvent poll() {
+        final long slot = head;
+        if (slot == tail.get()) {
+            return null;
+        }
+        final int index = (int) slot & mask;
+        final ILoggingEvent event = buffer.get(index);
+        if (event != null) {
+            dispatch.update(System.nanoTime() - enqueued.get(index), TimeUnit.NANOSECONDS);
+            buffer.lazySet(index, null);
+            head = slot + 1;
+        }
+        return event;
     }
 
     @Override
@@ -58,29 +194,55 @@ public class AsyncAppender extends AppenderBase<ILoggingEvent> implements Runnab
     @Override
     public void stop() {
         this.running = false;
+        LockSupport.unpark(dispatcher);
         try {
             dispatcher.join();
         } catch (InterruptedException ignored) {
             Thread.currentThread().interrupt();
         }
+        // events that got in while the dispatcher was finishing
+        dispatchAvailable();
+        // the delegate only ever sees this dispatcher, so it goes down with it
+        delegate.stop();
+        registry.removeMetric(depthName);
+        registry.removeMetric(droppedName);
+        registry.removeMetric(dispatchName);
         super.stop();
     }
 
     @Override
     public void run() {
         while (running) {
-            try {
-                batch.add(queue.take());
-                queue.drainTo(batch, batchSize - 1);
-
-                for (ILoggingEvent event : batch) {
-                    delegate.doAppend(event);
+            if (!dispatchAvailable()) {
+                waiting = true;
+                if (size() == 0 && running) {
+                    LockSupport.parkNanos(this, WAIT_NANOS);
                 }
+                waiting = false;
+            }
+        }
+        // flush what was appended before stop
+        while (size() > 0) {
+            if (!dispatchAvailable()) {
+                Thread.yield();
+            }
+        }
+    }
 
-                batch.clear();
-            } catch (InterruptedException ignored) {
-                Thread.currentThread().interrupt();
+    private boolean dispatchAvailable() {
+        boolean dispatched = false;
+        ILoggingEvent event;
+        while ((event = poll()) != null) {
+            delegate.doAppend(event);
+            dispatched = true;
+        }
+        if (dispatched && delegate instanceof Flushable) {
+            try {
+                ((Flushable) delegate).flush();
+            } catch (IOException e) {
+                addError("Unable to flush " + delegate.getName(), e);
             }
         }
+        return dispatched;
     }
 }
@@ -0,0 +1,237 @@
+package halfpipe.logging;
+
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.Layout;
+import ch.qos.logback.core.UnsynchronizedAppenderBase;
+import com.google.common.io.ByteStreams;
+import com.google.common.io.Closeables;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilenameFilter;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.text.SimpleDateFormat;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.TimeZone;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Appends events to a file through a buffered {@link FileChannel}. Nothing is written per event, the buffer
+ * goes to disk when it fills up or on {@link #flush()}, which {@link AsyncAppender}'s dispatcher calls once
+ * per batch.
+ *
+ * The file is rolled over when it would grow past {@code maxFileSize} or when an event falls into a new
+ * {@code rolloverPeriod}. Only the newest {@code archivedFileCount} archives are kept, optionally gzipped
+ * in the background.
+ *
+ * Not thread-safe, meant to be wrapped in an {@link AsyncAppender}.
+ */
+public class BufferedFileAppender extends UnsynchronizedAppenderBase<ILoggingEvent> implements Flushable {
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final String GZ = ".gz";
+
+    private static final ExecutorService ARCHIVER = Executors.newSingleThreadExecutor(
+            new ThreadFactoryBuilder().setNameFormat("log-archiver-%d")
+                                      .setDaemon(true)
+                                      .build());
+
+    private final File file;
+    private final Layout<ILoggingEvent> layout;
+    private final long maxFileSize;
+    private final long rolloverPeriodMillis;
+    private final int archivedFileCount;
+    private final boolean compress;
+
+    private final ByteBuffer buffer;
+    private final CharsetEncoder encoder = UTF_8.newEncoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    private final SimpleDateFormat archiveFormat = new SimpleDateFormat("yyyy-MM-dd-HHmmss");
+
+    private FileOutputStream out;
+    private FileChannel channel;
+    private long fileSize;
+    private long periodEnd;
+
+    public BufferedFileAppender(File file, Layout<ILoggingEvent> layout, int bufferSize, long maxFileSize,
+                                long rolloverPeriodMillis, int archivedFileCount, boolean compress) {
+        this.file = file;
+        this.layout = layout;
+        this.buffer = ByteBuffer.allocateDirect(bufferSize);
+        this.maxFileSize = maxFileSize;
+        this.rolloverPeriodMillis = rolloverPeriodMillis;
+        this.archivedFileCount = archivedFileCount;
+        this.compress = compress;
+        archiveFormat.setTimeZone(TimeZone.getTimeZone("UTC"));
+    }
+
+    @Override
+    public void start() {
+        try {
+            final File dir = file.getAbsoluteFile().getParentFile();
+            if (!dir.exists() && !dir.mkdirs()) {
+                throw new IOException("Unable to create log directory " + dir);
+            }
+            open(System.currentTimeMillis());
+            super.start();
+        } catch (IOException e) {
+            addError("Unable to open log file " + file, e);
+        }
+    }
+
+    @Override
+    public void stop() {
+        if (!isStarted()) {
+            return;
+        }
+        super.stop();
+        try {
+            flush();
+        } catch (IOException e) {
+            addError("Unable to flush log file " + file, e);
+        }
+        Closeables.closeQuietly(out);
+        channel = null;
+    }
+
+    boolean isOpen() {
+        return channel != null && channel.isOpen();
+    }
+
+    @Override
+    protected void append(ILoggingEvent event) {
+        try {
+            if (event.getTimeStamp() >= periodEnd) {
+                rollover(event.getTimeStamp());
+            }
+
+            final CharBuffer chars = CharBuffer.wrap(layout.doLayout(event));
+            while (true) {
+                final CoderResult result = encoder.encode(chars, buffer, true);
+                if (!result.isOverflow()) {
+                    break;
+                }
+                flush();
+            }
+            encoder.reset();
+
+            if (fileSize + buffer.position() >= maxFileSize) {
+                flush();
+                rollover(event.getTimeStamp());
+            }
+        } catch (IOException e) {
+            addError("Unable to write to log file " + file, e);
+        }
+    }
+
+    @Override
+    public void flush() throws IOException {
+        if (channel == null || buffer.position() == 0) {
+            return;
+        }
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            fileSize += channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    private void open(long now) throws IOException {
+        out = new FileOutputStream(file, true);
+        channel = out.getChannel();
+        fileSize = channel.size();
+        periodEnd = (now / rolloverPeriodMillis + 1) * rolloverPeriodMillis;
+    }
+
+    private void rollover(long now) throws IOException {
+        flush();
+        Closeables.closeQuietly(out);
+
+        final String name = file.getPath() + "." + archiveFormat.format(new Date(now));
+        File candidate = new File(name);
+        for (int i = 1; candidate.exists() || new File(candidate.getPath() + GZ).exists(); i++) {
+            candidate = new File(name + "-" + i);
+        }
+        final File archive = candidate;
+        if (fileSize > 0 && file.renameTo(archive)) {
+            ARCHIVER.submit(new Runnable() {
+                @Override
+                public void run() {
+                    archive(archive);
+                }
+            });
+        }
+        open(now);
+    }
+
+    private void archive(File archive) {
+        if (compress) {
+            try {
+                gzip(archive);
+            } catch (IOException e) {
+                addError("Unable to compress log file " + archive, e);
+            }
+        }
+
+        final String prefix = file.getName() + ".";
+        final File[] archives = file.getAbsoluteFile().getParentFile().listFiles(new FilenameFilter() {
+            @Override
+            public boolean accept(File dir, String name) {
+                return name.startsWith(prefix);
+            }
+        });
+        if (archives == null || archives.length <= archivedFileCount) {
+            return;
+        }
+        // archive names sort by the time they were rolled
+        Arrays.sort(archives, new Comparator<File>() {
+            @Override
+            public int compare(File a, File b) {
+                return withoutGz(b.getName()).compareTo(withoutGz(a.getName()));
+            }
+        });
+        for (int i = archivedFileCount; i < archives.length; i++) {
+            if (!archives[i].delete()) {
+                addWarn("Unable to delete old log file " + archives[i]);
+            }
+        }
+    }
+
+    private static String withoutGz(String name) {
+        return name.endsWith(GZ) ? name.substring(0, name.length() - GZ.length()) : name;
+    }
+
+    private void gzip(File archive) throws IOException {
+        final File compressed = new File(archive.getPath() + GZ);
+        final InputStream in = new FileInputStream(archive);
+        try {
+            final OutputStream gz = new GZIPOutputStream(new FileOutputStream(compressed), 64 * 1024);
+            try {
+                ByteStreams.copy(in, gz);
+            } finally {
+                gz.close();
+            }
+        } finally {
+            in.close();
+        }
+        if (!archive.delete()) {
+            addWarn("Unable to delete log file " + archive + " after compressing it");
+        }
+    }
+}
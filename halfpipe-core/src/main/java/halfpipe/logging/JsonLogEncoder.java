@@ -0,0 +1,219 @@
+package halfpipe.logging;
+
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.encoder.EncoderBase;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Map;
+import java.util.TimeZone;
+
+/**
+ * Writes each event as a single line of JSON:
+ *
+ * <code>
+ * {"timestamp":"2013-03-01T12:00:00.000+0000","level":"INFO","thread":"main","logger":"a.b.C","message":"...","marker":"...","mdc":{...},"exception":"..."}
+ * </code>
+ *
+ * Field names are encoded once, the timestamp is formatted once per second and strings are escaped straight
+ * into a reusable byte buffer. {@code marker}, {@code mdc} and {@code exception} are only written when present, the
+ * latter formatted by {@link PrefixedThrowableProxyConverter}.
+ *
+ * Called under the appender's lock, so not thread-safe itself.
+ */
+public class JsonLogEncoder extends EncoderBase<ILoggingEvent> {
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final int INITIAL_SIZE = 1024;
+    private static final int MAX_RETAINED = 64 * 1024;
+    private static final byte[] HEX = ascii("0123456789abcdef");
+
+    private static final byte[] TIMESTAMP = ascii("{\"timestamp\":\"");
+    private static final byte[] LEVEL = ascii("\",\"level\":\"");
+    private static final byte[] THREAD = ascii("\",\"thread\":\"");
+    private static final byte[] LOGGER = ascii("\",\"logger\":\"");
+    private static final byte[] MESSAGE = ascii("\",\"message\":\"");
+    private static final byte[] MARKER = ascii("\",\"marker\":\"");
+    private static final byte[] MDC = ascii("\",\"mdc\":{");
+    private static final byte[] MDC_END = ascii("}");
+    private static final byte[] EXCEPTION = ascii(",\"exception\":\"");
+    private static final byte[] QUOTE = ascii("\"");
+    private static final byte[] FIELD_SEPARATOR = ascii("\":\"");
+    private static final byte[] NEXT_FIELD = ascii("\",\"");
+    private static final byte[] END = ascii("}\n");
+
+    private final SimpleDateFormat secondFormat = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.");
+    private final SimpleDateFormat zoneFormat = new SimpleDateFormat("Z");
+    private final PrefixedThrowableProxyConverter throwableConverter = new PrefixedThrowableProxyConverter();
+
+    private byte[] buffer = new byte[INITIAL_SIZE];
+    private int position;
+
+    private long cachedSecond = Long.MIN_VALUE;
+    private byte[] cachedSecondBytes;
+    private byte[] cachedZoneBytes;
+
+    public JsonLogEncoder(TimeZone timeZone) {
+        secondFormat.setTimeZone(timeZone);
+        zoneFormat.setTimeZone(timeZone);
+    }
+
+    private static byte[] ascii(String s) {
+        return s.getBytes(UTF_8);
+    }
+
+    @Override
+    public void start() {
+        throwableConverter.setContext(getContext());
+        throwableConverter.start();
+        super.start();
+    }
+
+    @Override
+    public void stop() {
+        throwableConverter.stop();
+        super.stop();
+    }
+
+    @Override
+    public void doEncode(ILoggingEvent event) throws IOException {
+        position = 0;
+        write(TIMESTAMP);
+        writeTimestamp(event.getTimeStamp());
+        write(LEVEL);
+        writeString(event.getLevel().toString());
+        write(THREAD);
+        writeString(event.getThreadName());
+        write(LOGGER);
+        writeString(event.getLoggerName());
+        write(MESSAGE);
+        writeString(event.getFormattedMessage());
+        if (event.getMarker() != null) {
+            write(MARKER);
+            writeString(event.getMarker().toString());
+        }
+
+        final Map<String, String> mdc = event.getMDCPropertyMap();
+        if (mdc != null && !mdc.isEmpty()) {
+            write(MDC);
+            boolean first = true;
+            for (Map.Entry<String, String> entry : mdc.entrySet()) {
+                write(first ? QUOTE : NEXT_FIELD);
+                writeString(entry.getKey());
+                write(FIELD_SEPARATOR);
+                writeString(entry.getValue());
+                first = false;
+            }
+            write(QUOTE);
+            write(MDC_END);
+        } else {
+            write(QUOTE);
+        }
+
+        if (event.getThrowableProxy() != null) {
+            write(EXCEPTION);
+            writeString(throwableConverter.convert(event));
+            write(QUOTE);
+        }
+        write(END);
+
+        outputStream.write(buffer, 0, position);
+        if (buffer.length > MAX_RETAINED) {
+            // don't hold on to the buffer of the odd huge event
+            buffer = new byte[INITIAL_SIZE];
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+    }
+
+    private void writeTimestamp(long millis) {
+        final long second = millis / 1000;
+        if (second != cachedSecond) {
+            final Date date = new Date(second * 1000);
+            cachedSecondBytes = ascii(secondFormat.format(date));
+            cachedZoneBytes = ascii(zoneFormat.format(date));
+            cachedSecond = second;
+        }
+        write(cachedSecondBytes);
+        final int ms = (int) (millis % 1000);
+        ensure(3);
+        buffer[position++] = (byte) ('0' + ms / 100);
+        buffer[position++] = (byte) ('0' + ms / 10 % 10);
+        buffer[position++] = (byte) ('0' + ms % 10);
+        write(cachedZoneBytes);
+    }
+
+    private void write(byte[] bytes) {
+        ensure(bytes.length);
+        System.arraycopy(bytes, 0, buffer, position, bytes.length);
+        position += bytes.length;
+    }
+
+    /**
+     * Writes {@code s} as the UTF-8 encoded contents of a JSON string
+     */
+    private void writeString(String s) {
+        if (s == null) {
+            return;
+        }
+        final int length = s.length();
+        // worst case is a six byte escape per char
+        ensure(length * 6);
+        final byte[] b = buffer;
+        int p = position;
+        for (int i = 0; i < length; i++) {
+            final char c = s.charAt(i);
+            if (c < 0x80) {
+                if (c == '"' || c == '\\') {
+                    b[p++] = '\\';
+                    b[p++] = (byte) c;
+                } else if (c >= 0x20) {
+                    b[p++] = (byte) c;
+                } else if (c == '\n') {
+                    b[p++] = '\\';
+                    b[p++] = 'n';
+                } else if (c == '\r') {
+                    b[p++] = '\\';
+                    b[p++] = 'r';
+                } else if (c == '\t') {
+                    b[p++] = '\\';
+                    b[p++] = 't';
+                } else {
+                    b[p++] = '\\';
+                    b[p++] = 'u';
+                    b[p++] = '0';
+                    b[p++] = '0';
+                    b[p++] = HEX[c >> 4];
+                    b[p++] = HEX[c & 0xF];
+                }
+            } else if (c < 0x800) {
+                b[p++] = (byte) (0xC0 | c >> 6);
+                b[p++] = (byte) (0x80 | c & 0x3F);
+            } else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(s.charAt(i + 1))) {
+                final int cp = Character.toCodePoint(c, s.charAt(++i));
+                b[p++] = (byte) (0xF0 | cp >> 18);
+                b[p++] = (byte) (0x80 | cp >> 12 & 0x3F);
+                b[p++] = (byte) (0x80 | cp >> 6 & 0x3F);
+                b[p++] = (byte) (0x80 | cp & 0x3F);
+            } else if (c >= Character.MIN_SURROGATE && c <= Character.MAX_SURROGATE) {
+                b[p++] = '?';
+            } else {
+                b[p++] = (byte) (0xE0 | c >> 12);
+                b[p++] = (byte) (0x80 | c >> 6 & 0x3F);
+                b[p++] = (byte) (0x80 | c & 0x3F);
+            }
+        }
+        position = p;
+    }
+
+    private void ensure(int bytes) {
+        if (position + bytes > buffer.length) {
+            final byte[] grown = new byte[Math.max(buffer.length * 2, position + bytes)];
+            System.arraycopy(buffer, 0, grown, 0, position);
+            buffer = grown;
+        }
+    }
+}
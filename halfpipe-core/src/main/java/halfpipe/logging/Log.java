@@ -3,9 +3,10 @@ package halfpipe.logging;
 import ch.qos.logback.classic.Level;
 import ch.qos.logback.classic.Logger;
 import org.slf4j.LoggerFactory;
-import org.slf4j.helpers.MessageFormatter;
 
 import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 /**
  * A logger class which provides SLF4J-style formatting without SLF4J's less-than-pleasant API.
@@ -24,6 +25,9 @@ import java.util.Locale;
  * LOG.warn(exception, "Exceptions go first but don't prevent message formatting: {}", otherStuff);
  * </code>
  *
+ * Up to four arguments, or a single primitive one, are taken without allocating a varargs array or boxing,
+ * and nothing is formatted unless the level is enabled.
+ *
  * see original at dropwizard
  */
 @SuppressWarnings("UnusedDeclaration")
@@ -31,18 +35,46 @@ public class Log {
 
 	/**
 	 * Returns a {@link Log} instance for the current class.
-	 * The current class is determined in the static context by inspecting the stack.
+	 * The current class is determined in the static context from {@link SecurityManager#getClassContext()}, or
+	 * a stack trace where no {@link SecurityManager} can be created, so this is meant for {@code static final}
+	 * fields rather than per call.
 	 * Further details about this approach may be found
 	 * <a href="http://www.javaspecialists.eu/archive/Issue137.html">here</a>.
 	 *
 	 * @return a {@link Log} instance with the current class name
 	 */
 	public static Log forThisClass() {
-		Throwable t = new Throwable();
-		StackTraceElement directCaller = t.getStackTrace()[1];
+		if (CALLER_RESOLVER != null) {
+			return forClass(CALLER_RESOLVER.callerClass());
+		}
+		// [0] is forThisClass
+		final StackTraceElement directCaller = new Throwable().getStackTrace()[1];
 		return named(directCaller.getClassName());
 	}
 
+	private static final CallerResolver CALLER_RESOLVER = callerResolver();
+
+	private static final ConcurrentMap<String, Log> LOGS = new ConcurrentHashMap<String, Log>();
+
+	/**
+	 * @return null if the installed security manager doesn't allow creating another, in which case the caller is
+	 * found in a stack trace
+	 */
+	private static CallerResolver callerResolver() {
+		try {
+			return new CallerResolver();
+		} catch (SecurityException e) {
+			return null;
+		}
+	}
+
+	private static class CallerResolver extends SecurityManager {
+		// [0] is this class, [1] is Log
+		Class<?> callerClass() {
+			return getClassContext()[2];
+		}
+	}
+
 	/**
      * Returns a {@link Log} instance for the given class.
      *
@@ -50,14 +82,7 @@ public class Log {
      * @return a {@link Log} instance with {@code klass}'s name
      */
     public static Log forClass(Class<?> klass) {
-        // a thread-safe SLF4J initialization routine is apparently hard, so I get to do dumb
-        // shit like this
-        while (true) {
-            final org.slf4j.Logger logger = LoggerFactory.getLogger(klass);
-            if (logger instanceof Logger) {
-                return forSlf4jLogger(logger);
-            }
-        }
+        return named(klass.getName());
     }
 
     /**
@@ -67,12 +92,18 @@ public class Log {
      * @return a {@link Log} instance with the given name
      */
     public static Log named(String name) {
+        final Log log = LOGS.get(name);
+        if (log != null) {
+            return log;
+        }
         // a thread-safe SLF4J initialization routine is apparently hard, so I get to do dumb
         // shit like this
         while (true) {
             final org.slf4j.Logger logger = LoggerFactory.getLogger(name);
             if (logger instanceof Logger) {
-                return forSlf4jLogger(logger);
+                final Log created = forSlf4jLogger(logger);
+                final Log existing = LOGS.putIfAbsent(name, created);
+                return existing != null ? existing : created;
             }
         }
     }
@@ -140,37 +171,91 @@ public class Log {
 
     public void trace(String message, Object arg) {
         if (isTraceEnabled()) {
-            logger.trace(MessageFormatter.format(message, arg).getMessage());
+            logger.trace(MessageBuilder.format(message, arg));
         }
     }
 
     public void trace(String message, Object arg1, Object arg2) {
         if (isTraceEnabled()) {
-            logger.trace(MessageFormatter.format(message, arg1, arg2).getMessage());
+            logger.trace(MessageBuilder.format(message, arg1, arg2));
+        }
+    }
+
+    public void trace(String message, Object arg1, Object arg2, Object arg3) {
+        if (isTraceEnabled()) {
+            logger.trace(MessageBuilder.format(message, arg1, arg2, arg3));
+        }
+    }
+
+    public void trace(String message, Object arg1, Object arg2, Object arg3, Object arg4) {
+        if (isTraceEnabled()) {
+            logger.trace(MessageBuilder.format(message, arg1, arg2, arg3, arg4));
+        }
+    }
+
+    public void trace(String message, int arg) {
+        if (isTraceEnabled()) {
+            logger.trace(MessageBuilder.start(message).arg(arg).build());
+        }
+    }
+
+    public void trace(String message, long arg) {
+        if (isTraceEnabled()) {
+            logger.trace(MessageBuilder.start(message).arg(arg).build());
+        }
+    }
+
+    public void trace(String message, double arg) {
+        if (isTraceEnabled()) {
+            logger.trace(MessageBuilder.start(message).arg(arg).build());
+        }
+    }
+
+    public void trace(String message, float arg) {
+        if (isTraceEnabled()) {
+            logger.trace(MessageBuilder.start(message).arg(arg).build());
+        }
+    }
+
+    public void trace(String message, char arg) {
+        if (isTraceEnabled()) {
+            logger.trace(MessageBuilder.start(message).arg(arg).build());
         }
     }
 
     public void trace(String message, Object... args) {
         if (isTraceEnabled()) {
-            logger.trace(MessageFormatter.arrayFormat(message, args).getMessage());
+            logger.trace(MessageBuilder.format(message, args));
         }
     }
 
     public void trace(Throwable e, String message, Object arg) {
         if (isTraceEnabled()) {
-            logger.trace(MessageFormatter.format(message, arg).getMessage(), e);
+            logger.trace(MessageBuilder.format(message, arg), e);
         }
     }
 
     public void trace(Throwable e, String message, Object arg1, Object arg2) {
         if (isTraceEnabled()) {
-            logger.trace(MessageFormatter.format(message, arg1, arg2).getMessage(), e);
+            logger.trace(MessageBuilder.format(message, arg1, arg2), e);
+        }
+    }
+
+    public void trace(Throwable e, String message, Object arg1, Object arg2, Object arg3) {
+        if (isTraceEnabled()) {
+            logger.trace(MessageBuilder.format(message, arg1, arg2, arg3), e);
+        }
+    }
+
+    public void trace(Throwable e, String message, Object arg1, Object arg2, Object arg3, Object arg4) {
+        if (isTraceEnabled()) {
+            logger.trace(MessageBuilder.format(message, arg1, arg2, arg3, arg4), e);
         }
     }
 
     public void trace(Throwable e, String message, Object... args) {
         if (isTraceEnabled()) {
-            logger.trace(MessageFormatter.arrayFormat(message, args).getMessage(), e);
+            logger.trace(MessageBuilder.format(message, args), e);
         }
     }
 
@@ -186,37 +271,91 @@ public class Log {
 
     public void debug(String message, Object arg) {
         if (isDebugEnabled()) {
-            logger.debug(MessageFormatter.format(message, arg).getMessage());
+            logger.debug(MessageBuilder.format(message, arg));
         }
     }
 
     public void debug(String message, Object arg1, Object arg2) {
         if (isDebugEnabled()) {
-            logger.debug(MessageFormatter.format(message, arg1, arg2).getMessage());
+            logger.debug(MessageBuilder.format(message, arg1, arg2));
+        }
+    }
+
+    public void debug(String message, Object arg1, Object arg2, Object arg3) {
+        if (isDebugEnabled()) {
+            logger.debug(MessageBuilder.format(message, arg1, arg2, arg3));
+        }
+    }
+
+    public void debug(String message, Object arg1, Object arg2, Object arg3, Object arg4) {
+        if (isDebugEnabled()) {
+            logger.debug(MessageBuilder.format(message, arg1, arg2, arg3, arg4));
+        }
+    }
+
+    public void debug(String message, int arg) {
+        if (isDebugEnabled()) {
+            logger.debug(MessageBuilder.start(message).arg(arg).build());
+        }
+    }
+
+    public void debug(String message, long arg) {
+        if (isDebugEnabled()) {
+            logger.debug(MessageBuilder.start(message).arg(arg).build());
+        }
+    }
+
+    public void debug(String message, double arg) {
+        if (isDebugEnabled()) {
+            logger.debug(MessageBuilder.start(message).arg(arg).build());
+        }
+    }
+
+    public void debug(String message, float arg) {
+        if (isDebugEnabled()) {
+            logger.debug(MessageBuilder.start(message).arg(arg).build());
+        }
+    }
+
+    public void debug(String message, char arg) {
+        if (isDebugEnabled()) {
+            logger.debug(MessageBuilder.start(message).arg(arg).build());
         }
     }
 
     public void debug(String message, Object... args) {
         if (isDebugEnabled()) {
-            logger.debug(MessageFormatter.arrayFormat(message, args).getMessage());
+            logger.debug(MessageBuilder.format(message, args));
         }
     }
 
     public void debug(Throwable e, String message, Object arg) {
         if (isDebugEnabled()) {
-            logger.debug(MessageFormatter.format(message, arg).getMessage(), e);
+            logger.debug(MessageBuilder.format(message, arg), e);
         }
     }
 
     public void debug(Throwable e, String message, Object arg1, Object arg2) {
         if (isDebugEnabled()) {
-            logger.debug(MessageFormatter.format(message, arg1, arg2).getMessage(), e);
+            logger.debug(MessageBuilder.format(message, arg1, arg2), e);
+        }
+    }
+
+    public void debug(Throwable e, String message, Object arg1, Object arg2, Object arg3) {
+        if (isDebugEnabled()) {
+            logger.debug(MessageBuilder.format(message, arg1, arg2, arg3), e);
+        }
+    }
+
+    public void debug(Throwable e, String message, Object arg1, Object arg2, Object arg3, Object arg4) {
+        if (isDebugEnabled()) {
+            logger.debug(MessageBuilder.format(message, arg1, arg2, arg3, arg4), e);
         }
     }
 
     public void debug(Throwable e, String message, Object... args) {
         if (isDebugEnabled()) {
-            logger.debug(MessageFormatter.arrayFormat(message, args).getMessage(), e);
+            logger.debug(MessageBuilder.format(message, args), e);
         }
     }
 
@@ -232,135 +371,329 @@ public class Log {
 
     public void info(String message, Object arg) {
         if (isInfoEnabled()) {
-            logger.info(MessageFormatter.format(message, arg).getMessage());
+            logger.info(MessageBuilder.format(message, arg));
         }
     }
 
     public void info(String message, Object arg1, Object arg2) {
         if (isInfoEnabled()) {
-            logger.info(MessageFormatter.format(message, arg1, arg2).getMessage());
+            logger.info(MessageBuilder.format(message, arg1, arg2));
+        }
+    }
+
+    public void info(String message, Object arg1, Object arg2, Object arg3) {
+        if (isInfoEnabled()) {
+            logger.info(MessageBuilder.format(message, arg1, arg2, arg3));
+        }
+    }
+
+    public void info(String message, Object arg1, Object arg2, Object arg3, Object arg4) {
+        if (isInfoEnabled()) {
+            logger.info(MessageBuilder.format(message, arg1, arg2, arg3, arg4));
+        }
+    }
+
+    public void info(String message, int arg) {
+        if (isInfoEnabled()) {
+            logger.info(MessageBuilder.start(message).arg(arg).build());
+        }
+    }
+
+    public void info(String message, long arg) {
+        if (isInfoEnabled()) {
+            logger.info(MessageBuilder.start(message).arg(arg).build());
+        }
+    }
+
+    public void info(String message, double arg) {
+        if (isInfoEnabled()) {
+            logger.info(MessageBuilder.start(message).arg(arg).build());
+        }
+    }
+
+    public void info(String message, float arg) {
+        if (isInfoEnabled()) {
+            logger.info(MessageBuilder.start(message).arg(arg).build());
+        }
+    }
+
+    public void info(String message, char arg) {
+        if (isInfoEnabled()) {
+            logger.info(MessageBuilder.start(message).arg(arg).build());
         }
     }
 
     public void info(String message, Object... args) {
         if (isInfoEnabled()) {
-            logger.info(MessageFormatter.arrayFormat(message, args).getMessage());
+            logger.info(MessageBuilder.format(message, args));
         }
     }
 
     public void info(Throwable e, String message, Object arg) {
         if (isInfoEnabled()) {
-            logger.info(MessageFormatter.format(message, arg).getMessage(), e);
+            logger.info(MessageBuilder.format(message, arg), e);
         }
     }
 
     public void info(Throwable e, String message, Object arg1, Object arg2) {
         if (isInfoEnabled()) {
-            logger.info(MessageFormatter.format(message, arg1, arg2).getMessage(), e);
+            logger.info(MessageBuilder.format(message, arg1, arg2), e);
+        }
+    }
+
+    public void info(Throwable e, String message, Object arg1, Object arg2, Object arg3) {
+        if (isInfoEnabled()) {
+            logger.info(MessageBuilder.format(message, arg1, arg2, arg3), e);
+        }
+    }
+
+    public void info(Throwable e, String message, Object arg1, Object arg2, Object arg3, Object arg4) {
+        if (isInfoEnabled()) {
+            logger.info(MessageBuilder.format(message, arg1, arg2, arg3, arg4), e);
         }
     }
 
     public void info(Throwable e, String message, Object... args) {
         if (isInfoEnabled()) {
-            logger.info(MessageFormatter.arrayFormat(message, args).getMessage(), e);
+            logger.info(MessageBuilder.format(message, args), e);
         }
     }
 
     // WARN
 
+    public boolean isWarnEnabled() {
+        return logger.isWarnEnabled();
+    }
+
     public void warn(String message) {
         logger.warn(message);
     }
 
     public void warn(String message, Object arg) {
-        logger.warn(MessageFormatter.format(message, arg).getMessage());
+        if (isWarnEnabled()) {
+            logger.warn(MessageBuilder.format(message, arg));
+        }
     }
 
     public void warn(String message, Object arg1, Object arg2) {
-        logger.warn(MessageFormatter.format(message, arg1, arg2).getMessage());
+        if (isWarnEnabled()) {
+            logger.warn(MessageBuilder.format(message, arg1, arg2));
+        }
+    }
+
+    public void warn(String message, Object arg1, Object arg2, Object arg3) {
+        if (isWarnEnabled()) {
+            logger.warn(MessageBuilder.format(message, arg1, arg2, arg3));
+        }
+    }
+
+    public void warn(String message, Object arg1, Object arg2, Object arg3, Object arg4) {
+        if (isWarnEnabled()) {
+            logger.warn(MessageBuilder.format(message, arg1, arg2, arg3, arg4));
+        }
+    }
+
+    public void warn(String message, int arg) {
+        if (isWarnEnabled()) {
+            logger.warn(MessageBuilder.start(message).arg(arg).build());
+        }
+    }
+
+    public void warn(String message, long arg) {
+        if (isWarnEnabled()) {
+            logger.warn(MessageBuilder.start(message).arg(arg).build());
+        }
+    }
+
+    public void warn(String message, double arg) {
+        if (isWarnEnabled()) {
+            logger.warn(MessageBuilder.start(message).arg(arg).build());
+        }
+    }
+
+    public void warn(String message, float arg) {
+        if (isWarnEnabled()) {
+            logger.warn(MessageBuilder.start(message).arg(arg).build());
+        }
+    }
+
+    public void warn(String message, char arg) {
+        if (isWarnEnabled()) {
+            logger.warn(MessageBuilder.start(message).arg(arg).build());
+        }
     }
 
     public void warn(String message, Object... args) {
-        logger.warn(MessageFormatter.arrayFormat(message, args).getMessage());
+        if (isWarnEnabled()) {
+            logger.warn(MessageBuilder.format(message, args));
+        }
     }
 
     public void warn(Throwable e, String message, Object arg) {
-        logger.warn(MessageFormatter.format(message, arg).getMessage(), e);
+        if (isWarnEnabled()) {
+            logger.warn(MessageBuilder.format(message, arg), e);
+        }
     }
 
     public void warn(Throwable e, String message, Object arg1, Object arg2) {
-        logger.warn(MessageFormatter.format(message, arg1, arg2).getMessage(), e);
+        if (isWarnEnabled()) {
+            logger.warn(MessageBuilder.format(message, arg1, arg2), e);
+        }
+    }
+
+    public void warn(Throwable e, String message, Object arg1, Object arg2, Object arg3) {
+        if (isWarnEnabled()) {
+            logger.warn(MessageBuilder.format(message, arg1, arg2, arg3), e);
+        }
+    }
+
+    public void warn(Throwable e, String message, Object arg1, Object arg2, Object arg3, Object arg4) {
+        if (isWarnEnabled()) {
+            logger.warn(MessageBuilder.format(message, arg1, arg2, arg3, arg4), e);
+        }
     }
 
     public void warn(Throwable e, String message, Object... args) {
-        logger.warn(MessageFormatter.arrayFormat(message, args).getMessage(), e);
+        if (isWarnEnabled()) {
+            logger.warn(MessageBuilder.format(message, args), e);
+        }
     }
 
     // ERROR
 
+    public boolean isErrorEnabled() {
+        return logger.isErrorEnabled();
+    }
+
     public void error(String message) {
         logger.error(message);
     }
 
     public void error(String message, Object arg) {
-        logger.error(MessageFormatter.format(message, arg).getMessage());
+        if (isErrorEnabled()) {
+            logger.error(MessageBuilder.format(message, arg));
+        }
     }
 
     public void error(String message, Object arg1, Object arg2) {
-        logger.error(MessageFormatter.format(message, arg1, arg2).getMessage());
+        if (isErrorEnabled()) {
+            logger.error(MessageBuilder.format(message, arg1, arg2));
+        }
+    }
+
+    public void error(String message, Object arg1, Object arg2, Object arg3) {
+        if (isErrorEnabled()) {
+            logger.error(MessageBuilder.format(message, arg1, arg2, arg3));
+        }
+    }
+
+    public void error(String message, Object arg1, Object arg2, Object arg3, Object arg4) {
+        if (isErrorEnabled()) {
+            logger.error(MessageBuilder.format(message, arg1, arg2, arg3, arg4));
+        }
+    }
+
+    public void error(String message, int arg) {
+        if (isErrorEnabled()) {
+            logger.error(MessageBuilder.start(message).arg(arg).build());
+        }
+    }
+
+    public void error(String message, long arg) {
+        if (isErrorEnabled()) {
+            logger.error(MessageBuilder.start(message).arg(arg).build());
+        }
+    }
+
+    public void error(String message, double arg) {
+        if (isErrorEnabled()) {
+            logger.error(MessageBuilder.start(message).arg(arg).build());
+        }
+    }
+
+    public void error(String message, float arg) {
+        if (isErrorEnabled()) {
+            logger.error(MessageBuilder.start(message).arg(arg).build());
+        }
+    }
+
+    public void error(String message, char arg) {
+        if (isErrorEnabled()) {
+            logger.error(MessageBuilder.start(message).arg(arg).build());
+        }
     }
 
     public void error(String message, Object... args) {
-        logger.error(MessageFormatter.arrayFormat(message, args).getMessage());
+        if (isErrorEnabled()) {
+            logger.error(MessageBuilder.format(message, args));
+        }
     }
 
     public void error(Throwable e, String message, Object arg) {
-        logger.error(MessageFormatter.format(message, arg).getMessage(), e);
+        if (isErrorEnabled()) {
+            logger.error(MessageBuilder.format(message, arg), e);
+        }
     }
 
     public void error(Throwable e, String message, Object arg1, Object arg2) {
-        logger.error(MessageFormatter.format(message, arg1, arg2).getMessage(), e);
+        if (isErrorEnabled()) {
+            logger.error(MessageBuilder.format(message, arg1, arg2), e);
+        }
+    }
+
+    public void error(Throwable e, String message, Object arg1, Object arg2, Object arg3) {
+        if (isErrorEnabled()) {
+            logger.error(MessageBuilder.format(message, arg1, arg2, arg3), e);
+        }
+    }
+
+    public void error(Throwable e, String message, Object arg1, Object arg2, Object arg3, Object arg4) {
+        if (isErrorEnabled()) {
+            logger.error(MessageBuilder.format(message, arg1, arg2, arg3, arg4), e);
+        }
     }
 
     public void error(Throwable e, String message, Object... args) {
-        logger.error(MessageFormatter.arrayFormat(message, args).getMessage(), e);
+        if (isErrorEnabled()) {
+            logger.error(MessageBuilder.format(message, args), e);
+        }
     }
 
     // FATAL
 
     @Deprecated
     public void fatal(String message) {
-        logger.error(message);
+        error(message);
     }
 
     @Deprecated
     public void fatal(String message, Object arg) {
-        logger.error(MessageFormatter.format(message, arg).getMessage());
+        error(message, arg);
     }
 
     @Deprecated
     public void fatal(String message, Object arg1, Object arg2) {
-        logger.error(MessageFormatter.format(message, arg1, arg2).getMessage());
+        error(message, arg1, arg2);
     }
 
     @Deprecated
     public void fatal(String message, Object... args) {
-        logger.error(MessageFormatter.arrayFormat(message, args).getMessage());
+        error(message, args);
     }
 
     @Deprecated
     public void fatal(Throwable e, String message, Object arg) {
-        logger.error(MessageFormatter.format(message, arg).getMessage(), e);
+        error(e, message, arg);
     }
 
     @Deprecated
     public void fatal(Throwable e, String message, Object arg1, Object arg2) {
-        logger.error(MessageFormatter.format(message, arg1, arg2).getMessage(), e);
+        error(e, message, arg1, arg2);
     }
 
     @Deprecated
     public void fatal(Throwable e, String message, Object... args) {
-        logger.error(MessageFormatter.arrayFormat(message, args).getMessage(), e);
+        error(e, message, args);
     }
 
     public Level getLevel() {
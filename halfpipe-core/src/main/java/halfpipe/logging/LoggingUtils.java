@@ -7,14 +7,20 @@ import ch.qos.logback.classic.filter.ThresholdFilter;
 import ch.qos.logback.classic.jul.LevelChangePropagator;
 import ch.qos.logback.classic.spi.ILoggingEvent;
 import ch.qos.logback.core.ConsoleAppender;
+import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.yammer.metrics.logback.InstrumentedAppender;
 import org.slf4j.LoggerFactory;
 import org.slf4j.bridge.SLF4JBridgeHandler;
 import halfpipe.configuration.LoggingConfiguration;
+import halfpipe.util.Duration;
 
+import java.io.File;
 import java.util.Map;
 import java.util.TimeZone;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
 
 /**
  * User: spencergibb
@@ -22,33 +28,78 @@ import java.util.TimeZone;
  * Time: 3:49 AM
  */
 public class LoggingUtils {
+    private static final Log LOG = Log.forThisClass();
+
+    private static final ScheduledExecutorService REVERTER = Executors.newSingleThreadScheduledExecutor(
+            new ThreadFactoryBuilder().setNameFormat("log-level-reverter-%d")
+                                      .setDaemon(true)
+                                      .build());
+
+    /** levels from configuration, the root logger's included */
+    private static final Map<String, Level> configuredLevels = Maps.newHashMap();
+
+    /** loggers whose level is temporarily overridden, see {@link #setLevel(String, Level, Duration)} */
+    private static final Map<String, Runnable> temporaryLevels = Maps.newHashMap();
+
     public static void bootstrap() {
         final Logger root = (Logger) LoggerFactory.getLogger(org.slf4j.Logger.ROOT_LOGGER_NAME);
         root.detachAndStopAllAppenders();
 
         LoggerContext context = root.getLoggerContext();
-        root.addAppender(consoleLogger(context, Level.WARN, null, TimeZone.getDefault()));
+        root.addAppender(consoleLogger(context, Level.WARN, LoggingConfiguration.Format.TEXT, null,
+                TimeZone.getDefault()));
     }
 
     private static ConsoleAppender<ILoggingEvent> consoleLogger(LoggerContext context, LoggingConfiguration.ConsoleConfiguration config)
     {
-        return consoleLogger(context, config.threshold.get(), config.logFormat.get(),
+        return consoleLogger(context, config.threshold.get(), config.format.get(), config.logFormat.get(),
                 config.timeZone.get());
     }
 
-    private static ConsoleAppender<ILoggingEvent> consoleLogger(LoggerContext context, Level level, String logFormat, TimeZone timeZone)
+    private static ConsoleAppender<ILoggingEvent> consoleLogger(LoggerContext context, Level level,
+                                                                LoggingConfiguration.Format format,
+                                                                String logFormat, TimeZone timeZone)
     {
-        final LogFormatter formatter = new LogFormatter(context, timeZone);
-        if (logFormat != null) {
-            formatter.setPattern(logFormat);
+        final ConsoleAppender<ILoggingEvent> appender = new ConsoleAppender<ILoggingEvent>();
+        appender.setName("console");
+        appender.setContext(context);
+        if (format == LoggingConfiguration.Format.JSON) {
+            final JsonLogEncoder encoder = new JsonLogEncoder(timeZone);
+            encoder.setContext(context);
+            encoder.start();
+            appender.setEncoder(encoder);
+        } else {
+            final LogFormatter formatter = new LogFormatter(context, timeZone);
+            if (logFormat != null) {
+                formatter.setPattern(logFormat);
+            }
+            formatter.start();
+            appender.setLayout(formatter);
+        }
+        final ThresholdFilter filter = new ThresholdFilter();
+        filter.setLevel(level.toString());
+        filter.start();
+        appender.addFilter(filter);
+        appender.start();
+
+        return appender;
+    }
+
+    private static BufferedFileAppender fileLogger(LoggerContext context, LoggingConfiguration.FileConfiguration config)
+    {
+        final LogFormatter formatter = new LogFormatter(context, config.timeZone.get());
+        if (config.logFormat.get() != null) {
+            formatter.setPattern(config.logFormat.get());
         }
         formatter.start();
 
-        final ConsoleAppender<ILoggingEvent> appender = new ConsoleAppender<ILoggingEvent>();
+        final BufferedFileAppender appender = new BufferedFileAppender(new File(config.currentLogFilename.get()),
+                formatter, (int) config.bufferSize.get().toBytes(), config.maxFileSize.get().toBytes(),
+                config.rolloverPeriod.get().toMilliseconds(), config.archivedFileCount.get(), config.compress.get());
+        appender.setName("file");
         appender.setContext(context);
-        appender.setLayout(formatter);
         final ThresholdFilter filter = new ThresholdFilter();
-        filter.setLevel(level.toString());
+        filter.setLevel(config.threshold.get().toString());
         filter.start();
         appender.addFilter(filter);
         appender.start();
@@ -56,6 +107,76 @@ public class LoggingUtils {
         return appender;
     }
 
+    public static synchronized void updateRootLevel(Level level) {
+        configuredLevels.put(org.slf4j.Logger.ROOT_LOGGER_NAME, level);
+        applyConfigured(org.slf4j.Logger.ROOT_LOGGER_NAME);
+    }
+
+    /**
+     * Sets the level of loggers that were added or changed and resets loggers no longer present to inherit
+     * their level. Other loggers, appenders and the logger context are left alone.
+     */
+    public static synchronized void updateLevels(Map<String, Level> levels) {
+        for (String name : Lists.newArrayList(configuredLevels.keySet())) {
+            if (!levels.containsKey(name) && !name.equals(org.slf4j.Logger.ROOT_LOGGER_NAME)) {
+                configuredLevels.remove(name);
+                applyConfigured(name);
+            }
+        }
+        for (Map.Entry<String, Level> entry : levels.entrySet()) {
+            final Level previous = configuredLevels.put(entry.getKey(), entry.getValue());
+            if (!entry.getValue().equals(previous)) {
+                applyConfigured(entry.getKey());
+            }
+        }
+    }
+
+    private static void applyConfigured(String name) {
+        final Level level = configuredLevels.get(name);
+        // the root logger can't inherit
+        if (!temporaryLevels.containsKey(name) && (level != null || !name.equals(org.slf4j.Logger.ROOT_LOGGER_NAME))) {
+            logger(name).setLevel(level);
+        }
+    }
+
+    /**
+     * Overrides the level of a logger for {@code duration}, after which it goes back to the configured level.
+     * Configuration changes to the logger in the meantime take effect once the override expires.
+     */
+    public static synchronized void setLevel(final String name, Level level, Duration duration) {
+        final Runnable revert = new Runnable() {
+            @Override
+            public void run() {
+                synchronized (LoggingUtils.class) {
+                    // unless overridden again since
+                    if (temporaryLevels.get(name) == this) {
+                        temporaryLevels.remove(name);
+                        applyConfigured(name);
+                        LOG.info("Level of {} reverted to {}", name, logger(name).getEffectiveLevel());
+                    }
+                }
+            }
+        };
+        temporaryLevels.put(name, revert);
+        logger(name).setLevel(level);
+        REVERTER.schedule(revert, duration.getQuantity(), duration.getUnit());
+        LOG.info("Level of {} set to {} for {}", name, level, duration);
+    }
+
+    /**
+     * LevelChangePropagator fails on loggers reset to inherit their level, propagate the inherited level instead
+     */
+    private static class InheritingLevelChangePropagator extends LevelChangePropagator {
+        @Override
+        public void onLevelChange(Logger logger, Level level) {
+            super.onLevelChange(logger, (level == null) ? logger.getEffectiveLevel() : level);
+        }
+    }
+
+    private static Logger logger(String name) {
+        return (Logger) LoggerFactory.getLogger(name);
+    }
+
     public static void configure(LoggingConfiguration config) {
         //hijackJDKLogging
         SLF4JBridgeHandler.removeHandlersForRootLogger();
@@ -64,25 +185,28 @@ public class LoggingUtils {
         final Logger root = (Logger) LoggerFactory.getLogger(org.slf4j.Logger.ROOT_LOGGER_NAME);
         root.getLoggerContext().reset();
 
-        final LevelChangePropagator propagator = new LevelChangePropagator();
+        final LevelChangePropagator propagator = new InheritingLevelChangePropagator();
         propagator.setContext(root.getLoggerContext());
         propagator.setResetJUL(true);
 
         root.getLoggerContext().addListener(propagator);
 
-        root.setLevel(config.level.get());
-
-        Map<String, Level> loggers = Maps.newHashMap(); //TODO: config
-        loggers.put("org.springframework.shell", Level.INFO);
-        loggers.put("com.sun.jersey.api.core.ScanningResourceConfig", Level.INFO);
-        loggers.put("halfpipe", Level.INFO);
-        for (Map.Entry<String, Level> entry : loggers.entrySet()) {
-            ((Logger) LoggerFactory.getLogger(entry.getKey())).setLevel(entry.getValue());
+        synchronized (LoggingUtils.class) {
+            // reset() cleared every level
+            configuredLevels.clear();
+            temporaryLevels.clear();
+            updateRootLevel(config.level.get());
+            updateLevels(config.loggers.get());
         }
 
         if (config.console.enabled.get()) {
                 root.addAppender(AsyncAppender.wrap(consoleLogger(root.getLoggerContext(),
-                    config.console)));
+                    config.console), config.async.capacity.get(), config.async.overflowPolicy.get()));
+        }
+
+        if (config.file.enabled.get()) {
+            root.addAppender(AsyncAppender.wrap(fileLogger(root.getLoggerContext(), config.file),
+                    config.async.capacity.get(), config.async.overflowPolicy.get()));
         }
 
         final InstrumentedAppender appender = new InstrumentedAppender();
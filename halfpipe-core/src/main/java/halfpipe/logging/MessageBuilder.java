@@ -0,0 +1,185 @@
+package halfpipe.logging;
+
+import java.util.Arrays;
+
+/**
+ * Formats SLF4J-style {@code {}} messages into a per-thread {@link StringBuilder} so that the only
+ * allocation for an enabled event is the resulting {@link String}. Primitive arguments are appended
+ * without being boxed.
+ *
+ * Placeholders are substituted the same way as {@link org.slf4j.helpers.MessageFormatter}: {@code \{}}
+ * is a literal {@code {}}, arrays are printed element-wise and surplus arguments are ignored.
+ */
+final class MessageBuilder {
+    private static final int MAX_RETAINED = 4096;
+
+    private static final ThreadLocal<MessageBuilder> BUILDERS = new ThreadLocal<MessageBuilder>() {
+        @Override
+        protected MessageBuilder initialValue() {
+            return new MessageBuilder();
+        }
+    };
+
+    private StringBuilder builder = new StringBuilder(256);
+    private String pattern;
+    private int position;
+
+    private MessageBuilder() {
+    }
+
+    static MessageBuilder start(String pattern) {
+        MessageBuilder message = BUILDERS.get();
+        if (message.pattern != null) {
+            // an argument's toString() is logging while we format
+            message = new MessageBuilder();
+        }
+        message.pattern = pattern;
+        message.position = 0;
+        message.builder.setLength(0);
+        return message;
+    }
+
+    static String format(String pattern, Object arg) {
+        return start(pattern).arg(arg).build();
+    }
+
+    static String format(String pattern, Object arg1, Object arg2) {
+        return start(pattern).arg(arg1).arg(arg2).build();
+    }
+
+    static String format(String pattern, Object arg1, Object arg2, Object arg3) {
+        return start(pattern).arg(arg1).arg(arg2).arg(arg3).build();
+    }
+
+    static String format(String pattern, Object arg1, Object arg2, Object arg3, Object arg4) {
+        return start(pattern).arg(arg1).arg(arg2).arg(arg3).arg(arg4).build();
+    }
+
+    static String format(String pattern, Object[] args) {
+        final MessageBuilder message = start(pattern);
+        if (args != null) {
+            for (Object arg : args) {
+                message.arg(arg);
+            }
+        }
+        return message.build();
+    }
+
+    MessageBuilder arg(Object arg) {
+        if (next()) {
+            appendObject(arg);
+        }
+        return this;
+    }
+
+    MessageBuilder arg(int arg) {
+        if (next()) {
+            builder.append(arg);
+        }
+        return this;
+    }
+
+    MessageBuilder arg(long arg) {
+        if (next()) {
+            builder.append(arg);
+        }
+        return this;
+    }
+
+    MessageBuilder arg(double arg) {
+        if (next()) {
+            builder.append(arg);
+        }
+        return this;
+    }
+
+    MessageBuilder arg(float arg) {
+        if (next()) {
+            builder.append(arg);
+        }
+        return this;
+    }
+
+    MessageBuilder arg(char arg) {
+        if (next()) {
+            builder.append(arg);
+        }
+        return this;
+    }
+
+    String build() {
+        if (pattern != null) {
+            builder.append(pattern, position, pattern.length());
+        }
+        final String result = builder.toString();
+        pattern = null;
+        if (builder.capacity() > MAX_RETAINED) {
+            // don't hold on to the buffer of the odd huge message
+            builder = new StringBuilder(256);
+        }
+        return result;
+    }
+
+    /**
+     * Copies the pattern up to the next unescaped placeholder and returns {@code true} if there was one.
+     */
+    private boolean next() {
+        if (pattern == null) {
+            return false;
+        }
+        while (true) {
+            final int index = pattern.indexOf("{}", position);
+            if (index < 0) {
+                return false;
+            }
+            if (isEscaped(index)) {
+                if (isEscaped(index - 1)) {
+                    // "\\{}" is an escaped backslash followed by a placeholder
+                    builder.append(pattern, position, index - 1);
+                    position = index + 2;
+                    return true;
+                }
+                builder.append(pattern, position, index - 1).append("{}");
+                position = index + 2;
+            } else {
+                builder.append(pattern, position, index);
+                position = index + 2;
+                return true;
+            }
+        }
+    }
+
+    private boolean isEscaped(int index) {
+        return index > 0 && pattern.charAt(index - 1) == '\\';
+    }
+
+    private void appendObject(Object arg) {
+        if (arg == null) {
+            builder.append("null");
+        } else if (!arg.getClass().isArray()) {
+            try {
+                builder.append(arg.toString());
+            } catch (Throwable t) {
+                builder.append("[FAILED toString()]");
+            }
+        } else if (arg instanceof Object[]) {
+            builder.append(Arrays.deepToString((Object[]) arg));
+        } else if (arg instanceof int[]) {
+            builder.append(Arrays.toString((int[]) arg));
+        } else if (arg instanceof long[]) {
+            builder.append(Arrays.toString((long[]) arg));
+        } else if (arg instanceof byte[]) {
+            builder.append(Arrays.toString((byte[]) arg));
+        } else if (arg instanceof short[]) {
+            builder.append(Arrays.toString((short[]) arg));
+        } else if (arg instanceof char[]) {
+            builder.append(Arrays.toString((char[]) arg));
+        } else if (arg instanceof boolean[]) {
+            builder.append(Arrays.toString((boolean[]) arg));
+        } else if (arg instanceof float[]) {
+            builder.append(Arrays.toString((float[]) arg));
+        } else {
+            builder.append(Arrays.toString((double[]) arg));
+        }
+    }
+}
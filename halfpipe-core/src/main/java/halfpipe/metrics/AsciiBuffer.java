@@ -0,0 +1,100 @@
+package halfpipe.metrics;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+/**
+ * A growing byte buffer for text formats, writing numbers as ASCII without going through strings where it can.
+ * Integral doubles are written as longs, other doubles as {@link Double#toString(double)} does.
+ */
+class AsciiBuffer {
+    private final byte[] digits = new byte[20];
+    private byte[] buffer;
+    private int size;
+
+    AsciiBuffer(int capacity) {
+        buffer = new byte[capacity];
+    }
+
+    int size() {
+        return size;
+    }
+
+    byte[] array() {
+        return buffer;
+    }
+
+    void reset() {
+        size = 0;
+    }
+
+    /**
+     * Drops what is before the offset, moving the rest to the start
+     */
+    void discard(int offset) {
+        System.arraycopy(buffer, offset, buffer, 0, size - offset);
+        size -= offset;
+    }
+
+    void writeTo(OutputStream out) throws IOException {
+        out.write(buffer, 0, size);
+    }
+
+    AsciiBuffer write(byte b) {
+        ensure(1);
+        buffer[size++] = b;
+        return this;
+    }
+
+    AsciiBuffer write(byte[] bytes) {
+        return write(bytes, 0, bytes.length);
+    }
+
+    AsciiBuffer write(byte[] bytes, int offset, int length) {
+        ensure(length);
+        System.arraycopy(bytes, offset, buffer, size, length);
+        size += length;
+        return this;
+    }
+
+    AsciiBuffer writeAscii(String s) {
+        ensure(s.length());
+        for (int i = 0; i < s.length(); i++) {
+            buffer[size++] = (byte) s.charAt(i);
+        }
+        return this;
+    }
+
+    AsciiBuffer writeLong(long value) {
+        if (value == Long.MIN_VALUE) {
+            return writeAscii(Long.toString(value));
+        }
+        if (value < 0) {
+            write((byte) '-');
+            value = -value;
+        }
+        int i = digits.length;
+        do {
+            digits[--i] = (byte) ('0' + value % 10);
+            value /= 10;
+        } while (value > 0);
+        return write(digits, i, digits.length - i);
+    }
+
+    /**
+     * Writes finite values only, callers decide how their format spells NaN and infinities
+     */
+    AsciiBuffer writeDouble(double value) {
+        if (value == (long) value && Math.abs(value) < 1e15) {
+            return writeLong((long) value);
+        }
+        return writeAscii(Double.toString(value));
+    }
+
+    private void ensure(int length) {
+        if (size + length > buffer.length) {
+            buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, size + length));
+        }
+    }
+}
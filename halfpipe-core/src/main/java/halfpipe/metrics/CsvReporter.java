@@ -0,0 +1,106 @@
+package halfpipe.metrics;
+
+import com.google.common.base.Charsets;
+import com.yammer.metrics.core.Clock;
+import com.yammer.metrics.core.MetricsRegistry;
+import halfpipe.logging.Log;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.text.SimpleDateFormat;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.TimeZone;
+
+/**
+ * Appends reports to a CSV file per day, metrics-yyyy-MM-dd.csv in UTC, one timestamp,metric,field,value row per
+ * value, timestamps in seconds. Each report is appended with one write. When a new file is started, files beyond
+ * maxHistory are deleted, oldest first.
+ */
+public class CsvReporter extends Reporter {
+    private static final Log LOG = Log.forThisClass();
+
+    private static final String FILE_PREFIX = "metrics-";
+    private static final String FILE_SUFFIX = ".csv";
+    private static final byte[] HEADER = "timestamp,metric,field,value\n".getBytes(Charsets.US_ASCII);
+
+    private final File directory;
+    private final int maxHistory;
+    private final SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd");
+    private final AsciiBuffer buffer = new AsciiBuffer(8192);
+    private final AsciiBuffer timestamp = new AsciiBuffer(16);
+
+    private File file;
+
+    public CsvReporter(MetricsRegistry registry, String prefix, String include, String exclude, Clock clock,
+                       File directory, int maxHistory) {
+        super(registry, prefix, include, exclude, clock);
+        this.directory = directory;
+        this.maxHistory = maxHistory;
+        dateFormat.setTimeZone(TimeZone.getTimeZone("UTC"));
+    }
+
+    @Override
+    protected void begin(long time) throws IOException {
+        final File current = new File(directory, FILE_PREFIX + dateFormat.format(new Date(time)) + FILE_SUFFIX);
+        if (!current.equals(file)) {
+            file = current;
+            if (!directory.isDirectory() && !directory.mkdirs()) {
+                throw new IOException("Unable to create " + directory);
+            }
+            deleteOldFiles();
+        }
+        buffer.reset();
+        if (!file.exists()) {
+            buffer.write(HEADER);
+        }
+        timestamp.reset();
+        timestamp.writeLong(time / 1000).write((byte) ',');
+    }
+
+    @Override
+    protected void write(Name name, Field field, double value) {
+        buffer.write(timestamp.array(), 0, timestamp.size()).write(name.bytes()).write((byte) ',')
+                .write(field.bytes()).write((byte) ',').writeDouble(value).write((byte) '\n');
+    }
+
+    @Override
+    protected void end() throws IOException {
+        final FileOutputStream out = new FileOutputStream(file, true);
+        try {
+            buffer.writeTo(out);
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * Deletes the oldest files, so that with the one being written at most maxHistory are left
+     */
+    private void deleteOldFiles() {
+        final String[] names = directory.list(new FilenameFilter() {
+            @Override
+            public boolean accept(File dir, String name) {
+                return name.startsWith(FILE_PREFIX) && name.endsWith(FILE_SUFFIX);
+            }
+        });
+        if (names == null) {
+            return;
+        }
+        Arrays.sort(names);
+        final int keep = Math.max(0, maxHistory - (Arrays.binarySearch(names, file.getName()) >= 0 ? 0 : 1));
+        for (int i = 0; i < names.length - keep; i++) {
+            final File old = new File(directory, names[i]);
+            if (!old.equals(file) && !old.delete()) {
+                LOG.warn("Unable to delete {}", old);
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "CsvReporter: {" + directory + "}";
+    }
+}
@@ -0,0 +1,14 @@
+package halfpipe.metrics;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Where {@link Timers} record durations, whatever the type of timer behind it
+ */
+public interface DurationTimer {
+
+    /**
+     * Records a duration, negative ones are ignored
+     */
+    void update(long duration, TimeUnit unit);
+}
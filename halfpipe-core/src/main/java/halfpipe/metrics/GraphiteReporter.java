@@ -0,0 +1,92 @@
+package halfpipe.metrics;
+
+import com.google.common.io.Closeables;
+import com.yammer.metrics.core.Clock;
+import com.yammer.metrics.core.MetricsRegistry;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+
+/**
+ * Sends reports to Graphite as plaintext lines, name value timestamp, over one connection kept open between reports.
+ * Each report is written to the connection at once. A connection that fails is dropped, and the next report opens
+ * a new one. Closing the reporter closes the connection at once, ending a report blocked writing to it.
+ */
+public class GraphiteReporter extends Reporter {
+    private static final int CONNECT_TIMEOUT_MS = 5000;
+
+    private final String host;
+    private final int port;
+    private final AsciiBuffer buffer = new AsciiBuffer(8192);
+    private final AsciiBuffer timestamp = new AsciiBuffer(16);
+
+    private volatile Socket socket;
+    private OutputStream out;
+
+    public GraphiteReporter(MetricsRegistry registry, String prefix, String include, String exclude, Clock clock,
+                            String host, int port) {
+        super(registry, prefix, include, exclude, clock);
+        this.host = host;
+        this.port = port;
+    }
+
+    @Override
+    protected void begin(long time) {
+        buffer.reset();
+        timestamp.reset();
+        timestamp.writeLong(time / 1000);
+    }
+
+    @Override
+    protected void write(Name name, Field field, double value) {
+        buffer.write(name.bytes()).write((byte) '.').write(field.bytes()).write((byte) ' ').writeDouble(value)
+                .write((byte) ' ').write(timestamp.array(), 0, timestamp.size()).write((byte) '\n');
+    }
+
+    @Override
+    protected void end() throws IOException {
+        if (buffer.size() == 0) {
+            return;
+        }
+        try {
+            if (socket == null) {
+                socket = new Socket();
+                if (isClosed()) {
+                    // close() may have aborted before this socket was set
+                    disconnect();
+                    return;
+                }
+                socket.connect(new InetSocketAddress(host, port), CONNECT_TIMEOUT_MS);
+                out = socket.getOutputStream();
+            }
+            buffer.writeTo(out);
+            out.flush();
+        } catch (IOException e) {
+            disconnect();
+            throw e;
+        }
+    }
+
+    @Override
+    protected void abort() {
+        Closeables.closeQuietly(socket);
+    }
+
+    @Override
+    protected void release() {
+        disconnect();
+    }
+
+    private void disconnect() {
+        Closeables.closeQuietly(socket);
+        socket = null;
+        out = null;
+    }
+
+    @Override
+    public String toString() {
+        return "GraphiteReporter: {" + host + ":" + port + "}";
+    }
+}
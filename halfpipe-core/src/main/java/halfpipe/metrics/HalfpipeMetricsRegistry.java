@@ -0,0 +1,99 @@
+package halfpipe.metrics;
+
+import com.yammer.metrics.core.Counter;
+import com.yammer.metrics.core.Gauge;
+import com.yammer.metrics.core.Histogram;
+import com.yammer.metrics.core.Meter;
+import com.yammer.metrics.core.Metric;
+import com.yammer.metrics.core.MetricName;
+import com.yammer.metrics.core.MetricsRegistry;
+import com.yammer.metrics.core.MetricsRegistryListener;
+import com.yammer.metrics.core.Stoppable;
+import com.yammer.metrics.core.Timer;
+
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The registry Halfpipe renders and reports, holding the metrics of a parent registry, usually
+ * {@link com.yammer.metrics.Metrics#defaultRegistry()}, along with metrics metrics-core can't create, like
+ * {@link HistogramTimer}s, added by {@link #register(MetricName, Metric)}.
+ *
+ * Metrics created through this registry are created in the parent, so code using the parent directly sees the same
+ * metrics. Metrics only registered here are not in the parent, nor in its JMX reporter.
+ */
+public class HalfpipeMetricsRegistry extends MetricsRegistry {
+    private final MetricsRegistry parent;
+
+    public HalfpipeMetricsRegistry(MetricsRegistry parent) {
+        this.parent = parent;
+        // replays the metrics already in the parent
+        parent.addListener(new MetricsRegistryListener() {
+            @Override
+            public void onMetricAdded(MetricName name, Metric metric) {
+                getOrAdd(name, metric);
+            }
+
+            @Override
+            public void onMetricRemoved(MetricName name) {
+                removeOwn(name);
+            }
+        });
+    }
+
+    /**
+     * @return the metric already registered under the name, or the given one once registered. The given one is
+     * stopped if it isn't registered.
+     */
+    public <T extends Metric> T register(MetricName name, T metric) {
+        final T registered = getOrAdd(name, metric);
+        if (registered != metric && metric instanceof Stoppable) {
+            ((Stoppable) metric).stop();
+        }
+        return registered;
+    }
+
+    public MetricsRegistry getParent() {
+        return parent;
+    }
+
+    @Override
+    public <T> Gauge<T> newGauge(MetricName metricName, Gauge<T> metric) {
+        return parent.newGauge(metricName, metric);
+    }
+
+    @Override
+    public Counter newCounter(MetricName metricName) {
+        return parent.newCounter(metricName);
+    }
+
+    @Override
+    public Histogram newHistogram(MetricName metricName, boolean biased) {
+        return parent.newHistogram(metricName, biased);
+    }
+
+    @Override
+    public Meter newMeter(MetricName metricName, String eventType, TimeUnit unit) {
+        return parent.newMeter(metricName, eventType, unit);
+    }
+
+    @Override
+    public Timer newTimer(MetricName metricName, TimeUnit durationUnit, TimeUnit rateUnit) {
+        return parent.newTimer(metricName, durationUnit, rateUnit);
+    }
+
+    @Override
+    public ScheduledExecutorService newScheduledThreadPool(int poolSize, String name) {
+        return parent.newScheduledThreadPool(poolSize, name);
+    }
+
+    @Override
+    public void removeMetric(MetricName name) {
+        parent.removeMetric(name);
+        removeOwn(name);
+    }
+
+    private void removeOwn(MetricName name) {
+        super.removeMetric(name);
+    }
+}
@@ -0,0 +1,119 @@
+package halfpipe.metrics;
+
+import com.yammer.metrics.stats.Snapshot;
+
+import java.util.Arrays;
+
+/**
+ * The counts of a {@link LogLinearHistogram} at one point. Quantiles are answered from the buckets, reporting the
+ * highest value of the bucket they fall in, but never more than the exact maximum.
+ */
+public class HistogramSnapshot extends Snapshot {
+    private static final double[] EMPTY = new double[0];
+
+    private final LogLinearHistogram histogram;
+    private final long[] counts;
+    private final long count;
+    private final long sum;
+    private final long min;
+    private final long max;
+
+    HistogramSnapshot(LogLinearHistogram histogram, long[] counts, long count, long sum, long min, long max) {
+        super(EMPTY);
+        this.histogram = histogram;
+        this.counts = counts;
+        this.count = count;
+        this.sum = sum;
+        this.min = count == 0 ? 0 : min;
+        this.max = count == 0 ? 0 : max;
+    }
+
+    @Override
+    public double getValue(double quantile) {
+        if (quantile < 0.0 || quantile > 1.0 || Double.isNaN(quantile)) {
+            throw new IllegalArgumentException(quantile + " is not in [0..1]");
+        }
+        if (count == 0) {
+            return 0.0;
+        }
+        final long rank = Math.max(1, (long) Math.ceil(quantile * count));
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return Math.max(min, Math.min(max, histogram.highestEquivalentValue(i)));
+            }
+        }
+        return max;
+    }
+
+    @Override
+    public int size() {
+        return (int) Math.min(count, Integer.MAX_VALUE);
+    }
+
+    /**
+     * @return the highest value of each bucket holding any values, not every value recorded
+     */
+    @Override
+    public double[] getValues() {
+        double[] values = new double[counts.length];
+        int n = 0;
+        for (int i = 0; i < counts.length; i++) {
+            if (counts[i] > 0) {
+                values[n++] = Math.min(max, histogram.highestEquivalentValue(i));
+            }
+        }
+        return Arrays.copyOf(values, n);
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public long getSum() {
+        return sum;
+    }
+
+    public long getMin() {
+        return min;
+    }
+
+    public long getMax() {
+        return max;
+    }
+
+    public double getMean() {
+        return count == 0 ? 0.0 : (double) sum / count;
+    }
+
+    /**
+     * @return the standard deviation, taking each value to be the middle of its bucket
+     */
+    public double getStdDev() {
+        if (count <= 1) {
+            return 0.0;
+        }
+        final double mean = getMean();
+        double squares = 0;
+        for (int i = 0; i < counts.length; i++) {
+            if (counts[i] > 0) {
+                final double mid = (histogram.lowestEquivalentValue(i) + histogram.highestEquivalentValue(i)) / 2.0;
+                squares += counts[i] * (mid - mean) * (mid - mean);
+            }
+        }
+        return Math.sqrt(squares / (count - 1));
+    }
+
+    /**
+     * @return how many values are at most the given one, to the precision of the histogram
+     */
+    public long getCountAtOrBelow(long value) {
+        final int last = Math.min(histogram.index(Math.max(0, value)), counts.length - 1);
+        long below = 0;
+        for (int i = 0; i <= last; i++) {
+            below += counts[i];
+        }
+        return below;
+    }
+}
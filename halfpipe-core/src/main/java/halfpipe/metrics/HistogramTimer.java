@@ -0,0 +1,236 @@
+package halfpipe.metrics;
+
+import com.yammer.metrics.core.Clock;
+import com.yammer.metrics.core.Metered;
+import com.yammer.metrics.core.MetricName;
+import com.yammer.metrics.core.MetricProcessor;
+import com.yammer.metrics.core.Sampling;
+import com.yammer.metrics.core.Stoppable;
+import com.yammer.metrics.core.Summarizable;
+import com.yammer.metrics.stats.EWMA;
+import com.yammer.metrics.stats.Snapshot;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A timer keeping durations in a {@link LogLinearHistogram} rather than a sampled reservoir: every duration counts
+ * towards the percentiles and updates take no locks. Durations are recorded in nanoseconds and reported in the
+ * duration unit, rates are kept like a {@link com.yammer.metrics.core.Meter}'s.
+ *
+ * metrics-core 2.x has no way to extend its timer, so this one is registered through
+ * {@link HalfpipeMetricsRegistry#register(MetricName, com.yammer.metrics.core.Metric)}. Halfpipe's writers and
+ * reporters implement {@link Processor} and report it as a timer; other processors get it as a meter.
+ *
+ * A reporter reads a timer through several calls, min, max, mean and then the snapshot. To keep them consistent, and
+ * in interval mode to have them cover the same interval, a histogram snapshot taken by one read is reused by the
+ * reads in the following {@link #READ_WINDOW_MS} ms. {@link #snapshot()} always takes a new one.
+ */
+public class HistogramTimer implements Metered, Sampling, Summarizable, Stoppable, DurationTimer {
+    public static final long READ_WINDOW_MS = 1000;
+    private static final long TICK_INTERVAL = 5;
+
+    /**
+     * A {@link MetricProcessor} reporting histogram timers as timers
+     */
+    public interface Processor<T> {
+        void processHistogramTimer(MetricName name, HistogramTimer timer, T context) throws Exception;
+    }
+
+    private final TimeUnit durationUnit;
+    private final TimeUnit rateUnit;
+    private final LogLinearHistogram histogram;
+    private final Clock clock;
+    private final long startTime;
+    private final AtomicLong count = new AtomicLong();
+    private final EWMA m1Rate = EWMA.oneMinuteEWMA();
+    private final EWMA m5Rate = EWMA.fiveMinuteEWMA();
+    private final EWMA m15Rate = EWMA.fifteenMinuteEWMA();
+    private final ScheduledFuture<?> future;
+
+    private volatile HistogramSnapshot last;
+    private volatile long lastTaken;
+
+    /**
+     * @param tickThread ticks the rates every 5 seconds, until stopped
+     */
+    public HistogramTimer(ScheduledExecutorService tickThread, TimeUnit durationUnit, TimeUnit rateUnit, Clock clock,
+                          LogLinearHistogram histogram) {
+        this.durationUnit = durationUnit;
+        this.rateUnit = rateUnit;
+        this.histogram = histogram;
+        this.clock = clock;
+        this.startTime = clock.tick();
+        this.future = tickThread.scheduleAtFixedRate(new Runnable() {
+            @Override
+            public void run() {
+                m1Rate.tick();
+                m5Rate.tick();
+                m15Rate.tick();
+            }
+        }, TICK_INTERVAL, TICK_INTERVAL, TimeUnit.SECONDS);
+    }
+
+    @Override
+    public void update(long duration, TimeUnit unit) {
+        if (duration >= 0) {
+            histogram.update(unit.toNanos(duration));
+            count.incrementAndGet();
+            m1Rate.update(1);
+            m5Rate.update(1);
+            m15Rate.update(1);
+        }
+    }
+
+    public <T> T time(Callable<T> event) throws Exception {
+        final long startTime = clock.tick();
+        try {
+            return event.call();
+        } finally {
+            update(clock.tick() - startTime, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    /**
+     * Takes a new snapshot of the histogram, which in interval mode starts a new interval. Values are in nanoseconds.
+     */
+    public HistogramSnapshot snapshot() {
+        final HistogramSnapshot snapshot = histogram.snapshot();
+        last = snapshot;
+        lastTaken = clock.time();
+        return snapshot;
+    }
+
+    private HistogramSnapshot read() {
+        final HistogramSnapshot snapshot = last;
+        if (snapshot != null && clock.time() - lastTaken < READ_WINDOW_MS) {
+            return snapshot;
+        }
+        synchronized (this) {
+            if (last != snapshot) {
+                return last;
+            }
+            return snapshot();
+        }
+    }
+
+    public LogLinearHistogram getHistogram() {
+        return histogram;
+    }
+
+    public TimeUnit durationUnit() {
+        return durationUnit;
+    }
+
+    @Override
+    public TimeUnit rateUnit() {
+        return rateUnit;
+    }
+
+    @Override
+    public String eventType() {
+        return "calls";
+    }
+
+    public void clear() {
+        histogram.clear();
+        last = null;
+    }
+
+    @Override
+    public long count() {
+        return count.get();
+    }
+
+    @Override
+    public double fifteenMinuteRate() {
+        return m15Rate.rate(rateUnit);
+    }
+
+    @Override
+    public double fiveMinuteRate() {
+        return m5Rate.rate(rateUnit);
+    }
+
+    @Override
+    public double meanRate() {
+        final long count = count();
+        if (count == 0) {
+            return 0.0;
+        }
+        final double elapsed = clock.tick() - startTime;
+        return count / elapsed * rateUnit.toNanos(1);
+    }
+
+    @Override
+    public double oneMinuteRate() {
+        return m1Rate.rate(rateUnit);
+    }
+
+    @Override
+    public double max() {
+        return convertFromNS(read().getMax());
+    }
+
+    @Override
+    public double min() {
+        return convertFromNS(read().getMin());
+    }
+
+    @Override
+    public double mean() {
+        return convertFromNS(read().getMean());
+    }
+
+    @Override
+    public double stdDev() {
+        return convertFromNS(read().getStdDev());
+    }
+
+    @Override
+    public double sum() {
+        return convertFromNS(read().getSum());
+    }
+
+    @Override
+    public Snapshot getSnapshot() {
+        final HistogramSnapshot snapshot = read();
+        final double[] values = snapshot.getValues();
+        for (int i = 0; i < values.length; i++) {
+            values[i] = convertFromNS(values[i]);
+        }
+        return new Snapshot(values) {
+            @Override
+            public double getValue(double quantile) {
+                return convertFromNS(snapshot.getValue(quantile));
+            }
+
+            @Override
+            public int size() {
+                return snapshot.size();
+            }
+        };
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> void processWith(MetricProcessor<T> processor, MetricName name, T context) throws Exception {
+        if (processor instanceof Processor) {
+            ((Processor<T>) processor).processHistogramTimer(name, this, context);
+        } else {
+            processor.processMeter(name, this, context);
+        }
+    }
+
+    @Override
+    public void stop() {
+        future.cancel(false);
+    }
+
+    private double convertFromNS(double ns) {
+        return ns / TimeUnit.NANOSECONDS.convert(1, durationUnit);
+    }
+}
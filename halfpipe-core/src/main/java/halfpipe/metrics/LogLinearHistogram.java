@@ -0,0 +1,162 @@
+package halfpipe.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A fixed size histogram of non negative longs in log-linear buckets, in the manner of HdrHistogram. Values up to
+ * 2^(bits+1) get a bucket each, above that every power of two is split in 2^bits buckets, so a value is reported
+ * within 1 part in 2^bits, the smallest power of two covering the requested significant digits.
+ *
+ * Recording takes no locks and allocates nothing: each thread counts into one of a few stripes, chosen by its id
+ * and allocated on first use, and stripes are only merged when a snapshot is taken. In interval mode taking a
+ * snapshot also empties the histogram, so each snapshot covers what was recorded since the previous one.
+ */
+public class LogLinearHistogram {
+    private final int subBucketBits;
+    private final int linearCount;
+    private final long highestTrackableValue;
+    private final int length;
+    private final boolean interval;
+    private final AtomicReferenceArray<Stripe> stripes;
+    private final int stripeMask;
+
+    /**
+     * @param significantDigits precision of reported values, 1 to 5
+     * @param highestTrackableValue larger values are counted as this one, though min, max and sum stay exact
+     * @param stripes how many threads can record without contending, rounded up to a power of two
+     * @param interval whether taking a snapshot resets the histogram
+     */
+    public LogLinearHistogram(int significantDigits, long highestTrackableValue, int stripes, boolean interval) {
+        if (significantDigits < 1 || significantDigits > 5) {
+            throw new IllegalArgumentException("significantDigits must be between 1 and 5: " + significantDigits);
+        }
+        if (highestTrackableValue < 1) {
+            throw new IllegalArgumentException("highestTrackableValue must be positive: " + highestTrackableValue);
+        }
+        if (stripes < 1) {
+            throw new IllegalArgumentException("stripes must be positive: " + stripes);
+        }
+        this.subBucketBits = 64 - Long.numberOfLeadingZeros((long) Math.pow(10, significantDigits) - 1);
+        this.linearCount = 1 << (subBucketBits + 1);
+        this.highestTrackableValue = highestTrackableValue;
+        this.length = index(highestTrackableValue) + 1;
+        this.interval = interval;
+
+        int stripeCount = 1;
+        while (stripeCount < stripes) {
+            stripeCount <<= 1;
+        }
+        this.stripes = new AtomicReferenceArray<Stripe>(stripeCount);
+        this.stripeMask = stripeCount - 1;
+    }
+
+    public void update(long value) {
+        if (value < 0) {
+            value = 0;
+        }
+        final Stripe stripe = stripe();
+        stripe.counts.incrementAndGet(index(Math.min(value, highestTrackableValue)));
+        stripe.sum.addAndGet(value);
+
+        long min = stripe.min.get();
+        while (value < min && !stripe.min.compareAndSet(min, value)) {
+            min = stripe.min.get();
+        }
+        long max = stripe.max.get();
+        while (value > max && !stripe.max.compareAndSet(max, value)) {
+            max = stripe.max.get();
+        }
+    }
+
+    /**
+     * @return the values recorded so far, or since the last snapshot in interval mode
+     */
+    public HistogramSnapshot snapshot() {
+        final long[] counts = new long[length];
+        long count = 0;
+        long sum = 0;
+        long min = Long.MAX_VALUE;
+        long max = Long.MIN_VALUE;
+        for (int s = 0; s < stripes.length(); s++) {
+            final Stripe stripe = stripes.get(s);
+            if (stripe == null) {
+                continue;
+            }
+            for (int i = 0; i < length; i++) {
+                final long c = interval ? stripe.counts.getAndSet(i, 0) : stripe.counts.get(i);
+                counts[i] += c;
+                count += c;
+            }
+            sum += interval ? stripe.sum.getAndSet(0) : stripe.sum.get();
+            min = Math.min(min, interval ? stripe.min.getAndSet(Long.MAX_VALUE) : stripe.min.get());
+            max = Math.max(max, interval ? stripe.max.getAndSet(Long.MIN_VALUE) : stripe.max.get());
+        }
+        return new HistogramSnapshot(this, counts, count, sum, min, max);
+    }
+
+    public void clear() {
+        for (int s = 0; s < stripes.length(); s++) {
+            stripes.set(s, null);
+        }
+    }
+
+    public boolean isInterval() {
+        return interval;
+    }
+
+    /**
+     * @return the bytes of counts held by each stripe in use
+     */
+    public int getStripeSize() {
+        return length * 8;
+    }
+
+    int index(long value) {
+        if (value < linearCount) {
+            return (int) value;
+        }
+        final int shift = 63 - Long.numberOfLeadingZeros(value) - subBucketBits;
+        return (shift << subBucketBits) + (int) (value >>> shift);
+    }
+
+    long lowestEquivalentValue(int index) {
+        if (index < linearCount) {
+            return index;
+        }
+        final int shift = (index >>> subBucketBits) - 1;
+        return (long) (index - (shift << subBucketBits)) << shift;
+    }
+
+    long highestEquivalentValue(int index) {
+        if (index < linearCount) {
+            return index;
+        }
+        final int shift = (index >>> subBucketBits) - 1;
+        return lowestEquivalentValue(index) + (1L << shift) - 1;
+    }
+
+    private Stripe stripe() {
+        final int i = (int) Thread.currentThread().getId() & stripeMask;
+        Stripe stripe = stripes.get(i);
+        if (stripe == null) {
+            stripe = new Stripe(length);
+            if (!stripes.compareAndSet(i, null, stripe)) {
+                stripe = stripes.get(i);
+            }
+        }
+        return stripe;
+    }
+
+    private static final class Stripe {
+        final AtomicLongArray counts;
+        final AtomicLong sum = new AtomicLong();
+        final AtomicLong min = new AtomicLong(Long.MAX_VALUE);
+        final AtomicLong max = new AtomicLong(Long.MIN_VALUE);
+
+        Stripe(int length) {
+            counts = new AtomicLongArray(length);
+        }
+    }
+}
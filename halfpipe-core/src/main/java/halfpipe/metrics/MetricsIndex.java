@@ -0,0 +1,135 @@
+package halfpipe.metrics;
+
+import com.google.common.base.Function;
+import com.yammer.metrics.core.Metric;
+import com.yammer.metrics.core.MetricName;
+import com.yammer.metrics.core.MetricsRegistry;
+import com.yammer.metrics.core.MetricsRegistryListener;
+
+import java.util.Comparator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+
+/**
+ * The metrics of a registry in the order {@link MetricsRegistry#groupedMetrics()} gives them, kept up to date by
+ * listening to the registry rather than sorted again on every read. Each metric carries whatever a renderer
+ * derives from its name, e.g. escaped or sanitized names, computed once when the metric is registered.
+ *
+ * @param <T> what the renderer derives from a metric name
+ */
+public class MetricsIndex<T> implements MetricsRegistryListener {
+    private static final Comparator<Entry<?>> ORDER = new Comparator<Entry<?>>() {
+        @Override
+        public int compare(Entry<?> a, Entry<?> b) {
+            int c = a.group.compareTo(b.group);
+            if (c == 0) {
+                c = a.name.getName().compareTo(b.name.getName());
+            }
+            if (c == 0) {
+                c = a.name.compareTo(b.name);
+            }
+            return c;
+        }
+    };
+
+    private final MetricsRegistry registry;
+    private final Function<MetricName, T> names;
+    private final ConcurrentMap<MetricName, Entry<T>> byName = new ConcurrentHashMap<MetricName, Entry<T>>();
+    private final ConcurrentSkipListSet<Entry<T>> sorted;
+
+    /**
+     * @param names derives what the renderer needs from a metric name
+     */
+    public MetricsIndex(MetricsRegistry registry, Function<MetricName, T> names) {
+        this(registry, names, null);
+    }
+
+    /**
+     * @param order sorts metrics by what the renderer derived from their names before group and name, e.g. to keep
+     *              metrics together that the renderer writes under one name. May be null.
+     */
+    public MetricsIndex(MetricsRegistry registry, Function<MetricName, T> names, final Comparator<? super T> order) {
+        this.registry = registry;
+        this.names = names;
+        this.sorted = new ConcurrentSkipListSet<Entry<T>>(order == null ? ORDER : new Comparator<Entry<T>>() {
+            @Override
+            public int compare(Entry<T> a, Entry<T> b) {
+                final int c = order.compare(a.names, b.names);
+                return c != 0 ? c : ORDER.compare(a, b);
+            }
+        });
+        registry.addListener(this);
+    }
+
+    /**
+     * @return the metrics sorted by group, then name, or as the order given, as they are registered at the time of
+     * iterating
+     */
+    public Iterable<Entry<T>> entries() {
+        return sorted;
+    }
+
+    /**
+     * Stops following the registry, for an index that is no longer used
+     */
+    public void close() {
+        registry.removeListener(this);
+    }
+
+    @Override
+    public void onMetricAdded(MetricName name, Metric metric) {
+        final Entry<T> entry = new Entry<T>(name, metric, names.apply(name));
+        final Entry<T> previous = byName.put(name, entry);
+        if (previous != null) {
+            sorted.remove(previous);
+        }
+        sorted.add(entry);
+    }
+
+    @Override
+    public void onMetricRemoved(MetricName name) {
+        final Entry<T> entry = byName.remove(name);
+        if (entry != null) {
+            sorted.remove(entry);
+        }
+    }
+
+    /**
+     * The group as {@link MetricsRegistry#groupedMetrics()} names it: group.type, then .scope if there is one
+     */
+    public static String group(MetricName name) {
+        final String group = name.getGroup() + "." + name.getType();
+        return name.hasScope() ? group + "." + name.getScope() : group;
+    }
+
+    public static final class Entry<T> {
+        private final MetricName name;
+        private final Metric metric;
+        private final String group;
+        private final T names;
+
+        Entry(MetricName name, Metric metric, T names) {
+            this.name = name;
+            this.metric = metric;
+            this.group = group(name);
+            this.names = names;
+        }
+
+        public MetricName getName() {
+            return name;
+        }
+
+        public Metric getMetric() {
+            return metric;
+        }
+
+        public String getGroup() {
+            return group;
+        }
+
+        public T getNames() {
+            return names;
+        }
+    }
+}
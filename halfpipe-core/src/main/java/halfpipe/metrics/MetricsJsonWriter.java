@@ -0,0 +1,353 @@
+package halfpipe.metrics;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.io.SerializedString;
+import com.google.common.base.Function;
+import com.yammer.metrics.core.*;
+import com.yammer.metrics.stats.Snapshot;
+import halfpipe.logging.Log;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Writes the metrics of a registry as JSON in the format of {@link com.yammer.metrics.reporting.MetricsServlet},
+ * straight to the output through a streaming generator.
+ *
+ * Metrics come from a {@link MetricsIndex} kept sorted as metrics are registered, with their group and name
+ * already escaped, rather than grouped and sorted on every request. The jvm section is written when the query
+ * doesn't filter it out; fields only select fields of registry metrics.
+ */
+public class MetricsJsonWriter implements MetricProcessor<MetricsJsonWriter.Context>,
+        HistogramTimer.Processor<MetricsJsonWriter.Context> {
+    private static final Log LOG = Log.forThisClass();
+
+    private static final SerializedString TYPE = new SerializedString("type");
+    private static final SerializedString UNIT = new SerializedString("unit");
+    private static final SerializedString DURATION = new SerializedString("duration");
+    private static final SerializedString RATE = new SerializedString("rate");
+    private static final SerializedString VALUE = new SerializedString("value");
+    private static final SerializedString VALUES = new SerializedString("values");
+    private static final SerializedString EVENT_TYPE = new SerializedString("event_type");
+    private static final SerializedString COUNT = new SerializedString("count");
+    private static final SerializedString MIN = new SerializedString("min");
+    private static final SerializedString MAX = new SerializedString("max");
+    private static final SerializedString MEAN = new SerializedString("mean");
+    private static final SerializedString STD_DEV = new SerializedString("std_dev");
+    private static final SerializedString MEDIAN = new SerializedString("median");
+    private static final SerializedString P75 = new SerializedString("p75");
+    private static final SerializedString P95 = new SerializedString("p95");
+    private static final SerializedString P98 = new SerializedString("p98");
+    private static final SerializedString P99 = new SerializedString("p99");
+    private static final SerializedString P999 = new SerializedString("p999");
+    private static final SerializedString M1 = new SerializedString("m1");
+    private static final SerializedString M5 = new SerializedString("m5");
+    private static final SerializedString M15 = new SerializedString("m15");
+
+    private final JsonFactory factory;
+    private final VirtualMachineMetrics vm;
+    private final Clock clock;
+    private final MetricsIndex<Names> index;
+
+    /**
+     * @param factory needs a codec to write gauges with values other than strings and numbers
+     */
+    public MetricsJsonWriter(MetricsRegistry registry, JsonFactory factory) {
+        this.factory = factory;
+        this.vm = VirtualMachineMetrics.getInstance();
+        this.clock = Clock.defaultClock();
+        this.index = new MetricsIndex<Names>(registry, new Function<MetricName, Names>() {
+            @Override
+            public Names apply(MetricName name) {
+                return new Names(name);
+            }
+        });
+    }
+
+    /**
+     * @param fullSamples whether to write every sampled value of histograms and timers
+     */
+    public void write(OutputStream out, MetricsQuery query, boolean pretty, boolean fullSamples) throws IOException {
+        final JsonGenerator json = factory.createGenerator(out, JsonEncoding.UTF8);
+        if (pretty) {
+            json.useDefaultPrettyPrinter();
+        }
+        final Context context = new Context(json, query, fullSamples);
+        json.writeStartObject();
+        if (query.matches("jvm")) {
+            writeVmMetrics(json);
+        }
+
+        String group = null;
+        for (MetricsIndex.Entry<Names> entry : index.entries()) {
+            final Names names = entry.getNames();
+            if (!query.matches(names.fullName)) {
+                continue;
+            }
+            if (!entry.getGroup().equals(group)) {
+                if (group != null) {
+                    json.writeEndObject();
+                }
+                group = entry.getGroup();
+                json.writeFieldName(names.group);
+                json.writeStartObject();
+            }
+            json.writeFieldName(names.name);
+            try {
+                entry.getMetric().processWith(this, entry.getName(), context);
+            } catch (Exception e) {
+                LOG.warn(e, "Error writing out {}", entry.getName());
+            }
+        }
+        if (group != null) {
+            json.writeEndObject();
+        }
+        json.writeEndObject();
+        json.close();
+    }
+
+    @Override
+    public void processMeter(MetricName name, Metered meter, Context context) throws Exception {
+        final JsonGenerator json = context.json;
+        json.writeStartObject();
+        json.writeFieldName(TYPE);
+        json.writeString("meter");
+        if (context.query.wants("event_type")) {
+            json.writeFieldName(EVENT_TYPE);
+            json.writeString(meter.eventType());
+        }
+        writeMeteredFields(meter, context);
+        json.writeEndObject();
+    }
+
+    @Override
+    public void processCounter(MetricName name, Counter counter, Context context) throws Exception {
+        final JsonGenerator json = context.json;
+        json.writeStartObject();
+        json.writeFieldName(TYPE);
+        json.writeString("counter");
+        writeField(COUNT, counter.count(), context);
+        json.writeEndObject();
+    }
+
+    @Override
+    public void processHistogram(MetricName name, Histogram histogram, Context context) throws Exception {
+        final JsonGenerator json = context.json;
+        json.writeStartObject();
+        json.writeFieldName(TYPE);
+        json.writeString("histogram");
+        writeField(COUNT, histogram.count(), context);
+        writeSummarizable(histogram, context);
+        writeSampling(histogram.getSnapshot(), context);
+        json.writeEndObject();
+    }
+
+    @Override
+    public void processTimer(MetricName name, Timer timer, Context context) throws Exception {
+        writeTimer(timer, timer.durationUnit(), context);
+    }
+
+    @Override
+    public void processHistogramTimer(MetricName name, HistogramTimer timer, Context context) throws Exception {
+        writeTimer(timer, timer.durationUnit(), context);
+    }
+
+    private static <T extends Metered & Sampling & Summarizable> void writeTimer(T timer, TimeUnit durationUnit,
+                                                                                 Context context) throws IOException {
+        final JsonGenerator json = context.json;
+        json.writeStartObject();
+        json.writeFieldName(TYPE);
+        json.writeString("timer");
+        json.writeFieldName(DURATION);
+        json.writeStartObject();
+        if (context.query.wants("unit")) {
+            json.writeFieldName(UNIT);
+            json.writeString(durationUnit.toString().toLowerCase());
+        }
+        writeSummarizable(timer, context);
+        writeSampling(timer.getSnapshot(), context);
+        json.writeEndObject();
+
+        json.writeFieldName(RATE);
+        json.writeStartObject();
+        writeMeteredFields(timer, context);
+        json.writeEndObject();
+        json.writeEndObject();
+    }
+
+    @Override
+    public void processGauge(MetricName name, Gauge<?> gauge, Context context) throws Exception {
+        final JsonGenerator json = context.json;
+        json.writeStartObject();
+        json.writeFieldName(TYPE);
+        json.writeString("gauge");
+        if (context.query.wants("value")) {
+            json.writeFieldName(VALUE);
+            json.writeObject(evaluateGauge(gauge));
+        }
+        json.writeEndObject();
+    }
+
+    private static Object evaluateGauge(Gauge<?> gauge) {
+        try {
+            return gauge.value();
+        } catch (RuntimeException e) {
+            LOG.warn(e, "Error evaluating gauge {}", gauge);
+            return "error reading gauge: " + e.getMessage();
+        }
+    }
+
+    private static void writeSummarizable(Summarizable metric, Context context) throws IOException {
+        writeField(MIN, metric.min(), context);
+        writeField(MAX, metric.max(), context);
+        writeField(MEAN, metric.mean(), context);
+        writeField(STD_DEV, metric.stdDev(), context);
+    }
+
+    private static void writeSampling(Snapshot snapshot, Context context) throws IOException {
+        writeField(MEDIAN, snapshot.getMedian(), context);
+        writeField(P75, snapshot.get75thPercentile(), context);
+        writeField(P95, snapshot.get95thPercentile(), context);
+        writeField(P98, snapshot.get98thPercentile(), context);
+        writeField(P99, snapshot.get99thPercentile(), context);
+        writeField(P999, snapshot.get999thPercentile(), context);
+        if (context.fullSamples && context.query.wants("values")) {
+            context.json.writeFieldName(VALUES);
+            context.json.writeStartArray();
+            for (double value : snapshot.getValues()) {
+                context.json.writeNumber(value);
+            }
+            context.json.writeEndArray();
+        }
+    }
+
+    private static void writeMeteredFields(Metered metered, Context context) throws IOException {
+        if (context.query.wants("unit")) {
+            context.json.writeFieldName(UNIT);
+            context.json.writeString(metered.rateUnit().toString().toLowerCase());
+        }
+        writeField(COUNT, metered.count(), context);
+        writeField(MEAN, metered.meanRate(), context);
+        writeField(M1, metered.oneMinuteRate(), context);
+        writeField(M5, metered.fiveMinuteRate(), context);
+        writeField(M15, metered.fifteenMinuteRate(), context);
+    }
+
+    private static void writeField(SerializedString field, double value, Context context) throws IOException {
+        if (context.query.wants(field.getValue())) {
+            context.json.writeFieldName(field);
+            context.json.writeNumber(value);
+        }
+    }
+
+    private static void writeField(SerializedString field, long value, Context context) throws IOException {
+        if (context.query.wants(field.getValue())) {
+            context.json.writeFieldName(field);
+            context.json.writeNumber(value);
+        }
+    }
+
+    private void writeVmMetrics(JsonGenerator json) throws IOException {
+        json.writeFieldName("jvm");
+        json.writeStartObject();
+        {
+            json.writeFieldName("vm");
+            json.writeStartObject();
+            json.writeStringField("name", vm.name());
+            json.writeStringField("version", vm.version());
+            json.writeEndObject();
+
+            json.writeFieldName("memory");
+            json.writeStartObject();
+            json.writeNumberField("totalInit", vm.totalInit());
+            json.writeNumberField("totalUsed", vm.totalUsed());
+            json.writeNumberField("totalMax", vm.totalMax());
+            json.writeNumberField("totalCommitted", vm.totalCommitted());
+            json.writeNumberField("heapInit", vm.heapInit());
+            json.writeNumberField("heapUsed", vm.heapUsed());
+            json.writeNumberField("heapMax", vm.heapMax());
+            json.writeNumberField("heapCommitted", vm.heapCommitted());
+            json.writeNumberField("heap_usage", vm.heapUsage());
+            json.writeNumberField("non_heap_usage", vm.nonHeapUsage());
+            json.writeFieldName("memory_pool_usages");
+            json.writeStartObject();
+            for (Map.Entry<String, Double> pool : vm.memoryPoolUsage().entrySet()) {
+                json.writeNumberField(pool.getKey(), pool.getValue());
+            }
+            json.writeEndObject();
+            json.writeEndObject();
+
+            final Map<String, VirtualMachineMetrics.BufferPoolStats> bufferPools = vm.getBufferPoolStats();
+            if (!bufferPools.isEmpty()) {
+                json.writeFieldName("buffers");
+                json.writeStartObject();
+                for (Map.Entry<String, VirtualMachineMetrics.BufferPoolStats> pool : bufferPools.entrySet()) {
+                    json.writeFieldName(pool.getKey());
+                    json.writeStartObject();
+                    json.writeNumberField("count", pool.getValue().getCount());
+                    json.writeNumberField("memoryUsed", pool.getValue().getMemoryUsed());
+                    json.writeNumberField("totalCapacity", pool.getValue().getTotalCapacity());
+                    json.writeEndObject();
+                }
+                json.writeEndObject();
+            }
+
+            json.writeNumberField("daemon_thread_count", vm.daemonThreadCount());
+            json.writeNumberField("thread_count", vm.threadCount());
+            json.writeNumberField("current_time", clock.time());
+            json.writeNumberField("uptime", vm.uptime());
+            json.writeNumberField("fd_usage", vm.fileDescriptorUsage());
+
+            json.writeFieldName("thread-states");
+            json.writeStartObject();
+            for (Map.Entry<Thread.State, Double> state : vm.threadStatePercentages().entrySet()) {
+                json.writeNumberField(state.getKey().toString().toLowerCase(), state.getValue());
+            }
+            json.writeEndObject();
+
+            json.writeFieldName("garbage-collectors");
+            json.writeStartObject();
+            for (Map.Entry<String, VirtualMachineMetrics.GarbageCollectorStats> gc : vm.garbageCollectors().entrySet()) {
+                json.writeFieldName(gc.getKey());
+                json.writeStartObject();
+                json.writeNumberField("runs", gc.getValue().getRuns());
+                json.writeNumberField("time", gc.getValue().getTime(TimeUnit.MILLISECONDS));
+                json.writeEndObject();
+            }
+            json.writeEndObject();
+        }
+        json.writeEndObject();
+    }
+
+    public static final class Context {
+        private final JsonGenerator json;
+        private final MetricsQuery query;
+        private final boolean fullSamples;
+
+        Context(JsonGenerator json, MetricsQuery query, boolean fullSamples) {
+            this.json = json;
+            this.query = query;
+            this.fullSamples = fullSamples;
+        }
+    }
+
+    /**
+     * Group and name of a metric, escaped once
+     */
+    static final class Names {
+        private final SerializedString group;
+        private final SerializedString name;
+        private final String fullName;
+
+        Names(MetricName metricName) {
+            final String group = MetricsIndex.group(metricName);
+            this.group = new SerializedString(group);
+            this.name = new SerializedString(metricName.getName());
+            this.fullName = group + "." + metricName.getName();
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package halfpipe.metrics;
+
+import com.google.common.base.Splitter;
+import com.google.common.base.Strings;
+import com.google.common.collect.ImmutableSortedSet;
+
+import javax.servlet.http.HttpServletRequest;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * Which metrics, and which of their fields, a request for metrics asks for:
+ * <ul>
+ *     <li>{@code prefix} keeps metrics whose full name, group.type[.scope].name, starts with it. {@code class} is
+ *     accepted too, as {@link com.yammer.metrics.reporting.MetricsServlet} calls it.</li>
+ *     <li>{@code regex} keeps metrics whose full name it matches somewhere</li>
+ *     <li>{@code fields} a comma separated list of the fields to write, e.g. {@code count,p99,m1}</li>
+ * </ul>
+ */
+public class MetricsQuery {
+    private final String prefix;
+    private final Pattern regex;
+    private final Set<String> fields;
+    private final String key;
+
+    public MetricsQuery(String prefix, String regex, String fields) {
+        this.prefix = Strings.emptyToNull(prefix);
+        this.regex = Strings.isNullOrEmpty(regex) ? null : Pattern.compile(regex);
+        this.fields = Strings.isNullOrEmpty(fields) ? null
+                : ImmutableSortedSet.copyOf(Splitter.on(',').trimResults().omitEmptyStrings().split(fields));
+        this.key = this.prefix + "|" + regex + "|" + this.fields;
+    }
+
+    /**
+     * @throws java.util.regex.PatternSyntaxException if the regex parameter is invalid
+     */
+    public static MetricsQuery from(HttpServletRequest req) {
+        final String prefix = req.getParameter("prefix");
+        return new MetricsQuery(prefix != null ? prefix : req.getParameter("class"), req.getParameter("regex"),
+                req.getParameter("fields"));
+    }
+
+    /**
+     * @param fullName group.type[.scope].name
+     */
+    public boolean matches(String fullName) {
+        return (prefix == null || fullName.startsWith(prefix)) && (regex == null || regex.matcher(fullName).find());
+    }
+
+    public boolean wants(String field) {
+        return fields == null || fields.contains(field);
+    }
+
+    public boolean allFields() {
+        return fields == null;
+    }
+
+    /**
+     * @return a key equal for queries asking for the same metrics and fields, for caching what they render
+     */
+    public String key() {
+        return key;
+    }
+
+    @Override
+    public String toString() {
+        return "MetricsQuery: {" + key + "}";
+    }
+}
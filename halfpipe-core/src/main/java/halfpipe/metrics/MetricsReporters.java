@@ -0,0 +1,205 @@
+package halfpipe.metrics;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.netflix.config.PropertyWrapper;
+import com.yammer.metrics.core.Clock;
+import com.yammer.metrics.core.MetricsRegistry;
+import halfpipe.configuration.CallbackDispatcher;
+import halfpipe.configuration.CsvConfiguration;
+import halfpipe.configuration.GraphiteConfiguration;
+import halfpipe.configuration.PropertyCallback;
+import halfpipe.configuration.ReporterConfiguration;
+import halfpipe.configuration.ReportersConfiguration;
+import halfpipe.configuration.StatsdConfiguration;
+import halfpipe.logging.Log;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs the {@link Reporter}s enabled in {@link ReportersConfiguration}, all on one scheduler thread. A change to
+ * any property of a reporter, applied once per poll, stops it and starts it again with the new values. Stopping
+ * sends a last report.
+ */
+public class MetricsReporters {
+    private static final Log LOG = Log.forThisClass();
+
+    private final MetricsRegistry registry;
+    private final Clock clock;
+    private final List<Slot> slots;
+
+    private ScheduledExecutorService scheduler;
+
+    public MetricsReporters(MetricsRegistry registry, final ReportersConfiguration config) {
+        this(registry, config, Clock.defaultClock());
+    }
+
+    public MetricsReporters(MetricsRegistry registry, final ReportersConfiguration config, Clock clock) {
+        this.registry = registry;
+        this.clock = clock;
+        this.slots = ImmutableList.of(
+                new Slot("graphite", config.graphite, config.graphite.host, config.graphite.port) {
+                    @Override
+                    Reporter create() {
+                        final GraphiteConfiguration graphite = config.graphite;
+                        return new GraphiteReporter(MetricsReporters.this.registry, graphite.prefix.get(),
+                                graphite.include.get(), graphite.exclude.get(), MetricsReporters.this.clock,
+                                graphite.host.get(), graphite.port.get());
+                    }
+                },
+                new Slot("statsd", config.statsd, config.statsd.host, config.statsd.port,
+                        config.statsd.maxPacketSize) {
+                    @Override
+                    Reporter create() throws IOException {
+                        final StatsdConfiguration statsd = config.statsd;
+                        return new StatsdReporter(MetricsReporters.this.registry, statsd.prefix.get(),
+                                statsd.include.get(), statsd.exclude.get(), MetricsReporters.this.clock,
+                                statsd.host.get(), statsd.port.get(), statsd.maxPacketSize.get());
+                    }
+                },
+                new Slot("csv", config.csv, config.csv.directory, config.csv.maxHistory) {
+                    @Override
+                    Reporter create() {
+                        final CsvConfiguration csv = config.csv;
+                        return new CsvReporter(MetricsReporters.this.registry, csv.prefix.get(),
+                                csv.include.get(), csv.exclude.get(), MetricsReporters.this.clock,
+                                new File(csv.directory.get()), csv.maxHistory.get());
+                    }
+                });
+        for (Slot slot : slots) {
+            slot.watch();
+        }
+    }
+
+    @PostConstruct
+    public synchronized void start() {
+        if (scheduler != null) {
+            return;
+        }
+        final ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1,
+                new ThreadFactoryBuilder().setNameFormat("metrics-reporter-%d")
+                                          .setDaemon(true)
+                                          .build());
+        executor.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+        scheduler = executor;
+        for (Slot slot : slots) {
+            slot.restart();
+        }
+    }
+
+    @PreDestroy
+    public synchronized void stop() {
+        if (scheduler == null) {
+            return;
+        }
+        scheduler.shutdown();
+        for (Slot slot : slots) {
+            slot.stop(true);
+        }
+        scheduler = null;
+    }
+
+    /**
+     * @return the running reporter of the name, graphite, statsd or csv, or null
+     */
+    public Reporter get(String name) {
+        for (Slot slot : slots) {
+            if (slot.name.equals(name)) {
+                return slot.reporter;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Where one kind of reporter runs, restarted whenever its configuration changes
+     */
+    private abstract class Slot {
+        private final String name;
+        private final ReporterConfiguration config;
+        private final List<PropertyWrapper<?>> props;
+
+        private volatile Reporter reporter;
+        private ScheduledFuture<?> future;
+
+        Slot(String name, ReporterConfiguration config, PropertyWrapper<?>... props) {
+            this.name = name;
+            this.config = config;
+            this.props = ImmutableList.<PropertyWrapper<?>>builder()
+                    .add(config.enabled, config.interval, config.prefix, config.include, config.exclude)
+                    .add(props)
+                    .build();
+        }
+
+        abstract Reporter create() throws IOException;
+
+        /**
+         * Restarts the reporter on changes while started, registered once as property callbacks can't be removed
+         */
+        void watch() {
+            final Runnable restart = CallbackDispatcher.dispatch(new Runnable() {
+                @Override
+                public void run() {
+                    synchronized (MetricsReporters.this) {
+                        if (scheduler != null) {
+                            restart();
+                        }
+                    }
+                }
+
+                @Override
+                public String toString() {
+                    return "MetricsReporters.restart";
+                }
+            }, PropertyCallback.Dispatch.COALESCED, "metrics.reporters." + name);
+            for (PropertyWrapper<?> prop : props) {
+                prop.addCallback(restart);
+            }
+        }
+
+        void restart() {
+            stop(false);
+            if (!config.enabled.get()) {
+                return;
+            }
+            final long interval = config.interval.get().toMilliseconds();
+            if (interval <= 0) {
+                LOG.warn("Not starting the {} reporter, interval {} is not positive", name, config.interval.get());
+                return;
+            }
+            try {
+                reporter = create();
+            } catch (Exception e) {
+                LOG.error(e, "Unable to start the {} reporter", name);
+                return;
+            }
+            future = scheduler.scheduleAtFixedRate(reporter, interval, interval, TimeUnit.MILLISECONDS);
+            LOG.info("Reporting metrics to {} every {}", reporter, config.interval.get());
+        }
+
+        /**
+         * @param report whether to send a last report
+         */
+        void stop(boolean report) {
+            final Reporter current = reporter;
+            if (current == null) {
+                return;
+            }
+            future.cancel(false);
+            if (report) {
+                current.run();
+            }
+            current.close();
+            reporter = null;
+            future = null;
+        }
+    }
+}
@@ -0,0 +1,304 @@
+package halfpipe.metrics;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Function;
+import com.yammer.metrics.core.*;
+import com.yammer.metrics.stats.Snapshot;
+import halfpipe.logging.Log;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Writes the metrics of a registry in the Prometheus text exposition format, version 0.0.4.
+ *
+ * A metric named group, type, name and scope is written as {@code group_type_name{scope="scope"}}, with anything
+ * but letters, digits, _ and : in the name replaced by _. Names and labels are sanitized once, when a metric is
+ * registered, and kept as bytes in a {@link MetricsIndex} sorted by sanitized name, so that every sample of one
+ * Prometheus metric comes out together. Each scrape only copies those bytes and formats the values.
+ * <ul>
+ *     <li>counters and gauges with numeric or boolean values are gauges</li>
+ *     <li>meters are counters, {@code name_total}; Prometheus derives rates from them</li>
+ *     <li>timers are summaries in seconds, {@code name_seconds}, with quantiles, {@code _sum} and {@code _count}</li>
+ *     <li>histograms are summaries in the unit they were updated with</li>
+ * </ul>
+ * When metrics of different kinds sanitize to the same name, only the first one is written.
+ */
+public class PrometheusWriter implements MetricProcessor<PrometheusWriter.Context>,
+        HistogramTimer.Processor<PrometheusWriter.Context> {
+    private static final Log LOG = Log.forThisClass();
+
+    public static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+    private static final double[] QUANTILES = {0.5, 0.75, 0.95, 0.98, 0.99, 0.999};
+    private static final byte[][] QUANTILE_LABELS = new byte[QUANTILES.length][];
+
+    static {
+        for (int i = 0; i < QUANTILES.length; i++) {
+            QUANTILE_LABELS[i] = bytes("quantile=\"" + QUANTILES[i] + "\"");
+        }
+    }
+
+    private static final byte[] TYPE = bytes("# TYPE ");
+    private static final byte[] GAUGE = bytes("gauge");
+    private static final byte[] COUNTER = bytes("counter");
+    private static final byte[] SUMMARY = bytes("summary");
+    private static final byte[] TOTAL = bytes("_total");
+    private static final byte[] SECONDS = bytes("_seconds");
+    private static final byte[] SUM = bytes("_sum");
+    private static final byte[] COUNT = bytes("_count");
+    private static final byte[] NONE = new byte[0];
+    private static final byte[] NAN = bytes("NaN");
+    private static final byte[] POSITIVE_INFINITY = bytes("+Inf");
+    private static final byte[] NEGATIVE_INFINITY = bytes("-Inf");
+
+    private static final Comparator<Names> BY_NAME = new Comparator<Names>() {
+        @Override
+        public int compare(Names a, Names b) {
+            return a.sanitized.compareTo(b.sanitized);
+        }
+    };
+
+    private final MetricsIndex<Names> index;
+
+    public PrometheusWriter(MetricsRegistry registry) {
+        this.index = new MetricsIndex<Names>(registry, new Function<MetricName, Names>() {
+            @Override
+            public Names apply(MetricName name) {
+                return new Names(name);
+            }
+        }, BY_NAME);
+    }
+
+    /**
+     * @param query only its prefix and regex apply, every metric is written in full
+     */
+    public void write(OutputStream out, MetricsQuery query) throws IOException {
+        final Context context = new Context(out);
+        for (MetricsIndex.Entry<Names> entry : index.entries()) {
+            final Names names = entry.getNames();
+            if (!query.matches(names.fullName)) {
+                continue;
+            }
+            context.names = names;
+            try {
+                entry.getMetric().processWith(this, entry.getName(), context);
+            } catch (Exception e) {
+                LOG.warn(e, "Error writing out {}", entry.getName());
+            }
+        }
+        context.flush();
+    }
+
+    @Override
+    public void processCounter(MetricName name, Counter counter, Context context) throws Exception {
+        if (context.begin(GAUGE, NONE)) {
+            context.sample(NONE, NONE, counter.count());
+        }
+    }
+
+    @Override
+    public void processGauge(MetricName name, Gauge<?> gauge, Context context) throws Exception {
+        final Object value = gauge.value();
+        final double number;
+        if (value instanceof Number) {
+            number = ((Number) value).doubleValue();
+        } else if (value instanceof Boolean) {
+            number = (Boolean) value ? 1 : 0;
+        } else {
+            return;
+        }
+        if (context.begin(GAUGE, NONE)) {
+            context.sample(NONE, NONE, number);
+        }
+    }
+
+    @Override
+    public void processMeter(MetricName name, Metered meter, Context context) throws Exception {
+        if (context.begin(COUNTER, TOTAL)) {
+            context.sample(TOTAL, NONE, meter.count());
+        }
+    }
+
+    @Override
+    public void processHistogram(MetricName name, Histogram histogram, Context context) throws Exception {
+        if (context.begin(SUMMARY, NONE)) {
+            writeSummary(NONE, histogram.getSnapshot(), 1.0, histogram.sum(), histogram.count(), context);
+        }
+    }
+
+    @Override
+    public void processTimer(MetricName name, Timer timer, Context context) throws Exception {
+        writeTimer(timer, timer.durationUnit(), context);
+    }
+
+    @Override
+    public void processHistogramTimer(MetricName name, HistogramTimer timer, Context context) throws Exception {
+        writeTimer(timer, timer.durationUnit(), context);
+    }
+
+    private static <T extends Metered & Sampling & Summarizable> void writeTimer(T timer, TimeUnit durationUnit,
+                                                                                 Context context) throws IOException {
+        if (context.begin(SUMMARY, SECONDS)) {
+            final double toSeconds = durationUnit.toNanos(1) / 1e9;
+            writeSummary(SECONDS, timer.getSnapshot(), toSeconds, timer.sum() * toSeconds, timer.count(), context);
+        }
+    }
+
+    private static void writeSummary(byte[] suffix, Snapshot snapshot, double scale, double sum, long count,
+                                     Context context) throws IOException {
+        for (int i = 0; i < QUANTILES.length; i++) {
+            context.sample(suffix, QUANTILE_LABELS[i], snapshot.getValue(QUANTILES[i]) * scale);
+        }
+        context.sample(suffix, SUM, NONE, sum);
+        context.sample(suffix, COUNT, NONE, count);
+    }
+
+    private static byte[] bytes(String s) {
+        return s.getBytes(Charsets.UTF_8);
+    }
+
+    /**
+     * Replaces what a Prometheus metric name can't hold with _
+     */
+    static String sanitize(String name) {
+        final StringBuilder sanitized = new StringBuilder(name.length() + 1);
+        for (int i = 0; i < name.length(); i++) {
+            final char c = name.charAt(i);
+            final boolean valid = (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || c == '_' || c == ':'
+                    || (i > 0 && c >= '0' && c <= '9');
+            if (!valid && i == 0 && c >= '0' && c <= '9') {
+                sanitized.append('_').append(c);
+            } else {
+                sanitized.append(valid ? c : '_');
+            }
+        }
+        return sanitized.toString();
+    }
+
+    /**
+     * Escapes a label value: backslash, double quote and line feed
+     */
+    static String escape(String value) {
+        final StringBuilder escaped = new StringBuilder(value.length());
+        for (int i = 0; i < value.length(); i++) {
+            final char c = value.charAt(i);
+            if (c == '\\' || c == '"') {
+                escaped.append('\\').append(c);
+            } else if (c == '\n') {
+                escaped.append("\\n");
+            } else {
+                escaped.append(c);
+            }
+        }
+        return escaped.toString();
+    }
+
+    /**
+     * Name and labels of a metric, sanitized once
+     */
+    static final class Names {
+        private final String sanitized;
+        private final byte[] name;
+        private final byte[] labels;
+        private final String fullName;
+
+        Names(MetricName metricName) {
+            this.sanitized = sanitize(metricName.getGroup() + "_" + metricName.getType() + "_" + metricName.getName());
+            this.name = bytes(sanitized);
+            this.labels = metricName.hasScope() ? bytes("scope=\"" + escape(metricName.getScope()) + "\"") : NONE;
+            this.fullName = MetricsIndex.group(metricName) + "." + metricName.getName();
+        }
+    }
+
+    /**
+     * Buffers what a scrape writes, and remembers the last metric written to tell when a new one starts
+     */
+    public static final class Context {
+        private static final int BUFFER_SIZE = 8192;
+
+        private final OutputStream out;
+        private final AsciiBuffer buffer = new AsciiBuffer(BUFFER_SIZE);
+
+        private Names names;
+        private String lastName;
+        private byte[] lastType;
+        private byte[] lastSuffix;
+
+        Context(OutputStream out) {
+            this.out = out;
+        }
+
+        /**
+         * Writes the TYPE line when the metric starts a new Prometheus metric
+         *
+         * @return false when the name was already written as another kind of metric
+         */
+        boolean begin(byte[] type, byte[] suffix) throws IOException {
+            if (names.sanitized.equals(lastName)) {
+                if (type == lastType && suffix == lastSuffix) {
+                    return true;
+                }
+                LOG.debug("Skipping {}, already written as another kind of metric", names.fullName);
+                return false;
+            }
+            lastName = names.sanitized;
+            lastType = type;
+            lastSuffix = suffix;
+            buffer.write(TYPE).write(names.name).write(suffix).write((byte) ' ').write(type).write((byte) '\n');
+            return true;
+        }
+
+        void sample(byte[] suffix, byte[] labels, double value) throws IOException {
+            sample(suffix, NONE, labels, value);
+        }
+
+        void sample(byte[] suffix, byte[] part, byte[] labels, double value) throws IOException {
+            writeName(suffix, part, labels);
+            if (Double.isNaN(value)) {
+                buffer.write(NAN);
+            } else if (Double.isInfinite(value)) {
+                buffer.write(value > 0 ? POSITIVE_INFINITY : NEGATIVE_INFINITY);
+            } else {
+                buffer.writeDouble(value);
+            }
+            endSample();
+        }
+
+        void sample(byte[] suffix, byte[] labels, long value) throws IOException {
+            sample(suffix, NONE, labels, value);
+        }
+
+        void sample(byte[] suffix, byte[] part, byte[] labels, long value) throws IOException {
+            writeName(suffix, part, labels);
+            buffer.writeLong(value);
+            endSample();
+        }
+
+        private void writeName(byte[] suffix, byte[] part, byte[] labels) {
+            buffer.write(names.name).write(suffix).write(part);
+            if (labels.length > 0 || names.labels.length > 0) {
+                buffer.write((byte) '{').write(names.labels);
+                if (labels.length > 0 && names.labels.length > 0) {
+                    buffer.write((byte) ',');
+                }
+                buffer.write(labels).write((byte) '}');
+            }
+            buffer.write((byte) ' ');
+        }
+
+        private void endSample() throws IOException {
+            buffer.write((byte) '\n');
+            if (buffer.size() >= BUFFER_SIZE) {
+                flush();
+            }
+        }
+
+        void flush() throws IOException {
+            buffer.writeTo(out);
+            buffer.reset();
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package halfpipe.metrics;
+
+import com.google.common.base.Throwables;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps renderings for a short while so that requests for the same thing share one. Requests arriving while it is
+ * being rendered wait for that rendering rather than starting their own.
+ */
+public class RenderCache {
+    private static final int MAX_RENDERINGS = 32;
+
+    public interface Renderer {
+        void render(OutputStream out) throws IOException;
+    }
+
+    private volatile Cache<String, byte[]> cache;
+    private volatile long ttl;
+
+    /**
+     * @param ttl how long a rendering is kept, in milliseconds
+     */
+    public byte[] get(String key, long ttl, final Renderer renderer) throws IOException {
+        try {
+            return cache(ttl).get(key, new Callable<byte[]>() {
+                @Override
+                public byte[] call() throws IOException {
+                    final ByteArrayOutputStream out = new ByteArrayOutputStream(8192);
+                    renderer.render(out);
+                    return out.toByteArray();
+                }
+            });
+        } catch (ExecutionException e) {
+            Throwables.propagateIfInstanceOf(e.getCause(), IOException.class);
+            throw Throwables.propagate(e.getCause());
+        } catch (UncheckedExecutionException e) {
+            throw Throwables.propagate(e.getCause());
+        }
+    }
+
+    private Cache<String, byte[]> cache(long ttl) {
+        Cache<String, byte[]> current = cache;
+        if (current == null || this.ttl != ttl) {
+            synchronized (this) {
+                current = cache;
+                if (current == null || this.ttl != ttl) {
+                    current = CacheBuilder.newBuilder()
+                            .maximumSize(MAX_RENDERINGS)
+                            .expireAfterWrite(ttl, TimeUnit.MILLISECONDS)
+                            .build();
+                    this.ttl = ttl;
+                    cache = current;
+                }
+            }
+        }
+        return current;
+    }
+}
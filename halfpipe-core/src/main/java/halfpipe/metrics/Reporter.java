@@ -0,0 +1,295 @@
+package halfpipe.metrics;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Function;
+import com.google.common.base.Strings;
+import com.yammer.metrics.core.*;
+import com.yammer.metrics.stats.Snapshot;
+import halfpipe.logging.Log;
+
+import java.io.IOException;
+import java.util.regex.Pattern;
+
+/**
+ * Pushes the values of a registry's metrics somewhere each time it runs, as the {@link Field}s of each metric under
+ * a dotted name, prefix.group.type[.scope].name. Names are built once, when a metric is registered, with anything
+ * but letters, digits, _ and - in each part replaced by _.
+ * <ul>
+ *     <li>counters: count</li>
+ *     <li>meters: count and rates in the meter's rate unit</li>
+ *     <li>histograms: count, min, max, mean, stddev and percentiles</li>
+ *     <li>timers: as histograms in the duration unit, and rates in the rate unit</li>
+ *     <li>gauges: value, when numeric or boolean</li>
+ * </ul>
+ * NaN and infinite values are left out.
+ *
+ * A report is built up in a buffer and sent as a whole by {@link #end()}, so a reporter sends as few packets as it
+ * can. Reports of one reporter never overlap.
+ */
+public abstract class Reporter implements Runnable, MetricProcessor<Reporter.Name>,
+        HistogramTimer.Processor<Reporter.Name> {
+    private static final Log LOG = Log.forThisClass();
+
+    public enum Field {
+        COUNT("count"),
+        MIN("min"),
+        MAX("max"),
+        MEAN("mean"),
+        STDDEV("stddev"),
+        P50("p50"),
+        P75("p75"),
+        P95("p95"),
+        P98("p98"),
+        P99("p99"),
+        P999("p999"),
+        MEAN_RATE("mean_rate"),
+        M1_RATE("m1_rate"),
+        M5_RATE("m5_rate"),
+        M15_RATE("m15_rate"),
+        VALUE("value");
+
+        private final String name;
+        private final byte[] bytes;
+
+        Field(String name) {
+            this.name = name;
+            this.bytes = name.getBytes(Charsets.US_ASCII);
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        byte[] bytes() {
+            return bytes;
+        }
+    }
+
+    private final MetricsIndex<Name> index;
+    private final Pattern include;
+    private final Pattern exclude;
+    private final Clock clock;
+    private volatile boolean closed;
+
+    /**
+     * @param include only report metrics whose full name this regex matches somewhere, null for all
+     * @param exclude don't report metrics whose full name this regex matches somewhere, null for none
+     */
+    protected Reporter(MetricsRegistry registry, final String prefix, String include, String exclude, Clock clock) {
+        this.include = Strings.isNullOrEmpty(include) ? null : Pattern.compile(include);
+        this.exclude = Strings.isNullOrEmpty(exclude) ? null : Pattern.compile(exclude);
+        this.clock = clock;
+        this.index = new MetricsIndex<Name>(registry, new Function<MetricName, Name>() {
+            @Override
+            public Name apply(MetricName name) {
+                return new Name(prefix, name);
+            }
+        });
+    }
+
+    @Override
+    public void run() {
+        try {
+            report();
+        } catch (Exception e) {
+            if (!closed) {
+                LOG.warn(e, "Error reporting metrics to {}", this);
+            }
+        }
+    }
+
+    /**
+     * Does nothing once closed
+     */
+    public synchronized void report() throws IOException {
+        if (closed) {
+            return;
+        }
+        begin(clock.time());
+        for (MetricsIndex.Entry<Name> entry : index.entries()) {
+            final Name name = entry.getNames();
+            if ((include != null && !include.matcher(name.fullName).find())
+                    || (exclude != null && exclude.matcher(name.fullName).find())) {
+                continue;
+            }
+            try {
+                entry.getMetric().processWith(this, entry.getName(), name);
+            } catch (Exception e) {
+                LOG.warn(e, "Error reporting {}", entry.getName());
+            }
+        }
+        end();
+    }
+
+    /**
+     * Stops following the registry and releases what the reporter holds, like connections. A report in progress is
+     * first {@link #abort() aborted}, then waited for.
+     */
+    public void close() {
+        closed = true;
+        abort();
+        synchronized (this) {
+            index.close();
+            release();
+        }
+    }
+
+    /**
+     * @return whether {@link #close()} was called, true as soon as it is
+     */
+    protected boolean isClosed() {
+        return closed;
+    }
+
+    /**
+     * Called by {@link #close()} without waiting for a report in progress, to end one stuck sending, e.g. by
+     * closing its connection. Does nothing by default.
+     */
+    protected void abort() {
+    }
+
+    /**
+     * Called once by {@link #close()}, after the last report, to release what the reporter holds. Does nothing by
+     * default.
+     */
+    protected void release() {
+    }
+
+    /**
+     * Starts a report
+     *
+     * @param time when, in milliseconds
+     */
+    protected abstract void begin(long time) throws IOException;
+
+    /**
+     * Adds a value to the report
+     */
+    protected abstract void write(Name name, Field field, double value) throws IOException;
+
+    /**
+     * Sends the report
+     */
+    protected abstract void end() throws IOException;
+
+    private void value(Name name, Field field, double value) throws IOException {
+        if (!Double.isNaN(value) && !Double.isInfinite(value)) {
+            write(name, field, value);
+        }
+    }
+
+    @Override
+    public void processCounter(MetricName metricName, Counter counter, Name name) throws Exception {
+        value(name, Field.COUNT, counter.count());
+    }
+
+    @Override
+    public void processMeter(MetricName metricName, Metered meter, Name name) throws Exception {
+        value(name, Field.COUNT, meter.count());
+        writeRates(meter, name);
+    }
+
+    @Override
+    public void processHistogram(MetricName metricName, Histogram histogram, Name name) throws Exception {
+        value(name, Field.COUNT, histogram.count());
+        writeSummary(histogram, histogram.getSnapshot(), name);
+    }
+
+    @Override
+    public void processTimer(MetricName metricName, Timer timer, Name name) throws Exception {
+        writeTimer(timer, name);
+    }
+
+    @Override
+    public void processHistogramTimer(MetricName metricName, HistogramTimer timer, Name name) throws Exception {
+        writeTimer(timer, name);
+    }
+
+    private <T extends Metered & Sampling & Summarizable> void writeTimer(T timer, Name name) throws IOException {
+        value(name, Field.COUNT, timer.count());
+        writeSummary(timer, timer.getSnapshot(), name);
+        writeRates(timer, name);
+    }
+
+    @Override
+    public void processGauge(MetricName metricName, Gauge<?> gauge, Name name) throws Exception {
+        final Object value = gauge.value();
+        if (value instanceof Number) {
+            value(name, Field.VALUE, ((Number) value).doubleValue());
+        } else if (value instanceof Boolean) {
+            value(name, Field.VALUE, (Boolean) value ? 1 : 0);
+        }
+    }
+
+    private void writeSummary(Summarizable summary, Snapshot snapshot, Name name) throws IOException {
+        value(name, Field.MIN, summary.min());
+        value(name, Field.MAX, summary.max());
+        value(name, Field.MEAN, summary.mean());
+        value(name, Field.STDDEV, summary.stdDev());
+        value(name, Field.P50, snapshot.getMedian());
+        value(name, Field.P75, snapshot.get75thPercentile());
+        value(name, Field.P95, snapshot.get95thPercentile());
+        value(name, Field.P98, snapshot.get98thPercentile());
+        value(name, Field.P99, snapshot.get99thPercentile());
+        value(name, Field.P999, snapshot.get999thPercentile());
+    }
+
+    private void writeRates(Metered metered, Name name) throws IOException {
+        value(name, Field.MEAN_RATE, metered.meanRate());
+        value(name, Field.M1_RATE, metered.oneMinuteRate());
+        value(name, Field.M5_RATE, metered.fiveMinuteRate());
+        value(name, Field.M15_RATE, metered.fifteenMinuteRate());
+    }
+
+    /**
+     * Replaces what can't be part of a dotted name with _
+     */
+    static String sanitize(String part) {
+        final StringBuilder sanitized = new StringBuilder(part.length());
+        for (int i = 0; i < part.length(); i++) {
+            final char c = part.charAt(i);
+            final boolean valid = (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9')
+                    || c == '_' || c == '-';
+            sanitized.append(valid ? c : '_');
+        }
+        return sanitized.toString();
+    }
+
+    /**
+     * The dotted name of a metric, built once
+     */
+    public static final class Name {
+        private final String fullName;
+        private final byte[] bytes;
+
+        Name(String prefix, MetricName metricName) {
+            this.fullName = MetricsIndex.group(metricName) + "." + metricName.getName();
+            final StringBuilder name = new StringBuilder();
+            if (!Strings.isNullOrEmpty(prefix)) {
+                name.append(prefix).append('.');
+            }
+            for (String part : metricName.getGroup().split("\\.")) {
+                name.append(sanitize(part)).append('.');
+            }
+            name.append(sanitize(metricName.getType())).append('.');
+            if (metricName.hasScope()) {
+                name.append(sanitize(metricName.getScope())).append('.');
+            }
+            name.append(sanitize(metricName.getName()));
+            this.bytes = name.toString().getBytes(Charsets.UTF_8);
+        }
+
+        public String getFullName() {
+            return fullName;
+        }
+
+        byte[] bytes() {
+            return bytes;
+        }
+
+        @Override
+        public String toString() {
+            return new String(bytes, Charsets.UTF_8);
+        }
+    }
+}
@@ -0,0 +1,146 @@
+package halfpipe.metrics;
+
+import com.yammer.metrics.core.Clock;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Where the time of one request goes, phase by phase, kept for the thread handling it between
+ * {@link #start(boolean)} and {@link #end()}:
+ * <ul>
+ *     <li>filters: servlet filters, like springSecurityFilterChain, until Jersey has the request</li>
+ *     <li>routing: Jersey matching the request to a resource method and getting the resource</li>
+ *     <li>read: reading the request entity, for entities read by
+ *     {@link halfpipe.jersey.JacksonMessageBodyProvider}</li>
+ *     <li>validate: validating the request entity</li>
+ *     <li>resource: the resource method, with any other parameter reading</li>
+ *     <li>write: writing the response, from the headers to the end of the entity</li>
+ * </ul>
+ * Phases follow each other: each {@link #mark(Phase)} ends one phase and starts the next. Read and validate happen
+ * within the resource phase and are taken out of it.
+ *
+ * Requests dispatched to a resource method record each phase they went through in the method's timers, set by
+ * {@link #setTimers(DurationTimer[])}; requests that never reach one record nothing.
+ */
+public class RequestTiming {
+    private static final ThreadLocal<RequestTiming> CURRENT = new ThreadLocal<RequestTiming>();
+    private static final Clock CLOCK = Clock.defaultClock();
+
+    public enum Phase {
+        FILTERS, ROUTING, READ, VALIDATE, RESOURCE, WRITE;
+
+        private final String label = name().toLowerCase();
+
+        public String getLabel() {
+            return label;
+        }
+    }
+
+    private static final Phase[] PHASES = Phase.values();
+
+    private final boolean serverTiming;
+    private final long[] nanos = new long[PHASES.length];
+    private final boolean[] seen = new boolean[PHASES.length];
+    private long last;
+    private DurationTimer[] timers;
+
+    private RequestTiming(boolean serverTiming) {
+        this.serverTiming = serverTiming;
+        this.last = CLOCK.tick();
+    }
+
+    /**
+     * Starts timing the current thread's request, in the filters phase
+     *
+     * @param serverTiming whether the response should have a Server-Timing header
+     * @return null if a request is already being timed on this thread, like a forwarded one
+     */
+    public static RequestTiming start(boolean serverTiming) {
+        if (CURRENT.get() != null) {
+            return null;
+        }
+        final RequestTiming timing = new RequestTiming(serverTiming);
+        CURRENT.set(timing);
+        return timing;
+    }
+
+    /**
+     * @return the timing of the current thread's request, or null if it isn't timed
+     */
+    public static RequestTiming current() {
+        return CURRENT.get();
+    }
+
+    /**
+     * Stops timing the current thread's request and records it
+     */
+    public void end() {
+        CURRENT.remove();
+        if (timers == null) {
+            return;
+        }
+        for (int i = 0; i < PHASES.length; i++) {
+            if (seen[i]) {
+                timers[i].update(nanos[i], TimeUnit.NANOSECONDS);
+            }
+        }
+    }
+
+    public static long tick() {
+        return CLOCK.tick();
+    }
+
+    /**
+     * Ends the phase, which started when the one before ended
+     */
+    public void mark(Phase phase) {
+        final long now = CLOCK.tick();
+        add(phase, now - last);
+        last = now;
+    }
+
+    /**
+     * Adds time to the phase, for phases within others
+     */
+    public void add(Phase phase, long nanos) {
+        this.nanos[phase.ordinal()] += nanos;
+        this.seen[phase.ordinal()] = true;
+    }
+
+    public long getNanos(Phase phase) {
+        return nanos[phase.ordinal()];
+    }
+
+    public boolean isServerTiming() {
+        return serverTiming;
+    }
+
+    /**
+     * @param timers of the resource method the request was dispatched to, one per {@link Phase}, in order
+     */
+    public void setTimers(DurationTimer[] timers) {
+        this.timers = timers;
+    }
+
+    /**
+     * @return the Server-Timing header value for the phases so far, durations in milliseconds
+     */
+    public String serverTimingHeader() {
+        final StringBuilder header = new StringBuilder(128);
+        for (int i = 0; i < PHASES.length; i++) {
+            if (seen[i]) {
+                if (header.length() > 0) {
+                    header.append(", ");
+                }
+                final long micros = TimeUnit.NANOSECONDS.toMicros(nanos[i]);
+                header.append(PHASES[i].label).append(";dur=").append(micros / 1000).append('.');
+                final long fraction = micros % 1000;
+                if (fraction < 100) {
+                    header.append(fraction < 10 ? "00" : "0");
+                }
+                header.append(fraction);
+            }
+        }
+        return header.toString();
+    }
+}
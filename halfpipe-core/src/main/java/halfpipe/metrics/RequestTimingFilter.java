@@ -0,0 +1,44 @@
+package halfpipe.metrics;
+
+import halfpipe.configuration.RequestTimingConfiguration;
+
+import javax.servlet.Filter;
+import javax.servlet.FilterChain;
+import javax.servlet.FilterConfig;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import java.io.IOException;
+
+/**
+ * Times requests in {@link RequestTiming} phases. Goes before every other filter, so that their time counts as the
+ * filters phase.
+ */
+public class RequestTimingFilter implements Filter {
+    private final RequestTimingConfiguration config;
+
+    public RequestTimingFilter(RequestTimingConfiguration config) {
+        this.config = config;
+    }
+
+    @Override
+    public void init(FilterConfig filterConfig) throws ServletException {
+    }
+
+    @Override
+    public void doFilter(ServletRequest request, ServletResponse response, FilterChain chain)
+            throws IOException, ServletException {
+        final RequestTiming timing = config.enabled.get() ? RequestTiming.start(config.serverTiming.get()) : null;
+        try {
+            chain.doFilter(request, response);
+        } finally {
+            if (timing != null) {
+                timing.end();
+            }
+        }
+    }
+
+    @Override
+    public void destroy() {
+    }
+}
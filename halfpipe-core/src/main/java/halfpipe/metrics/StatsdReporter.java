@@ -0,0 +1,96 @@
+package halfpipe.metrics;
+
+import com.yammer.metrics.core.Clock;
+import com.yammer.metrics.core.MetricsRegistry;
+
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetSocketAddress;
+import java.net.SocketException;
+
+/**
+ * Sends reports to StatsD as gauges, name:value|g, packing as many lines into each UDP packet as fit in
+ * maxPacketSize. StatsD reads a gauge starting with a sign as a change, so a negative value is sent as 0 followed
+ * by the value.
+ */
+public class StatsdReporter extends Reporter {
+    private static final byte[] GAUGE = {'|', 'g'};
+    private static final byte[] ZERO = {':', '0'};
+
+    private final String host;
+    private final int port;
+    private final int maxPacketSize;
+    private final DatagramSocket socket;
+    private final AsciiBuffer packet;
+
+    private InetSocketAddress address;
+
+    public StatsdReporter(MetricsRegistry registry, String prefix, String include, String exclude, Clock clock,
+                          String host, int port, int maxPacketSize) throws SocketException {
+        super(registry, prefix, include, exclude, clock);
+        this.host = host;
+        this.port = port;
+        this.maxPacketSize = maxPacketSize;
+        this.socket = new DatagramSocket();
+        this.packet = new AsciiBuffer(maxPacketSize * 2);
+    }
+
+    @Override
+    protected void begin(long time) {
+        // resolved once per report so that DNS changes are picked up
+        address = new InetSocketAddress(host, port);
+        packet.reset();
+    }
+
+    @Override
+    protected void write(Name name, Field field, double value) throws IOException {
+        if (value < 0) {
+            final int start = startLine();
+            packet.write(name.bytes()).write((byte) '.').write(field.bytes()).write(ZERO).write(GAUGE);
+            endLine(start);
+        }
+        final int start = startLine();
+        packet.write(name.bytes()).write((byte) '.').write(field.bytes()).write((byte) ':').writeDouble(value)
+                .write(GAUGE);
+        endLine(start);
+    }
+
+    private int startLine() {
+        final int start = packet.size();
+        if (start > 0) {
+            packet.write((byte) '\n');
+        }
+        return start;
+    }
+
+    private void endLine(int start) throws IOException {
+        if (packet.size() > maxPacketSize && start > 0) {
+            // send what was there before this line, which starts the next packet
+            send(start);
+            packet.discard(start + 1);
+        }
+    }
+
+    @Override
+    protected void end() throws IOException {
+        if (packet.size() > 0) {
+            send(packet.size());
+            packet.reset();
+        }
+    }
+
+    private void send(int length) throws IOException {
+        socket.send(new DatagramPacket(packet.array(), length, address));
+    }
+
+    @Override
+    protected void release() {
+        socket.close();
+    }
+
+    @Override
+    public String toString() {
+        return "StatsdReporter: {" + host + ":" + port + "}";
+    }
+}
@@ -0,0 +1,94 @@
+package halfpipe.metrics;
+
+import static org.springframework.util.ReflectionUtils.*;
+
+import com.yammer.metrics.annotation.Timed;
+import com.yammer.metrics.core.Clock;
+import com.yammer.metrics.core.Metric;
+import com.yammer.metrics.core.MetricName;
+import com.yammer.metrics.core.MetricsRegistry;
+import com.yammer.metrics.core.Timer;
+import halfpipe.configuration.TimerConfiguration;
+
+import java.lang.reflect.Method;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Creates timers of the type set in {@link TimerConfiguration}. Sampled timers are created in the parent registry,
+ * histogram timers are only registered in the {@link HalfpipeMetricsRegistry}.
+ */
+public class Timers {
+    private final HalfpipeMetricsRegistry registry;
+    private final TimerConfiguration config;
+
+    public Timers(HalfpipeMetricsRegistry registry, TimerConfiguration config) {
+        this.registry = registry;
+        this.config = config;
+    }
+
+    /**
+     * Like {@link MetricsRegistry#newTimer(MetricName, TimeUnit, TimeUnit)}, returns the timer already registered
+     * under the name or registers a new one of the configured type.
+     */
+    public DurationTimer newTimer(MetricName name, TimeUnit durationUnit, TimeUnit rateUnit) {
+        final Metric existing = registry.allMetrics().get(name);
+        if (existing != null) {
+            return forMetric(existing);
+        }
+        if (config.type.get() != TimerConfiguration.Type.HISTOGRAM) {
+            return sampled(registry.newTimer(name, durationUnit, rateUnit));
+        }
+        final LogLinearHistogram histogram = new LogLinearHistogram(config.precision.get(),
+                config.highestTrackable.get().toNanoseconds(), config.stripes.get(), config.interval.get());
+        final HistogramTimer timer = new HistogramTimer(registry.newScheduledThreadPool(2, "meter-tick"),
+                durationUnit, rateUnit, Clock.defaultClock(), histogram);
+        return forMetric(registry.register(name, (Metric) timer));
+    }
+
+    /**
+     * Creates timers for the {@code @Timed} methods of a bean, named as metrics-spring names them
+     *
+     * @return the timers by method name
+     */
+    public Map<String, DurationTimer> newTimed(final Class<?> targetClass, final String scope) {
+        final Map<String, DurationTimer> timers = new HashMap<String, DurationTimer>();
+        doWithMethods(targetClass, new MethodCallback() {
+            public void doWith(Method method) {
+                final Timed annotation = method.getAnnotation(Timed.class);
+                final MetricName name = new MetricName(MetricName.chooseGroup(annotation.group(), targetClass),
+                        MetricName.chooseType(annotation.type(), targetClass),
+                        MetricName.chooseName(annotation.name(), method), scope);
+                timers.put(method.getName(), newTimer(name, annotation.durationUnit(), annotation.rateUnit()));
+            }
+        }, new MethodFilter() {
+            public boolean matches(Method method) {
+                return method.isAnnotationPresent(Timed.class);
+            }
+        });
+        return timers;
+    }
+
+    /**
+     * @return a metrics-core timer as a {@link DurationTimer}
+     */
+    public static DurationTimer sampled(final Timer timer) {
+        return new DurationTimer() {
+            @Override
+            public void update(long duration, TimeUnit unit) {
+                timer.update(duration, unit);
+            }
+        };
+    }
+
+    private static DurationTimer forMetric(Metric metric) {
+        if (metric instanceof HistogramTimer) {
+            return (HistogramTimer) metric;
+        }
+        if (metric instanceof Timer) {
+            return sampled((Timer) metric);
+        }
+        throw new IllegalArgumentException("Not a timer: " + metric);
+    }
+}
@@ -0,0 +1,36 @@
+package halfpipe.mgmt.resources;
+
+import ch.qos.logback.classic.Level;
+import halfpipe.logging.LoggingUtils;
+import halfpipe.util.Duration;
+import org.springframework.stereotype.Component;
+
+import javax.ws.rs.*;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+
+/**
+ * Temporarily changes the level of a logger, e.g. POST /mgmt/log-level?logger=halfpipe.jersey&level=DEBUG&duration=10m.
+ * The logger goes back to its configured level once the duration is up.
+ */
+@Component
+@Path("/mgmt/log-level")
+public class LogLevelResource {
+
+    @POST
+    @Produces(MediaType.TEXT_PLAIN)
+    @Consumes(MediaType.WILDCARD)
+    public Response execute(@QueryParam("logger") String logger,
+                            @QueryParam("level") @DefaultValue("DEBUG") String level,
+                            @QueryParam("duration") @DefaultValue("10m") Duration duration) {
+        final Level parsed = Level.toLevel(level, null);
+        if (logger == null || parsed == null) {
+            return Response.status(Response.Status.BAD_REQUEST)
+                    .entity("logger and a valid level are required\n")
+                    .build();
+        }
+
+        LoggingUtils.setLevel(logger, parsed, duration);
+        return Response.ok(logger + " set to " + parsed + " for " + duration + "\n").build();
+    }
+}
@@ -1,25 +1,80 @@
 package halfpipe.mgmt.view;
 
-import com.yammer.metrics.reporting.MetricsServlet;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.yammer.metrics.core.MetricsRegistry;
+import halfpipe.configuration.Configuration;
+import halfpipe.metrics.MetricsJsonWriter;
+import halfpipe.metrics.MetricsQuery;
+import halfpipe.metrics.RenderCache;
 import org.springframework.stereotype.Controller;
 import org.springframework.web.bind.annotation.RequestMapping;
 
-import javax.servlet.ServletException;
+import javax.annotation.PostConstruct;
+import javax.inject.Inject;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.util.regex.PatternSyntaxException;
 
 /**
+ * Renders the registry as JSON, like {@link com.yammer.metrics.reporting.MetricsServlet} but streamed, filtered by
+ * {@link MetricsQuery} parameters and optionally cached for {@code metrics.cacheTime}. Takes {@code pretty} and
+ * {@code full-samples} as the servlet does.
+ *
  * User: spencergibb
  * Date: 9/21/12
  * Time: 6:48 PM
  */
 @Controller
-public class MetricsView extends MetricsServlet {
+public class MetricsView {
 
-    @RequestMapping("/mgmt/metrics")
-    public void get(HttpServletRequest req, HttpServletResponse res) throws IOException, ServletException {
-        doGet(req, res);
+    @Inject
+    MetricsRegistry registry;
+
+    @Inject
+    ObjectMapper objectMapper;
+
+    @Inject
+    Configuration config;
+
+    private MetricsJsonWriter writer;
+    private final RenderCache cache = new RenderCache();
+
+    @PostConstruct
+    public void init() {
+        writer = new MetricsJsonWriter(registry, objectMapper.getFactory());
     }
 
+    @RequestMapping("/mgmt/metrics")
+    public void get(HttpServletRequest req, HttpServletResponse res) throws IOException {
+        final MetricsQuery query;
+        try {
+            query = MetricsQuery.from(req);
+        } catch (PatternSyntaxException e) {
+            res.sendError(HttpServletResponse.SC_BAD_REQUEST, e.getMessage());
+            return;
+        }
+        final boolean pretty = Boolean.parseBoolean(req.getParameter("pretty"));
+        final boolean fullSamples = Boolean.parseBoolean(req.getParameter("full-samples"));
+
+        res.setContentType("application/json");
+        res.setHeader("Cache-Control", "must-revalidate,no-cache,no-store");
+        res.setStatus(HttpServletResponse.SC_OK);
+
+        final long cacheTime = config.metrics.cacheTime.get().toMilliseconds();
+        if (cacheTime <= 0) {
+            writer.write(res.getOutputStream(), query, pretty, fullSamples);
+            return;
+        }
+        final byte[] body = cache.get(query.key() + "|" + pretty + "|" + fullSamples, cacheTime,
+                new RenderCache.Renderer() {
+                    @Override
+                    public void render(OutputStream out) throws IOException {
+                        writer.write(out, query, pretty, fullSamples);
+                    }
+                });
+        res.setContentLength(body.length);
+        res.getOutputStream().write(body);
+    }
 }
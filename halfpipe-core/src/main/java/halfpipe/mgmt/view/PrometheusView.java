@@ -0,0 +1,68 @@
+package halfpipe.mgmt.view;
+
+import com.yammer.metrics.core.MetricsRegistry;
+import halfpipe.configuration.Configuration;
+import halfpipe.metrics.MetricsQuery;
+import halfpipe.metrics.PrometheusWriter;
+import halfpipe.metrics.RenderCache;
+import org.springframework.stereotype.Controller;
+import org.springframework.web.bind.annotation.RequestMapping;
+
+import javax.annotation.PostConstruct;
+import javax.inject.Inject;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * Renders the registry in the Prometheus text format, streamed, filtered by the {@code prefix} and {@code regex}
+ * parameters of {@link MetricsQuery} and optionally cached for {@code metrics.cacheTime}.
+ */
+@Controller
+public class PrometheusView {
+
+    @Inject
+    MetricsRegistry registry;
+
+    @Inject
+    Configuration config;
+
+    private PrometheusWriter writer;
+    private final RenderCache cache = new RenderCache();
+
+    @PostConstruct
+    public void init() {
+        writer = new PrometheusWriter(registry);
+    }
+
+    @RequestMapping("/mgmt/prometheus")
+    public void get(HttpServletRequest req, HttpServletResponse res) throws IOException {
+        final MetricsQuery query;
+        try {
+            query = MetricsQuery.from(req);
+        } catch (PatternSyntaxException e) {
+            res.sendError(HttpServletResponse.SC_BAD_REQUEST, e.getMessage());
+            return;
+        }
+
+        res.setContentType(PrometheusWriter.CONTENT_TYPE);
+        res.setHeader("Cache-Control", "must-revalidate,no-cache,no-store");
+        res.setStatus(HttpServletResponse.SC_OK);
+
+        final long cacheTime = config.metrics.cacheTime.get().toMilliseconds();
+        if (cacheTime <= 0) {
+            writer.write(res.getOutputStream(), query);
+            return;
+        }
+        final byte[] body = cache.get(query.key(), cacheTime, new RenderCache.Renderer() {
+            @Override
+            public void render(OutputStream out) throws IOException {
+                writer.write(out, query);
+            }
+        });
+        res.setContentLength(body.length);
+        res.getOutputStream().write(body);
+    }
+}
@@ -0,0 +1,150 @@
+package halfpipe.cli;
+
+import static org.hamcrest.MatcherAssert.*;
+import static org.hamcrest.Matchers.*;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.CharStreams;
+import com.netflix.config.DynamicPropertyFactory;
+import com.yammer.metrics.core.MetricsRegistry;
+import halfpipe.configuration.Configuration;
+import halfpipe.configuration.ConfigurationBuilder;
+import halfpipe.configuration.convert.StringToTimeZoneConverter;
+import org.apache.commons.configuration.AbstractConfiguration;
+import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.handler.AbstractHandler;
+import org.eclipse.jetty.util.thread.QueuedThreadPool;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.core.convert.support.DefaultConversionService;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.ConnectException;
+import java.net.HttpURLConnection;
+import java.net.ServerSocket;
+import java.net.URL;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Starts jetty on an ephemeral port and changes the http configuration under it
+ */
+public class HalfpipeServerTest {
+    private static final String[] PROPERTIES = {"http.port", "http.threadPool.minThreads",
+            "http.threadPool.maxThreads", "http.connector.drainTimeout"};
+
+    private AbstractConfiguration properties;
+    private MetricsRegistry registry;
+    private HalfpipeServer halfpipeServer;
+    private Server server;
+
+    @Before
+    public void setUp() throws Exception {
+        DynamicPropertyFactory.getInstance();
+        properties = (AbstractConfiguration) DynamicPropertyFactory.getBackingConfigurationSource();
+        properties.setProperty("http.port", 0);
+        properties.setProperty("http.threadPool.minThreads", 2);
+        properties.setProperty("http.threadPool.maxThreads", 8);
+        properties.setProperty("http.connector.drainTimeout", "1s");
+
+        final DefaultConversionService conversionService = new DefaultConversionService();
+        conversionService.addConverter(new StringToTimeZoneConverter());
+        final Configuration config = new Configuration();
+        new ConfigurationBuilder(conversionService).build(config);
+
+        registry = new MetricsRegistry();
+        halfpipeServer = new HalfpipeServer();
+        halfpipeServer.config = config;
+        halfpipeServer.metricsRegistry = registry;
+        server = halfpipeServer.start(new AbstractHandler() {
+            @Override
+            public void handle(String target, Request baseRequest, HttpServletRequest request,
+                               HttpServletResponse response) throws IOException {
+                response.setStatus(HttpServletResponse.SC_OK);
+                response.getWriter().print("ok");
+                baseRequest.setHandled(true);
+            }
+        });
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        server.stop();
+        for (String property : PROPERTIES) {
+            properties.clearProperty(property);
+        }
+        registry.shutdown();
+    }
+
+    @Test
+    public void resizesTheThreadPool() throws Exception {
+        final QueuedThreadPool threadPool = (QueuedThreadPool) server.getThreadPool();
+        assertThat(threadPool.getMinThreads(), is(2));
+        assertThat(threadPool.getMaxThreads(), is(8));
+
+        properties.setProperty("http.threadPool.maxThreads", 16);
+        properties.setProperty("http.threadPool.minThreads", 4);
+        halfpipeServer.reconfigure();
+        assertThat(threadPool.getMinThreads(), is(4));
+        assertThat(threadPool.getMaxThreads(), is(16));
+
+        // min above max is ignored
+        properties.setProperty("http.threadPool.minThreads", 32);
+        halfpipeServer.reconfigure();
+        assertThat(threadPool.getMinThreads(), is(4));
+        assertThat(threadPool.getMaxThreads(), is(16));
+
+        assertThat(get(server.getConnectors()[0].getLocalPort()), is("ok"));
+    }
+
+    @Test
+    public void movesToANewPortAndDrainsTheOldOne() throws Exception {
+        final int oldPort = server.getConnectors()[0].getLocalPort();
+        assertThat(get(oldPort), is("ok"));
+
+        final int newPort = freePort();
+        properties.setProperty("http.port", newPort);
+        halfpipeServer.reconfigure();
+        assertThat(get(newPort), is("ok"));
+
+        final long deadline = System.currentTimeMillis() + 10000;
+        while (server.getConnectors().length > 1 && System.currentTimeMillis() < deadline) {
+            TimeUnit.MILLISECONDS.sleep(50);
+        }
+        assertThat(server.getConnectors().length, is(1));
+        assertThat(server.getConnectors()[0].getLocalPort(), is(newPort));
+        try {
+            get(oldPort);
+            throw new AssertionError("port " + oldPort + " still accepts connections");
+        } catch (ConnectException expected) {
+        }
+    }
+
+    private static int freePort() throws IOException {
+        final ServerSocket socket = new ServerSocket(0);
+        try {
+            return socket.getLocalPort();
+        } finally {
+            socket.close();
+        }
+    }
+
+    private static String get(int port) throws IOException {
+        final HttpURLConnection connection = (HttpURLConnection) new URL("http://localhost:" + port + "/")
+                .openConnection();
+        // don't keep a connection open on the connector being drained
+        connection.setRequestProperty("Connection", "close");
+        connection.setConnectTimeout(5000);
+        connection.setReadTimeout(5000);
+        final InputStreamReader in = new InputStreamReader(connection.getInputStream(), Charsets.UTF_8);
+        try {
+            return CharStreams.toString(in);
+        } finally {
+            in.close();
+        }
+    }
+}
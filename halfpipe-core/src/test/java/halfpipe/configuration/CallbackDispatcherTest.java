@@ -0,0 +1,57 @@
+package halfpipe.configuration;
+
+import static org.hamcrest.MatcherAssert.*;
+import static org.hamcrest.Matchers.*;
+
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Checks how property callbacks are dispatched
+ */
+public class CallbackDispatcherTest {
+
+    @Test
+    public void asyncRunsOffThread() throws Exception {
+        final CountDownLatch ran = new CountDownLatch(1);
+        final Thread caller = Thread.currentThread();
+        final Runnable callback = CallbackDispatcher.dispatch(new Runnable() {
+            public void run() {
+                if (Thread.currentThread() != caller) {
+                    ran.countDown();
+                }
+            }
+        }, PropertyCallback.Dispatch.ASYNC, "async");
+
+        callback.run();
+        assertThat("callback didn't run on another thread", ran.await(5, TimeUnit.SECONDS), is(true));
+    }
+
+    @Test
+    public void coalescedRunsOncePerPoll() throws Exception {
+        final AtomicInteger runs = new AtomicInteger();
+        final CountDownLatch ran = new CountDownLatch(1);
+        final Runnable callback = CallbackDispatcher.dispatch(new Runnable() {
+            public void run() {
+                runs.incrementAndGet();
+                ran.countDown();
+            }
+        }, PropertyCallback.Dispatch.COALESCED, "coalesced");
+
+        PollBatch.begin();
+        try {
+            callback.run();
+            callback.run();
+            callback.run();
+            assertThat("callback ran before the poll was applied", runs.get(), is(0));
+        } finally {
+            PollBatch.end();
+        }
+        assertThat("callback didn't run", ran.await(5, TimeUnit.SECONDS), is(true));
+        Thread.sleep(50);
+        assertThat("callback ran more than once", runs.get(), is(1));
+    }
+}
@@ -14,6 +14,8 @@ import halfpipe.context.MetricsContext;
 import halfpipe.util.Duration;
 import halfpipe.util.Size;
 
+import java.util.concurrent.atomic.AtomicInteger;
+
 /**
  * User: spencergibb
  * Date: 10/4/12
@@ -33,6 +35,9 @@ public class ConfigurationBuilderTest {
         testProperties.addProperty("http.port", 80);
         testProperties.addProperty("http.gzip.enabled", true);
 
+        testProperties.addProperty("levels.c", "DEBUG");
+        testProperties.addProperty("levels.d.e", "INFO");
+
         testProperties.addProperty("longProp", 1);
         testProperties.addProperty("floatProp", 1.0);
         testProperties.addProperty("doubleProp", 1.0);
@@ -83,6 +88,42 @@ public class ConfigurationBuilderTest {
         assertProp("config.defaultDuration", config.defaultDuration);
         assertProp("config.defaultDuration", config.defaultDuration, Duration.minutes(2));
 
+        assertProp("config.levels", config.levels);
+        assertThat("config.levels is bad", config.levels.get(), allOf(hasEntry("a.b", Level.WARN),
+                hasEntry("c", Level.DEBUG), hasEntry("d.e", Level.INFO)));
+        assertThat("config.levels is bad", config.levels.get().size(), is(3));
+
+        // converted values follow changes, keeping the last good value when a change can't be converted
+        testProperties.setProperty("duration", "2s");
+        assertProp("config.duration", config.duration, Duration.seconds(2));
+        testProperties.setProperty("duration", "not a duration");
+        assertProp("config.duration", config.duration, Duration.seconds(2));
+        testProperties.setProperty("levels.c", "ERROR");
+        assertThat("config.levels is bad", config.levels.get("c"), is(Level.ERROR));
+
+        // snapshots change as a whole, once
+        ConfigurationSnapshotPublisher publisher = new ConfigurationSnapshotPublisher(config);
+        final AtomicInteger published = new AtomicInteger();
+        publisher.addCallback(new Runnable() {
+            public void run() {
+                published.incrementAndGet();
+            }
+        });
+        ConfigurationSnapshot snapshot = publisher.get();
+        assertThat("snapshot is bad", snapshot.get(config.http.port), is(80));
+        assertThat("snapshot is bad", snapshot.get(config.levels).get("c"), is(Level.ERROR));
+        testProperties.setProperty("http.port", 8080);
+        testProperties.setProperty("size", "2B");
+        assertThat("snapshot changed", snapshot.get(config.http.port), is(80));
+        assertThat("snapshot changed", publisher.get(), is(sameInstance(snapshot)));
+        ConfigurationSnapshot next = publisher.publish();
+        assertThat("snapshot not published", publisher.get(), is(sameInstance(next)));
+        assertThat("snapshot version is bad", next.getVersion(), is(snapshot.getVersion() + 1));
+        assertThat("snapshot is bad", next.get(config.http.port), is(8080));
+        assertThat("snapshot is bad", next.get(config.size), is(Size.bytes(2)));
+        assertThat("unchanged snapshot published", publisher.publish(), is(sameInstance(next)));
+        assertThat("snapshot callbacks are bad", published.get(), is(1));
+
         if (config.appConfigClass != MetricsContext.class) {
             throw new Exception();
         }
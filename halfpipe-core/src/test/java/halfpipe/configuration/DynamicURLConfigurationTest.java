@@ -0,0 +1,128 @@
+package halfpipe.configuration;
+
+import static org.hamcrest.MatcherAssert.*;
+import static org.hamcrest.Matchers.*;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.Files;
+import com.netflix.config.DynamicPropertyFactory;
+import halfpipe.configuration.convert.StringToTimeZoneConverter;
+import org.apache.commons.configuration.AbstractConfiguration;
+import org.apache.commons.configuration.event.ConfigurationEvent;
+import org.apache.commons.configuration.event.ConfigurationListener;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.core.convert.support.DefaultConversionService;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Drives real polls of a config file through {@link DynamicURLConfiguration#addPollCallback(Runnable)} and checks a
+ * changed file publishes a single {@link ConfigurationSnapshot}
+ */
+public class DynamicURLConfigurationTest {
+    private AbstractConfiguration properties;
+    private File file;
+    private DynamicURLConfiguration urlConfig;
+
+    @Before
+    public void setUp() throws IOException {
+        DynamicPropertyFactory.getInstance();
+        properties = (AbstractConfiguration) DynamicPropertyFactory.getBackingConfigurationSource();
+        file = File.createTempFile("halfpipe", ".properties");
+        write("http.port=8081\n");
+    }
+
+    @After
+    public void tearDown() {
+        if (urlConfig != null) {
+            urlConfig.stopLoading();
+        }
+        properties.clearProperty("http.port");
+        properties.clearProperty("http.uriEncoding");
+        file.delete();
+    }
+
+    @Test
+    public void fixedDelayPollPublishesOnce() throws Exception {
+        urlConfig = new DynamicURLConfiguration(100, 100, false, file.toURI().toString());
+        pollPublishesOnce();
+    }
+
+    @Test
+    public void fileWatchPollPublishesOnce() throws Exception {
+        urlConfig = new DynamicURLConfiguration(file.toURI().toString());
+        pollPublishesOnce();
+    }
+
+    private void pollPublishesOnce() throws Exception {
+        assertThat("initial poll not applied", urlConfig.getString("http.port"), is("8081"));
+        mirror(urlConfig, properties);
+
+        final DefaultConversionService conversionService = new DefaultConversionService();
+        conversionService.addConverter(new StringToTimeZoneConverter());
+        final Configuration config = new Configuration();
+        new ConfigurationBuilder(conversionService).build(config);
+        final ConfigurationSnapshotPublisher publisher = new ConfigurationSnapshotPublisher(config, urlConfig);
+        final ConfigurationSnapshot snapshot = publisher.get();
+        assertThat("snapshot is bad", snapshot.get(config.http.port), is(8081));
+
+        final AtomicInteger published = new AtomicInteger();
+        final CountDownLatch publishedLatch = new CountDownLatch(1);
+        publisher.addCallback(new Runnable() {
+            public void run() {
+                published.incrementAndGet();
+                publishedLatch.countDown();
+            }
+        });
+
+        write("http.port=8082\nhttp.uriEncoding=UTF-8\n");
+        assertThat("poll not published", publishedLatch.await(5, TimeUnit.SECONDS), is(true));
+        // later polls of the unchanged file publish nothing
+        TimeUnit.MILLISECONDS.sleep(500);
+
+        assertThat("snapshot callbacks are bad", published.get(), is(1));
+        final ConfigurationSnapshot next = publisher.get();
+        assertThat("snapshot version is bad", next.getVersion(), is(snapshot.getVersion() + 1));
+        assertThat("snapshot is bad", next.get(config.http.port), is(8082));
+        assertThat("snapshot is bad", next.get(config.http.uriEncoding), is("UTF-8"));
+    }
+
+    private void write(String contents) throws IOException {
+        Files.write(contents, file, Charsets.UTF_8);
+    }
+
+    /**
+     * Copies the polled properties into the backing source the {@link DynamicPropertyFactory} was initialized with,
+     * which may have been set up by another test
+     */
+    private static void mirror(AbstractConfiguration from, final AbstractConfiguration to) {
+        for (Iterator<String> keys = from.getKeys(); keys.hasNext(); ) {
+            final String key = keys.next();
+            to.setProperty(key, from.getProperty(key));
+        }
+        from.addConfigurationListener(new ConfigurationListener() {
+            @Override
+            public void configurationChanged(ConfigurationEvent event) {
+                if (event.isBeforeUpdate()) {
+                    return;
+                }
+                switch (event.getType()) {
+                    case AbstractConfiguration.EVENT_ADD_PROPERTY:
+                    case AbstractConfiguration.EVENT_SET_PROPERTY:
+                        to.setProperty(event.getPropertyName(), event.getPropertyValue());
+                        break;
+                    case AbstractConfiguration.EVENT_CLEAR_PROPERTY:
+                        to.clearProperty(event.getPropertyName());
+                        break;
+                }
+            }
+        });
+    }
+}
@@ -44,6 +44,9 @@ public class TestConfiguration extends Configuration {
 
     DynamicProp<Duration> duration;
 
+    @DefaultValue("a.b=WARN, c=ERROR")
+    DynamicPropMap<Level> levels;
+
     DynamicLongProperty longProp;
 
     DynamicFloatProperty floatProp;
@@ -0,0 +1,87 @@
+package halfpipe.configuration.json;
+
+import static org.hamcrest.MatcherAssert.*;
+import static org.hamcrest.Matchers.*;
+
+import org.junit.Test;
+
+import java.io.StringReader;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Checks JSONFlattener produces the same properties as JSONConfiguration
+ */
+public class JSONFlattenerTest {
+
+    public static final String MORE_JSON = "{"+
+            "     \"real\"      : -1.50e3,"+
+            "     \"escaped\"   : \"tab\\there \\\"quoted\\\" \\u00e9 \\/\","+
+            "     \"dotted.name\" : { \"a.b\" : 1 },"+
+            "     \"deep\"      : { \"a\" : { \"b\" : { \"c\" : [ \"x\", null, [ 1, 2 ] ] } }, \"d\" : false },"+
+            "     \"empty\"     : { },"+
+            "     \"twice\"     : 1,"+
+            "     \"twice\"     : 2,"+
+            "     \"twice\"     : 3"+
+            "}";
+
+    @Test
+    public void sameAsJSONConfiguration() throws Exception {
+        assertSameAsJSONConfiguration(JSONParserTest.JSON.replace(",     \"nested\"  : [ { \"foo0\" : \"bar0\" }, { \"foo1\" : \"bar1\" } ]", ""));
+        assertSameAsJSONConfiguration(MORE_JSON);
+    }
+
+    @Test
+    public void flattensValues() throws Exception {
+        Map<String, Object> props = JSONFlattener.flatten(new StringReader(MORE_JSON));
+
+        assertThat(props.get("real"), is((Object) new BigDecimal("-1.50e3")));
+        assertThat(props.get("escaped"), is((Object) "tab\there \"quoted\" \u00e9 /"));
+        assertThat(props.get("dotted..name.a..b"), is((Object) BigInteger.ONE));
+        assertThat(props.get("deep.a.b.c"), is((Object) Arrays.asList("x", null, Arrays.asList(BigInteger.ONE, BigInteger.valueOf(2)))));
+        assertThat(props.get("deep.d"), is((Object) Boolean.FALSE));
+        assertThat(props.get("twice"), is((Object) Arrays.asList(BigInteger.ONE, BigInteger.valueOf(2), BigInteger.valueOf(3))));
+        assertThat(props.containsKey("empty"), is(false));
+    }
+
+    @Test
+    public void objectsWithinArraysAreMaps() throws Exception {
+        Map<String, Object> props = JSONFlattener.flatten(new StringReader(JSONParserTest.JSON));
+
+        Map<String, Object> foo0 = new LinkedHashMap<String, Object>();
+        foo0.put("foo0", "bar0");
+        Map<String, Object> foo1 = new LinkedHashMap<String, Object>();
+        foo1.put("foo1", "bar1");
+        assertThat(props.get("nested"), is((Object) Arrays.asList(foo0, foo1)));
+    }
+
+    @Test(expected = org.apache.commons.configuration.ConfigurationException.class)
+    public void mustBeAnObject() throws Exception {
+        JSONFlattener.flatten(new StringReader("[ 1, 2 ]"));
+    }
+
+    private void assertSameAsJSONConfiguration(String json) throws Exception {
+        JSONConfiguration config = new JSONConfiguration();
+        config.load(new StringReader(json));
+        Map<String, Object> expected = new LinkedHashMap<String, Object>();
+        for (Iterator<String> keys = config.getKeys(); keys.hasNext(); ) {
+            String key = keys.next();
+            expected.put(key, config.getProperty(key));
+        }
+
+        Map<String, Object> props = JSONFlattener.flatten(new StringReader(json));
+
+        assertThat("keys differ", props.keySet(), is(expected.keySet()));
+        for (Map.Entry<String, Object> entry : expected.entrySet()) {
+            assertThat(entry.getKey() + " differs", props.get(entry.getKey()), is(entry.getValue()));
+        }
+        // in the same order
+        assertThat(new ArrayList<String>(props.keySet()), is((List<String>) new ArrayList<String>(expected.keySet())));
+    }
+}
@@ -0,0 +1,181 @@
+package halfpipe.configuration.yaml;
+
+import static org.hamcrest.MatcherAssert.*;
+import static org.hamcrest.Matchers.*;
+
+import org.apache.commons.configuration.ConfigurationException;
+import org.junit.Test;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Checks YamlFlattener produces the same properties as YamlConfiguration
+ */
+public class YamlFlattenerTest {
+
+    public static final String MORE_YAML =
+                    "real: -1.5e+3\n"+
+                    "quoted: '123'\n"+
+                    "tagged: !!str true\n"+
+                    "dotted.name:\n"+
+                    "  a.b: 1\n"+
+                    "deep:\n"+
+                    "  a: { b: { c: [ x, ~, true ] } }\n"+
+                    "  d: false\n"+
+                    "empty: {}\n"+
+                    "none:\n"+
+                    "twice: 1\n"+
+                    "twice: 2\n"+
+                    "twice: 3\n";
+
+    public static final String ANCHORS =
+                    "defaults: &defaults\n"+
+                    "  host: localhost\n"+
+                    "  port: &port 8080\n"+
+                    "  paths: &paths [ /a, /b ]\n"+
+                    "dev: *defaults\n"+
+                    "admin:\n"+
+                    "  port: *port\n"+
+                    "  paths: *paths\n"+
+                    "prod:\n"+
+                    "  host: example.com\n"+
+                    "  <<: *defaults\n"+
+                    "  port: 80\n";
+
+    @Test
+    public void sameAsYamlConfiguration() throws Exception {
+        assertSameAsYamlConfiguration(YamlConfigurationTest.YAML.substring(0, YamlConfigurationTest.YAML.indexOf("stack:")));
+        assertSameAsYamlConfiguration(MORE_YAML);
+    }
+
+    @Test
+    public void flattensValues() throws Exception {
+        Map<String, Object> props = YamlFlattener.flatten(new StringReader(YamlConfigurationTest.YAML));
+
+        assertThat(props.get("number"), is((Object) 123456L));
+        assertThat(props.get("boolean"), is((Object) Boolean.TRUE));
+        assertThat(props.get("date"), is((Object) "2001-11-23 15:03:17 -5"));
+        assertThat(props.get("fatal.type"), is((Object) "mytype"));
+        assertThat(props.get("fatal.child.grandchild"), is((Object) "mygrandchild"));
+        assertThat(props.get("array"), is((Object) Arrays.asList(1L, 2L)));
+
+        props = YamlFlattener.flatten(new StringReader(MORE_YAML));
+        assertThat(props.get("real"), is((Object) (-1500d)));
+        assertThat(props.get("quoted"), is((Object) "123"));
+        assertThat(props.get("tagged"), is((Object) "true"));
+        assertThat(props.get("dotted..name.a..b"), is((Object) 1L));
+        assertThat(props.get("deep.a.b.c"), is((Object) Arrays.asList("x", null, true)));
+        assertThat(props.get("twice"), is((Object) Arrays.asList(1L, 2L, 3L)));
+        assertThat(props.containsKey("empty"), is(false));
+        assertThat(props.containsKey("none"), is(false));
+    }
+
+    @Test
+    public void mappingsWithinSequencesAreMaps() throws Exception {
+        Map<String, Object> props = YamlFlattener.flatten(new StringReader(YamlConfigurationTest.YAML));
+
+        Map<String, Object> top = new LinkedHashMap<String, Object>();
+        top.put("file", "TopClass.py");
+        top.put("line", 23L);
+        top.put("code", "x = MoreObject('345')");
+        Map<String, Object> more = new LinkedHashMap<String, Object>();
+        more.put("file", "MoreClass.py");
+        more.put("line", 58L);
+        more.put("code", "foo = bar:");
+        assertThat(props.get("stack"), is((Object) Arrays.asList(top, more)));
+    }
+
+    @Test
+    public void expandsAliases() throws Exception {
+        Map<String, Object> props = YamlFlattener.flatten(new StringReader(ANCHORS));
+
+        assertThat(props.get("dev.host"), is((Object) "localhost"));
+        assertThat(props.get("dev.port"), is((Object) 8080L));
+        assertThat(props.get("dev.paths"), is((Object) Arrays.asList("/a", "/b")));
+        assertThat(props.get("admin.port"), is((Object) 8080L));
+        assertThat(props.get("admin.paths"), is((Object) Arrays.asList("/a", "/b")));
+        // explicit entries win over merged ones, wherever they are
+        assertThat(props.get("prod.host"), is((Object) "example.com"));
+        assertThat(props.get("prod.port"), is((Object) 80L));
+        assertThat(props.get("prod.paths"), is((Object) Arrays.asList("/a", "/b")));
+    }
+
+    @Test
+    public void mergesShallowly() throws Exception {
+        Map<String, Object> props = YamlFlattener.flatten(new StringReader(
+                "base: &base\n"+
+                "  port: 8080\n"+
+                "  db: { host: localhost, pool: 10 }\n"+
+                "other: &other\n"+
+                "  port: 9090\n"+
+                "  timeout: ~\n"+
+                "  retries: 3\n"+
+                "app:\n"+
+                "  <<: [ *other, *base ]\n"+
+                "  db: { host: example.com }\n"+
+                "  retries: ~\n"+
+                "  port: ~\n"));
+
+        // a nested mapping replaces the merged one whole
+        assertThat(props.get("app.db.host"), is((Object) "example.com"));
+        assertThat(props.containsKey("app.db.pool"), is(false));
+        // explicit nulls aren't merged over
+        assertThat(props.containsKey("app.port"), is(false));
+        assertThat(props.containsKey("app.retries"), is(false));
+        // nor are nulls of earlier merged mappings
+        assertThat(props.containsKey("app.timeout"), is(false));
+
+        props = YamlFlattener.flatten(new StringReader(
+                "base: &base { port: 8080, db: { host: localhost, pool: 10 } }\n"+
+                "other: &other { port: ~, db: { host: other } }\n"+
+                "app: { <<: [ *other, *base ] }\n"));
+        assertThat(props.containsKey("app.port"), is(false));
+        assertThat(props.get("app.db.host"), is((Object) "other"));
+        assertThat(props.containsKey("app.db.pool"), is(false));
+    }
+
+    @Test
+    public void laterDocumentsOverride() throws Exception {
+        Map<String, Object> props = YamlFlattener.flatten(new StringReader(
+                "a: 1\nb: { c: 2 }\n---\n---\nb: { c: 3 }\nd: 4\n"));
+
+        assertThat(props.get("a"), is((Object) 1L));
+        assertThat(props.get("b.c"), is((Object) 3L));
+        assertThat(props.get("d"), is((Object) 4L));
+    }
+
+    @Test(expected = ConfigurationException.class)
+    public void undefinedAlias() throws Exception {
+        YamlFlattener.flatten(new StringReader("a: *nope\n"));
+    }
+
+    @Test(expected = ConfigurationException.class)
+    public void mustBeAMapping() throws Exception {
+        YamlFlattener.flatten(new StringReader("- 1\n- 2\n"));
+    }
+
+    private void assertSameAsYamlConfiguration(String yaml) throws Exception {
+        YamlConfiguration config = new YamlConfiguration(false);
+        config.load(new StringReader(yaml));
+        Map<String, Object> expected = new LinkedHashMap<String, Object>();
+        for (Iterator<String> keys = config.getKeys(); keys.hasNext(); ) {
+            String key = keys.next();
+            expected.put(key, config.getProperty(key));
+        }
+
+        Map<String, Object> props = YamlFlattener.flatten(new StringReader(yaml));
+
+        assertThat("keys differ", props.keySet(), is(expected.keySet()));
+        for (Map.Entry<String, Object> entry : expected.entrySet()) {
+            assertThat(entry.getKey() + " differs", props.get(entry.getKey()), is(entry.getValue()));
+        }
+        // in the same order
+        assertThat(new ArrayList<String>(props.keySet()), is((List<String>) new ArrayList<String>(expected.keySet())));
+    }
+}
@@ -0,0 +1,55 @@
+package halfpipe.context;
+
+import static org.hamcrest.MatcherAssert.*;
+import static org.hamcrest.Matchers.*;
+
+import com.netflix.config.DynamicPropertyFactory;
+import halfpipe.metrics.MetricsReporters;
+import halfpipe.metrics.Timers;
+import org.junit.Test;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Import;
+import org.springframework.context.annotation.Scope;
+
+/**
+ * Builds a root and a view context importing {@link MetricsContext}, as an app does, and counts what they create
+ */
+public class MetricsContextTest {
+
+    @Test
+    public void oneReportersPerApp() {
+        DynamicPropertyFactory.getInstance();
+        final AnnotationConfigApplicationContext root = new AnnotationConfigApplicationContext(RootContext.class);
+        final AnnotationConfigApplicationContext view = new AnnotationConfigApplicationContext();
+        try {
+            view.setParent(root);
+            view.register(ViewContext.class);
+            view.refresh();
+
+            assertThat(root.getBeansOfType(MetricsReporters.class).size(), is(1));
+            assertThat(view.getBeansOfType(MetricsReporters.class).size(), is(0));
+            assertThat(view.getBean(MetricsReporters.class), sameInstance(root.getBean(MetricsReporters.class)));
+            assertThat(view.getBeansOfType(Timers.class).size(), is(1));
+        } finally {
+            view.close();
+            root.close();
+        }
+    }
+
+    @Configuration
+    @Import({DefaultContext.class, MetricsContext.class})
+    static class RootContext {
+
+        @Bean @Scope("singleton")
+        public halfpipe.configuration.Configuration config() {
+            return new halfpipe.configuration.Configuration();
+        }
+    }
+
+    @Configuration
+    @Import(MetricsContext.class)
+    static class ViewContext {
+    }
+}
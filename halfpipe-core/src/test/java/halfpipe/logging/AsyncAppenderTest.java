@@ -0,0 +1,159 @@
+package halfpipe.logging;
+
+import static org.hamcrest.MatcherAssert.*;
+import static org.hamcrest.Matchers.*;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.classic.spi.LoggingEvent;
+import ch.qos.logback.core.AppenderBase;
+import com.google.common.util.concurrent.Uninterruptibles;
+import com.yammer.metrics.core.Counter;
+import com.yammer.metrics.core.MetricName;
+import com.yammer.metrics.core.MetricsRegistry;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Fills the buffer behind a delegate that holds the dispatcher until released, for each overflow policy
+ */
+public class AsyncAppenderTest {
+    private final LoggerContext context = new LoggerContext();
+    private final Logger logger = context.getLogger("test");
+    private final MetricsRegistry registry = new MetricsRegistry();
+    private HoldingAppender delegate;
+
+    @Before
+    public void setUp() {
+        delegate = new HoldingAppender();
+        delegate.setContext(context);
+        delegate.setName("holding");
+        delegate.start();
+    }
+
+    @After
+    public void tearDown() {
+        delegate.release.countDown();
+        registry.shutdown();
+    }
+
+    @Test
+    public void blockWaitsForRoom() throws Exception {
+        final AsyncAppender async = start(8, AsyncAppender.OverflowPolicy.BLOCK);
+        final Counter dropped = dropped();
+        fill(async, 8);
+        final Thread blocked = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                async.doAppend(event(Level.INFO, "blocked"));
+            }
+        });
+        blocked.start();
+        blocked.join(200);
+        assertThat("append didn't block", blocked.isAlive(), is(true));
+
+        delegate.release.countDown();
+        blocked.join(5000);
+        assertThat("append still blocked", blocked.isAlive(), is(false));
+        async.stop();
+        assertThat(delegate.events.size(), is(10));
+        assertThat(delegate.events.get(9).getMessage(), is("blocked"));
+        assertThat(dropped.count(), is(0L));
+    }
+
+    @Test
+    public void dropDropsWhatDoesNotFit() {
+        final AsyncAppender async = start(8, AsyncAppender.OverflowPolicy.DROP);
+        final Counter dropped = dropped();
+        fill(async, 8);
+        async.doAppend(event(Level.ERROR, "dropped"));
+        assertThat(dropped.count(), is(1L));
+
+        delegate.release.countDown();
+        async.stop();
+        assertThat(delegate.events.size(), is(9));
+        assertThat(dropped.count(), is(1L));
+    }
+
+    @Test
+    public void discardBelowWarnOnceAlmostFull() {
+        final AsyncAppender async = start(32, AsyncAppender.OverflowPolicy.DISCARD_BELOW_WARN);
+        final Counter dropped = dropped();
+        // past 80% full, fewer than 32 / 5 slots left
+        fill(async, 27);
+        assertThat(dropped.count(), is(0L));
+        async.doAppend(event(Level.INFO, "info"));
+        async.doAppend(event(Level.DEBUG, "debug"));
+        assertThat(dropped.count(), is(2L));
+        async.doAppend(event(Level.WARN, "warn"));
+        async.doAppend(event(Level.ERROR, "error"));
+        assertThat(async.size(), is(29L));
+
+        delegate.release.countDown();
+        async.stop();
+        assertThat(delegate.events.size(), is(30));
+        assertThat(delegate.events.get(29).getMessage(), is("error"));
+        assertThat(dropped.count(), is(2L));
+    }
+
+    @Test
+    public void stopDispatchesWhatIsBuffered() {
+        delegate.release.countDown();
+        final AsyncAppender async = start(128, AsyncAppender.OverflowPolicy.BLOCK);
+        for (int i = 0; i < 100; i++) {
+            async.doAppend(event(Level.INFO, "event" + i));
+        }
+        async.stop();
+        assertThat(delegate.events.size(), is(100));
+        for (int i = 0; i < 100; i++) {
+            assertThat(delegate.events.get(i).getMessage(), is("event" + i));
+        }
+        assertThat(delegate.isStarted(), is(false));
+    }
+
+    private AsyncAppender start(int capacity, AsyncAppender.OverflowPolicy policy) {
+        final AsyncAppender async = new AsyncAppender(delegate, capacity, policy, registry);
+        async.start();
+        return async;
+    }
+
+    /**
+     * Appends an event the dispatcher gets held on, then as many more as the buffer should hold
+     */
+    private void fill(AsyncAppender async, int buffered) {
+        async.doAppend(event(Level.INFO, "held"));
+        Uninterruptibles.awaitUninterruptibly(delegate.held);
+        for (int i = 0; i < buffered; i++) {
+            async.doAppend(event(Level.INFO, "buffered" + i));
+        }
+        assertThat(async.size(), is((long) buffered));
+    }
+
+    private Counter dropped() {
+        return (Counter) registry.allMetrics().get(new MetricName(AsyncAppender.class, "dropped", "holding"));
+    }
+
+    private LoggingEvent event(Level level, String message) {
+        return new LoggingEvent(Logger.class.getName(), logger, level, message, null, null);
+    }
+
+    private static class HoldingAppender extends AppenderBase<ILoggingEvent> {
+        final List<ILoggingEvent> events = new CopyOnWriteArrayList<ILoggingEvent>();
+        final CountDownLatch held = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+
+        @Override
+        protected void append(ILoggingEvent event) {
+            held.countDown();
+            Uninterruptibles.awaitUninterruptibly(release);
+            events.add(event);
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package halfpipe.logging;
+
+import static org.hamcrest.MatcherAssert.*;
+import static org.hamcrest.Matchers.*;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.PatternLayout;
+import ch.qos.logback.classic.spi.LoggingEvent;
+import com.google.common.base.Charsets;
+import com.google.common.base.Strings;
+import com.google.common.io.Files;
+import com.yammer.metrics.core.MetricsRegistry;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Writes to a file in a temporary directory, with a buffer small enough to overflow
+ */
+public class BufferedFileAppenderTest {
+    private static final int BUFFER_SIZE = 64;
+    // no rollover while the test runs
+    private static final long ROLLOVER_PERIOD = TimeUnit.DAYS.toMillis(365 * 100);
+
+    private final LoggerContext context = new LoggerContext();
+    private final Logger logger = context.getLogger("test");
+    private File dir;
+    private File file;
+    private BufferedFileAppender appender;
+
+    @Before
+    public void setUp() {
+        dir = Files.createTempDir();
+        file = new File(dir, "test.log");
+
+        final PatternLayout layout = new PatternLayout();
+        layout.setContext(context);
+        layout.setPattern("%msg%n");
+        layout.start();
+
+        appender = new BufferedFileAppender(file, layout, BUFFER_SIZE, 1024 * 1024, ROLLOVER_PERIOD, 2, false);
+        appender.setContext(context);
+        appender.setName("file");
+        appender.start();
+    }
+
+    @After
+    public void tearDown() {
+        appender.stop();
+        for (File child : dir.listFiles()) {
+            child.delete();
+        }
+        dir.delete();
+    }
+
+    @Test
+    public void writesOnlyWhenTheBufferFillsOrOnFlush() throws Exception {
+        appender.doAppend(event("short"));
+        assertThat(file.length(), is(0L));
+
+        final String longMessage = Strings.repeat("x", BUFFER_SIZE * 2);
+        appender.doAppend(event(longMessage));
+        assertThat(file.length(), is(greaterThan(0L)));
+        assertThat(file.length(), is(lessThan((long) ("short\n" + longMessage + "\n").length())));
+
+        appender.flush();
+        assertThat(Files.toString(file, Charsets.UTF_8), is("short\n" + longMessage + "\n"));
+    }
+
+    @Test
+    public void asyncDispatcherFlushesEachBatch() throws Exception {
+        final AsyncAppender async = new AsyncAppender(appender, 16, AsyncAppender.OverflowPolicy.BLOCK,
+                new MetricsRegistry());
+        async.start();
+        try {
+            async.doAppend(event("dispatched"));
+
+            final long deadline = System.currentTimeMillis() + 5000;
+            while (file.length() == 0 && System.currentTimeMillis() < deadline) {
+                TimeUnit.MILLISECONDS.sleep(10);
+            }
+            assertThat(Files.toString(file, Charsets.UTF_8), is("dispatched\n"));
+        } finally {
+            async.stop();
+        }
+    }
+
+    @Test
+    public void stoppingTheAsyncAppenderClosesTheFile() throws Exception {
+        final AsyncAppender async = new AsyncAppender(appender, 16, AsyncAppender.OverflowPolicy.BLOCK,
+                new MetricsRegistry());
+        async.start();
+        async.doAppend(event("last words"));
+        async.stop();
+
+        assertThat(appender.isStarted(), is(false));
+        assertThat(appender.isOpen(), is(false));
+        assertThat(Files.toString(file, Charsets.UTF_8), is("last words\n"));
+    }
+
+    private LoggingEvent event(String message) {
+        return new LoggingEvent(Logger.class.getName(), logger, Level.INFO, message, null, null);
+    }
+}
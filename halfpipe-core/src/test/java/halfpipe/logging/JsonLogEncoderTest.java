@@ -0,0 +1,107 @@
+package halfpipe.logging;
+
+import static org.hamcrest.MatcherAssert.*;
+import static org.hamcrest.Matchers.*;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.spi.LoggingEvent;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.base.Charsets;
+import org.junit.Before;
+import org.junit.Test;
+import org.slf4j.MDC;
+import org.slf4j.MarkerFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.util.TimeZone;
+
+/**
+ * Encodes events and parses them back with Jackson
+ */
+public class JsonLogEncoderTest {
+    // 2013-03-01T12:00:00.042Z
+    private static final long TIMESTAMP = 1362139200042L;
+
+    private final LoggerContext context = new LoggerContext();
+    private final Logger logger = context.getLogger("a.b.C");
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final ByteArrayOutputStream out = new ByteArrayOutputStream();
+    private JsonLogEncoder encoder;
+
+    @Before
+    public void setUp() throws Exception {
+        encoder = new JsonLogEncoder(TimeZone.getTimeZone("UTC"));
+        encoder.setContext(context);
+        encoder.init(out);
+        encoder.start();
+    }
+
+    @Test
+    public void encodesAPlainEvent() throws Exception {
+        encoder.doEncode(event("hello {}", null));
+
+        final String line = new String(out.toByteArray(), Charsets.UTF_8);
+        assertThat(line, endsWith("}\n"));
+        assertThat(line.indexOf('\n'), is(line.length() - 1));
+
+        final JsonNode json = mapper.readTree(line);
+        assertThat(json.get("timestamp").asText(), is("2013-03-01T12:00:00.042+0000"));
+        assertThat(json.get("level").asText(), is("INFO"));
+        assertThat(json.get("thread").asText(), is(Thread.currentThread().getName()));
+        assertThat(json.get("logger").asText(), is("a.b.C"));
+        assertThat(json.get("message").asText(), is("hello world"));
+        assertThat(json.has("marker"), is(false));
+        assertThat(json.has("mdc"), is(false));
+        assertThat(json.has("exception"), is(false));
+    }
+
+    @Test
+    public void encodesMdcMarkerAndThrowable() throws Exception {
+        final LoggingEvent event;
+        MDC.put("request", "r-1");
+        MDC.put("user", "\"quoted\"");
+        try {
+            event = event("line one\nline two \u00e9\u20ac\ud83d\ude00 {}",
+                    new IllegalStateException("bad \"state\""));
+            event.getMDCPropertyMap();
+        } finally {
+            MDC.clear();
+        }
+        event.setMarker(MarkerFactory.getMarker("AUDIT"));
+
+        encoder.doEncode(event);
+
+        final String line = new String(out.toByteArray(), Charsets.UTF_8);
+        assertThat(line.indexOf('\n'), is(line.length() - 1));
+
+        final JsonNode json = mapper.readTree(line);
+        assertThat(json.get("message").asText(), is("line one\nline two \u00e9\u20ac\ud83d\ude00 world"));
+        assertThat(json.get("marker").asText(), is("AUDIT"));
+        assertThat(json.get("mdc").get("request").asText(), is("r-1"));
+        assertThat(json.get("mdc").get("user").asText(), is("\"quoted\""));
+        assertThat(json.get("exception").asText(),
+                startsWith("! java.lang.IllegalStateException: bad \"state\""));
+        assertThat(json.get("exception").asText(), containsString("! at halfpipe.logging.JsonLogEncoderTest"));
+    }
+
+    @Test
+    public void writesOneLinePerEvent() throws Exception {
+        encoder.doEncode(event("first {}", null));
+        encoder.doEncode(event("second {}", null));
+
+        final String[] lines = new String(out.toByteArray(), Charsets.UTF_8).split("\n");
+        assertThat(lines.length, is(2));
+        assertThat(mapper.readTree(lines[0]).get("message").asText(), is("first world"));
+        assertThat(mapper.readTree(lines[1]).get("message").asText(), is("second world"));
+    }
+
+    private LoggingEvent event(String message, Throwable t) {
+        final LoggingEvent event = new LoggingEvent(Logger.class.getName(), logger, Level.INFO, message, t,
+                new Object[]{"world"});
+        event.setTimeStamp(TIMESTAMP);
+        return event;
+    }
+}
@@ -0,0 +1,91 @@
+package halfpipe.logging;
+
+import static org.hamcrest.MatcherAssert.*;
+import static org.hamcrest.Matchers.*;
+
+import com.google.common.base.Strings;
+import org.junit.Test;
+import org.slf4j.helpers.MessageFormatter;
+
+/**
+ * Checks the placeholder handling against SLF4J's {@link MessageFormatter}
+ */
+public class MessageBuilderTest {
+
+    @Test
+    public void substitutesPlaceholdersInOrder() {
+        assertThat(MessageBuilder.format("a {} b {}", "1", "2"), is("a 1 b 2"));
+        assertThat(MessageBuilder.format("{}{}{}{}", 1, 2, 3, 4), is("1234"));
+        assertThat(MessageBuilder.format("{} {} {}", new Object[]{"x", "y", "z"}), is("x y z"));
+    }
+
+    @Test
+    public void leavesMissingArgumentsAndIgnoresSurplusOnes() {
+        assertThat(MessageBuilder.format("{} and {}", "one"), is("one and {}"));
+        assertThat(MessageBuilder.format("only {}", "one", "two"), is("only one"));
+        assertThat(MessageBuilder.format("plain", "one"), is("plain"));
+        assertThat(MessageBuilder.format("plain {}", (Object[]) null), is("plain {}"));
+    }
+
+    @Test
+    public void handlesEscapedPlaceholders() {
+        assertThat(MessageBuilder.format("\\{} {}", "x"), is("{} x"));
+        assertThat(MessageBuilder.format("C:\\\\{}", "x"), is("C:\\x"));
+    }
+
+    @Test
+    public void appendsPrimitivesWithoutBoxing() {
+        final String message = MessageBuilder.start("{} {} {} {} {}")
+                .arg(1).arg(2L).arg(1.5d).arg(2.5f).arg('c')
+                .build();
+        assertThat(message, is("1 2 1.5 2.5 c"));
+    }
+
+    @Test
+    public void printsNullsAndArrays() {
+        assertThat(MessageBuilder.format("{}", (Object) null), is("null"));
+        assertThat(MessageBuilder.format("{}", new int[]{1, 2}), is("[1, 2]"));
+        assertThat(MessageBuilder.format("{}", new double[]{0.5}), is("[0.5]"));
+        assertThat(MessageBuilder.start("{}").arg((Object) new Object[]{"a", new String[]{"b"}}).build(),
+                is("[a, [b]]"));
+    }
+
+    @Test
+    public void survivesAFailingToString() {
+        final Object broken = new Object() {
+            @Override
+            public String toString() {
+                throw new IllegalStateException("broken");
+            }
+        };
+        assertThat(MessageBuilder.format("value {}", broken), is("value [FAILED toString()]"));
+    }
+
+    @Test
+    public void formatsMessagesFromWithinAnArgumentsToString() {
+        final Object reentrant = new Object() {
+            @Override
+            public String toString() {
+                return MessageBuilder.format("inner {}", 1);
+            }
+        };
+        assertThat(MessageBuilder.format("outer {} {}", reentrant, 2), is("outer inner 1 2"));
+    }
+
+    @Test
+    public void reusesTheBuilderAfterAHugeMessage() {
+        final String huge = Strings.repeat("x", 10000);
+        assertThat(MessageBuilder.format("{}", huge), is(huge));
+        assertThat(MessageBuilder.format("small {}", 1), is("small 1"));
+    }
+
+    @Test
+    public void matchesSlf4j() {
+        final String[] patterns = {"{}", "a {} b {} c", "\\{}{}", "C:\\\\{}", "{} {} {} {}", "no placeholders", "{"};
+        final Object[] args = {"x", 42, null, new long[]{1, 2}};
+        for (String pattern : patterns) {
+            assertThat(pattern, MessageBuilder.format(pattern, args),
+                    is(MessageFormatter.arrayFormat(pattern, args).getMessage()));
+        }
+    }
+}
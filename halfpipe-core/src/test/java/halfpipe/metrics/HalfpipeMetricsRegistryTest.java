@@ -0,0 +1,107 @@
+package halfpipe.metrics;
+
+import static org.hamcrest.MatcherAssert.*;
+import static org.hamcrest.Matchers.*;
+
+import com.netflix.config.DynamicPropertyFactory;
+import com.yammer.metrics.core.Clock;
+import com.yammer.metrics.core.Counter;
+import com.yammer.metrics.core.MetricName;
+import com.yammer.metrics.core.MetricsRegistry;
+import com.yammer.metrics.core.Timer;
+import halfpipe.configuration.Configuration;
+import halfpipe.configuration.ConfigurationBuilder;
+import halfpipe.configuration.convert.StringToTimeZoneConverter;
+import org.apache.commons.configuration.AbstractConfiguration;
+import org.junit.After;
+import org.junit.Test;
+import org.springframework.core.convert.support.DefaultConversionService;
+
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Checks that {@link HalfpipeMetricsRegistry} follows its parent and holds the histogram timers {@link Timers}
+ * creates
+ */
+public class HalfpipeMetricsRegistryTest {
+    private final MetricsRegistry parent = new MetricsRegistry();
+
+    @After
+    public void tearDown() {
+        parent.shutdown();
+    }
+
+    @Test
+    public void followsParent() {
+        final MetricName before = new MetricName("g", "T", "before");
+        final MetricName after = new MetricName("g", "T", "after");
+        parent.newCounter(before).inc();
+        final HalfpipeMetricsRegistry registry = new HalfpipeMetricsRegistry(parent);
+        final Counter counter = parent.newCounter(after);
+
+        assertThat(registry.allMetrics().get(before), sameInstance(parent.allMetrics().get(before)));
+        assertThat(registry.allMetrics().get(after), sameInstance((Object) counter));
+
+        parent.removeMetric(before);
+        assertThat(registry.allMetrics().containsKey(before), is(false));
+    }
+
+    @Test
+    public void createsInParent() {
+        final HalfpipeMetricsRegistry registry = new HalfpipeMetricsRegistry(parent);
+        final MetricName name = new MetricName("g", "T", "timer");
+        final Timer timer = registry.newTimer(name, TimeUnit.MILLISECONDS, TimeUnit.SECONDS);
+
+        assertThat(parent.allMetrics().get(name), sameInstance((Object) timer));
+        assertThat(registry.allMetrics().get(name), sameInstance((Object) timer));
+
+        registry.removeMetric(name);
+        assertThat(parent.allMetrics().containsKey(name), is(false));
+        assertThat(registry.allMetrics().containsKey(name), is(false));
+    }
+
+    @Test
+    public void registerKeepsFirstTimer() {
+        final HalfpipeMetricsRegistry registry = new HalfpipeMetricsRegistry(parent);
+        final MetricName name = new MetricName("g", "T", "histogram");
+        final ScheduledExecutorService tickThread = registry.newScheduledThreadPool(1, "test-tick");
+        final HistogramTimer first = new HistogramTimer(tickThread, TimeUnit.MILLISECONDS, TimeUnit.SECONDS,
+                Clock.defaultClock(), new LogLinearHistogram(2, 1000000, 1, false));
+        final HistogramTimer second = new HistogramTimer(tickThread, TimeUnit.MILLISECONDS, TimeUnit.SECONDS,
+                Clock.defaultClock(), new LogLinearHistogram(2, 1000000, 1, false));
+
+        assertThat(registry.register(name, first), sameInstance(first));
+        assertThat(registry.register(name, second), sameInstance(first));
+        assertThat(parent.allMetrics().containsKey(name), is(false));
+    }
+
+    @Test
+    public void timersOfConfiguredType() {
+        DynamicPropertyFactory.getInstance();
+        final AbstractConfiguration properties =
+                (AbstractConfiguration) DynamicPropertyFactory.getBackingConfigurationSource();
+        properties.setProperty("metrics.timers.type", "HISTOGRAM");
+        try {
+            final DefaultConversionService conversionService = new DefaultConversionService();
+            conversionService.addConverter(new StringToTimeZoneConverter());
+            final Configuration config = new Configuration();
+            new ConfigurationBuilder(conversionService).build(config);
+            final HalfpipeMetricsRegistry registry = new HalfpipeMetricsRegistry(parent);
+            final Timers timers = new Timers(registry, config.metrics.timers);
+            final MetricName histogram = new MetricName("g", "T", "histogram");
+
+            final DurationTimer timer = timers.newTimer(histogram, TimeUnit.MILLISECONDS, TimeUnit.SECONDS);
+            assertThat(timer, is(instanceOf(HistogramTimer.class)));
+            assertThat(timers.newTimer(histogram, TimeUnit.MILLISECONDS, TimeUnit.SECONDS), sameInstance(timer));
+            assertThat(registry.allMetrics().get(histogram), sameInstance((Object) timer));
+
+            properties.setProperty("metrics.timers.type", "SAMPLED");
+            final MetricName sampled = new MetricName("g", "T", "sampled");
+            timers.newTimer(sampled, TimeUnit.MILLISECONDS, TimeUnit.SECONDS).update(1, TimeUnit.MILLISECONDS);
+            assertThat(((Timer) parent.allMetrics().get(sampled)).count(), is(1L));
+        } finally {
+            properties.clearProperty("metrics.timers.type");
+        }
+    }
+}
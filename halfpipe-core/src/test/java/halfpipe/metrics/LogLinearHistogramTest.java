@@ -0,0 +1,115 @@
+package halfpipe.metrics;
+
+import static org.hamcrest.MatcherAssert.*;
+import static org.hamcrest.Matchers.*;
+
+import com.yammer.metrics.core.Clock;
+import com.yammer.metrics.core.MetricName;
+import com.yammer.metrics.core.MetricsRegistry;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Checks the precision and bookkeeping of the log-linear histogram behind {@link HistogramTimer}
+ */
+public class LogLinearHistogramTest {
+
+    @Test
+    public void quantilesWithinPrecision() {
+        LogLinearHistogram histogram = new LogLinearHistogram(2, TimeUnit.HOURS.toNanos(1), 4, false);
+        Random random = new Random(42);
+        long[] values = new long[100000];
+        for (int i = 0; i < values.length; i++) {
+            // log-normal-ish latencies from about 10us to a few seconds
+            values[i] = (long) Math.exp(random.nextGaussian() * 2 + 14);
+            histogram.update(values[i]);
+        }
+        Arrays.sort(values);
+
+        HistogramSnapshot snapshot = histogram.snapshot();
+        assertThat(snapshot.getCount(), is((long) values.length));
+        assertThat(snapshot.getMin(), is(values[0]));
+        assertThat(snapshot.getMax(), is(values[values.length - 1]));
+        for (double q : new double[]{0.5, 0.75, 0.95, 0.99, 0.999}) {
+            double exact = values[(int) Math.ceil(q * values.length) - 1];
+            assertThat("quantile " + q, snapshot.getValue(q), closeTo(exact, exact / 100));
+        }
+        assertThat(snapshot.getValue(1.0), is((double) values[values.length - 1]));
+    }
+
+    @Test
+    public void intervalResetsOnSnapshot() {
+        LogLinearHistogram histogram = new LogLinearHistogram(2, 1000000, 1, true);
+        histogram.update(10);
+        histogram.update(20);
+        assertThat(histogram.snapshot().getCount(), is(2L));
+
+        histogram.update(30);
+        HistogramSnapshot snapshot = histogram.snapshot();
+        assertThat(snapshot.getCount(), is(1L));
+        assertThat(snapshot.getMin(), is(30L));
+        assertThat(snapshot.getSum(), is(30L));
+        assertThat(histogram.snapshot().getCount(), is(0L));
+    }
+
+    @Test
+    public void valuesAboveHighestTrackableKeepExactMax() {
+        LogLinearHistogram histogram = new LogLinearHistogram(1, 1000, 1, false);
+        histogram.update(5000);
+        HistogramSnapshot snapshot = histogram.snapshot();
+        assertThat(snapshot.getMax(), is(5000L));
+        assertThat(snapshot.getValue(0.5), lessThanOrEqualTo(5000.0));
+        assertThat(snapshot.getCountAtOrBelow(1000), is(1L));
+    }
+
+    @Test
+    public void concurrentUpdatesAllCounted() throws Exception {
+        final LogLinearHistogram histogram = new LogLinearHistogram(2, 1000000, 4, false);
+        final int threads = 8;
+        final int perThread = 50000;
+        final CountDownLatch done = new CountDownLatch(threads);
+        for (int t = 0; t < threads; t++) {
+            new Thread() {
+                public void run() {
+                    for (int i = 0; i < perThread; i++) {
+                        histogram.update(i % 1000);
+                    }
+                    done.countDown();
+                }
+            }.start();
+        }
+        done.await(30, TimeUnit.SECONDS);
+        HistogramSnapshot snapshot = histogram.snapshot();
+        assertThat(snapshot.getCount(), is((long) threads * perThread));
+        assertThat(snapshot.getMax(), is(999L));
+    }
+
+    @Test
+    public void timerReportsInDurationUnit() {
+        MetricsRegistry parent = new MetricsRegistry();
+        HalfpipeMetricsRegistry registry = new HalfpipeMetricsRegistry(parent);
+        try {
+            HistogramTimer timer = new HistogramTimer(registry.newScheduledThreadPool(1, "test-tick"),
+                    TimeUnit.MILLISECONDS, TimeUnit.SECONDS, Clock.defaultClock(),
+                    new LogLinearHistogram(2, TimeUnit.MINUTES.toNanos(1), 1, false));
+            HistogramTimer registered = registry.register(new MetricName("test", "timer", "latency"), timer);
+            assertThat(registered, sameInstance(timer));
+
+            timer.update(5, TimeUnit.MILLISECONDS);
+            timer.update(15, TimeUnit.MILLISECONDS);
+            timer.update(-1, TimeUnit.MILLISECONDS);
+            assertThat(timer.count(), is(2L));
+            assertThat(timer.max(), is(15.0));
+            assertThat(timer.mean(), is(10.0));
+            assertThat(timer.getSnapshot().getValue(1.0), is(15.0));
+            assertThat(registry.allMetrics().get(new MetricName("test", "timer", "latency")), sameInstance((Object) timer));
+            assertThat(parent.allMetrics().containsKey(new MetricName("test", "timer", "latency")), is(false));
+        } finally {
+            parent.shutdown();
+        }
+    }
+}
@@ -0,0 +1,119 @@
+package halfpipe.metrics;
+
+import static org.hamcrest.MatcherAssert.*;
+import static org.hamcrest.Matchers.*;
+
+import com.google.common.base.Function;
+import com.google.common.collect.Lists;
+import com.yammer.metrics.core.Metric;
+import com.yammer.metrics.core.MetricName;
+import com.yammer.metrics.core.MetricsRegistry;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+
+/**
+ * Checks that {@link MetricsIndex} keeps the order of {@link MetricsRegistry#groupedMetrics()} as metrics come and go
+ */
+public class MetricsIndexTest {
+    private static final Function<MetricName, String> NAMES = new Function<MetricName, String>() {
+        @Override
+        public String apply(MetricName name) {
+            return name.getName().toUpperCase();
+        }
+    };
+
+    private MetricsRegistry registry;
+
+    @Before
+    public void setUp() {
+        registry = new MetricsRegistry();
+        registry.newCounter(new MetricName("com.example", "Foo", "b"));
+        registry.newCounter(new MetricName("com.example", "Foo", "a"));
+        registry.newCounter(new MetricName("com.example", "Foo", "a", "scoped"));
+        registry.newCounter(new MetricName("com.example", "Bar", "c"));
+    }
+
+    @After
+    public void tearDown() {
+        registry.shutdown();
+    }
+
+    @Test
+    public void sameOrderAsGroupedMetrics() {
+        final MetricsIndex<String> index = new MetricsIndex<String>(registry, NAMES);
+        registry.newCounter(new MetricName("com.example", "Bar", "a"));
+        registry.newCounter(new MetricName("org.example", "Baz", "a"));
+
+        assertThat(names(index), is(grouped()));
+    }
+
+    @Test
+    public void followsRemovals() {
+        final MetricsIndex<String> index = new MetricsIndex<String>(registry, NAMES);
+        registry.removeMetric(new MetricName("com.example", "Foo", "b"));
+
+        assertThat(names(index), is(grouped()));
+        assertThat(names(index).contains(new MetricName("com.example", "Foo", "b")), is(false));
+    }
+
+    @Test
+    public void derivesNamesOnce() {
+        final MetricsIndex<String> index = new MetricsIndex<String>(registry, NAMES);
+        for (MetricsIndex.Entry<String> entry : index.entries()) {
+            assertThat(entry.getNames(), is(entry.getName().getName().toUpperCase()));
+            assertThat(entry.getGroup(), is(MetricsIndex.group(entry.getName())));
+            assertThat(entry.getMetric(), sameInstance(registry.allMetrics().get(entry.getName())));
+        }
+        assertThat(MetricsIndex.group(new MetricName("com.example", "Foo", "a", "scoped")),
+                is("com.example.Foo.scoped"));
+    }
+
+    @Test
+    public void ordersByDerivedNamesFirst() {
+        final MetricsIndex<String> index = new MetricsIndex<String>(registry, NAMES, new Comparator<String>() {
+            @Override
+            public int compare(String a, String b) {
+                return a.compareTo(b);
+            }
+        });
+
+        assertThat(names(index), is((List<MetricName>) Lists.newArrayList(
+                new MetricName("com.example", "Foo", "a"),
+                new MetricName("com.example", "Foo", "a", "scoped"),
+                new MetricName("com.example", "Foo", "b"),
+                new MetricName("com.example", "Bar", "c"))));
+    }
+
+    @Test
+    public void closeStopsFollowing() {
+        final MetricsIndex<String> index = new MetricsIndex<String>(registry, NAMES);
+        index.close();
+        registry.newCounter(new MetricName("com.example", "Foo", "d"));
+
+        assertThat(names(index).contains(new MetricName("com.example", "Foo", "d")), is(false));
+    }
+
+    private static List<MetricName> names(MetricsIndex<String> index) {
+        final List<MetricName> names = Lists.newArrayList();
+        for (MetricsIndex.Entry<String> entry : index.entries()) {
+            names.add(entry.getName());
+        }
+        return names;
+    }
+
+    private List<MetricName> grouped() {
+        final List<MetricName> names = Lists.newArrayList();
+        for (SortedMap<MetricName, Metric> group : registry.groupedMetrics().values()) {
+            for (Map.Entry<MetricName, Metric> metric : group.entrySet()) {
+                names.add(metric.getKey());
+            }
+        }
+        return names;
+    }
+}
@@ -0,0 +1,174 @@
+package halfpipe.metrics;
+
+import static org.hamcrest.MatcherAssert.*;
+import static org.hamcrest.Matchers.*;
+import static org.mockito.Mockito.*;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.yammer.metrics.core.Clock;
+import com.yammer.metrics.core.Gauge;
+import com.yammer.metrics.core.Histogram;
+import com.yammer.metrics.core.MetricName;
+import com.yammer.metrics.core.MetricsRegistry;
+import com.yammer.metrics.core.Timer;
+import com.yammer.metrics.core.VirtualMachineMetrics;
+import com.yammer.metrics.reporting.MetricsServlet;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.servlet.ServletOutputStream;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.ByteArrayOutputStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the JSON written for each kind of metric with what {@link MetricsServlet} rendered before, and checks the
+ * query filters
+ */
+public class MetricsJsonWriterTest {
+    private static final long NOW = 1381000000000L;
+
+    private final ManualClock clock = new ManualClock();
+    private final ObjectMapper mapper = new ObjectMapper();
+    private MetricsRegistry registry;
+    private MetricsJsonWriter writer;
+
+    @Before
+    public void setUp() {
+        registry = new MetricsRegistry(clock);
+        registry.newCounter(new MetricName("com.example", "Foo", "hits")).inc(3);
+        registry.newMeter(new MetricName("com.example", "Foo", "calls"), "calls", TimeUnit.SECONDS).mark(5);
+        registry.newGauge(new MetricName("com.example", "Foo", "size"), new Gauge<Integer>() {
+            @Override
+            public Integer value() {
+                return 42;
+            }
+        });
+        final Histogram histogram = registry.newHistogram(new MetricName("com.example", "Bar", "sizes"), false);
+        for (int i = 1; i <= 10; i++) {
+            histogram.update(i);
+        }
+        final Timer timer = registry.newTimer(new MetricName("com.example", "Bar", "get", "read"),
+                TimeUnit.MILLISECONDS, TimeUnit.SECONDS);
+        timer.update(10, TimeUnit.MILLISECONDS);
+        timer.update(30, TimeUnit.MILLISECONDS);
+        registry.newCounter(new MetricName("org.example", "Baz", "hits")).inc();
+        clock.now += 2000;
+
+        writer = new MetricsJsonWriter(registry, mapper.getFactory());
+    }
+
+    @After
+    public void tearDown() {
+        registry.shutdown();
+    }
+
+    @Test
+    public void sameAsMetricsServlet() throws Exception {
+        assertThat(write(new MetricsQuery("com.", null, null), false), is(servlet("com.", false)));
+    }
+
+    @Test
+    public void sameAsMetricsServletWithFullSamples() throws Exception {
+        assertThat(write(new MetricsQuery("com.", null, null), true), is(servlet("com.", true)));
+    }
+
+    @Test
+    public void writesJvmUnlessFiltered() throws Exception {
+        assertThat(write(new MetricsQuery(null, null, null), false).has("jvm"), is(true));
+        assertThat(write(new MetricsQuery("com.", null, null), false).has("jvm"), is(false));
+    }
+
+    @Test
+    public void filtersByPrefix() throws Exception {
+        final JsonNode json = write(new MetricsQuery("com.example.Bar", null, null), false);
+        assertThat(json.size(), is(2));
+        assertThat(json.has("com.example.Bar"), is(true));
+        assertThat(json.has("com.example.Bar.read"), is(true));
+    }
+
+    @Test
+    public void filtersByRegex() throws Exception {
+        final JsonNode json = write(new MetricsQuery(null, "\\.hits$", null), false);
+        assertThat(json.size(), is(2));
+        assertThat(json.get("com.example.Foo").size(), is(1));
+        assertThat(json.get("com.example.Foo").has("hits"), is(true));
+        assertThat(json.get("org.example.Baz").has("hits"), is(true));
+    }
+
+    @Test
+    public void filtersFields() throws Exception {
+        final JsonNode json = write(new MetricsQuery("com.", null, "count,p99,m1"), false);
+        final JsonNode timer = json.get("com.example.Bar.read").get("get");
+        assertThat(timer.get("type").asText(), is("timer"));
+        assertThat(timer.get("duration").size(), is(1));
+        assertThat(timer.get("duration").get("p99").asDouble(), is(30.0));
+        assertThat(timer.get("rate").size(), is(2));
+        assertThat(timer.get("rate").get("count").asLong(), is(2L));
+        assertThat(timer.get("rate").has("m1"), is(true));
+
+        final JsonNode meter = json.get("com.example.Foo").get("calls");
+        assertThat(meter.size(), is(3));
+        assertThat(meter.has("event_type"), is(false));
+        assertThat(json.get("com.example.Foo").get("size").size(), is(1));
+    }
+
+    @Test
+    public void writesHistogramTimersAsTimers() throws Exception {
+        final HalfpipeMetricsRegistry halfpipeRegistry = new HalfpipeMetricsRegistry(registry);
+        final HistogramTimer timer = new HistogramTimer(registry.newScheduledThreadPool(1, "test-tick"),
+                TimeUnit.MILLISECONDS, TimeUnit.SECONDS, clock, new LogLinearHistogram(2, 1000000000, 1, false));
+        halfpipeRegistry.register(new MetricName("com.example", "Bar", "put"), timer);
+        timer.update(20, TimeUnit.MILLISECONDS);
+        writer = new MetricsJsonWriter(halfpipeRegistry, mapper.getFactory());
+
+        final JsonNode json = write(new MetricsQuery("com.example.Bar", null, null), false).get("com.example.Bar");
+        assertThat(json.get("sizes").get("type").asText(), is("histogram"));
+        assertThat(json.get("put").get("type").asText(), is("timer"));
+        assertThat(json.get("put").get("duration").get("unit").asText(), is("milliseconds"));
+        assertThat(json.get("put").get("duration").get("max").asDouble(), is(20.0));
+        assertThat(json.get("put").get("rate").get("count").asLong(), is(1L));
+    }
+
+    private JsonNode write(MetricsQuery query, boolean fullSamples) throws Exception {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        writer.write(out, query, false, fullSamples);
+        return mapper.readTree(out.toByteArray());
+    }
+
+    private JsonNode servlet(String prefix, boolean fullSamples) throws Exception {
+        final MetricsServlet servlet = new MetricsServlet(clock, VirtualMachineMetrics.getInstance(), registry,
+                mapper.getFactory(), false);
+        final HttpServletRequest request = mock(HttpServletRequest.class);
+        when(request.getMethod()).thenReturn("GET");
+        when(request.getParameter("class")).thenReturn(prefix);
+        when(request.getParameter("full-samples")).thenReturn(String.valueOf(fullSamples));
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final HttpServletResponse response = mock(HttpServletResponse.class);
+        when(response.getOutputStream()).thenReturn(new ServletOutputStream() {
+            @Override
+            public void write(int b) {
+                out.write(b);
+            }
+        });
+        servlet.service(request, response);
+        return mapper.readTree(out.toByteArray());
+    }
+
+    private static class ManualClock extends Clock {
+        long now = NOW;
+
+        @Override
+        public long tick() {
+            return TimeUnit.MILLISECONDS.toNanos(now);
+        }
+
+        @Override
+        public long time() {
+            return now;
+        }
+    }
+}
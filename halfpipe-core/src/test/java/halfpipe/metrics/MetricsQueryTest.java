@@ -0,0 +1,92 @@
+package halfpipe.metrics;
+
+import static org.hamcrest.MatcherAssert.*;
+import static org.hamcrest.Matchers.*;
+import static org.mockito.Mockito.*;
+
+import org.junit.Test;
+
+import javax.servlet.http.HttpServletRequest;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * Checks each filter of {@link MetricsQuery} and the keys it caches renderings under
+ */
+public class MetricsQueryTest {
+
+    @Test
+    public void matchesEverythingByDefault() {
+        final MetricsQuery query = new MetricsQuery(null, "", "");
+        assertThat(query.matches("jvm"), is(true));
+        assertThat(query.matches("com.example.Foo.hits"), is(true));
+        assertThat(query.wants("p99"), is(true));
+        assertThat(query.allFields(), is(true));
+    }
+
+    @Test
+    public void filtersByPrefix() {
+        final MetricsQuery query = new MetricsQuery("com.example.Foo", null, null);
+        assertThat(query.matches("com.example.Foo.hits"), is(true));
+        assertThat(query.matches("com.example.Foo.scoped.hits"), is(true));
+        assertThat(query.matches("com.example.Bar.hits"), is(false));
+        assertThat(query.matches("jvm"), is(false));
+    }
+
+    @Test
+    public void filtersByRegex() {
+        final MetricsQuery query = new MetricsQuery(null, "Foo\\.(hits|misses)$", null);
+        assertThat(query.matches("com.example.Foo.hits"), is(true));
+        assertThat(query.matches("com.example.Foo.misses"), is(true));
+        assertThat(query.matches("com.example.Foo.hits.rate"), is(false));
+        assertThat(query.matches("com.example.Bar.hits"), is(false));
+    }
+
+    @Test
+    public void prefixAndRegexBothApply() {
+        final MetricsQuery query = new MetricsQuery("com.", "hits", null);
+        assertThat(query.matches("com.example.Foo.hits"), is(true));
+        assertThat(query.matches("org.example.Foo.hits"), is(false));
+        assertThat(query.matches("com.example.Foo.misses"), is(false));
+    }
+
+    @Test
+    public void filtersFields() {
+        final MetricsQuery query = new MetricsQuery(null, null, " count, p99,,m1 ");
+        assertThat(query.allFields(), is(false));
+        assertThat(query.wants("count"), is(true));
+        assertThat(query.wants("p99"), is(true));
+        assertThat(query.wants("m1"), is(true));
+        assertThat(query.wants("mean"), is(false));
+        assertThat(query.matches("com.example.Foo.hits"), is(true));
+    }
+
+    @Test
+    public void sameKeyForSameQuery() {
+        assertThat(new MetricsQuery("com.", "a", "m1,count").key(), is(new MetricsQuery("com.", "a", "count,m1").key()));
+        assertThat(new MetricsQuery("", null, null).key(), is(new MetricsQuery(null, null, null).key()));
+        assertThat(new MetricsQuery("com.", null, null).key(), is(not(new MetricsQuery(null, "com.", null).key())));
+    }
+
+    @Test
+    public void fromRequestParameters() {
+        final HttpServletRequest request = mock(HttpServletRequest.class);
+        when(request.getParameter("class")).thenReturn("org.");
+        when(request.getParameter("fields")).thenReturn("count");
+        MetricsQuery query = MetricsQuery.from(request);
+        assertThat(query.matches("org.example.Foo.hits"), is(true));
+        assertThat(query.matches("com.example.Foo.hits"), is(false));
+        assertThat(query.wants("mean"), is(false));
+
+        when(request.getParameter("prefix")).thenReturn("com.");
+        query = MetricsQuery.from(request);
+        assertThat(query.matches("com.example.Foo.hits"), is(true));
+        assertThat(query.matches("org.example.Foo.hits"), is(false));
+    }
+
+    @Test(expected = PatternSyntaxException.class)
+    public void invalidRegex() {
+        final HttpServletRequest request = mock(HttpServletRequest.class);
+        when(request.getParameter("regex")).thenReturn("(");
+        MetricsQuery.from(request);
+    }
+}
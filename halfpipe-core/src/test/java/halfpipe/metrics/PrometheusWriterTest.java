@@ -0,0 +1,111 @@
+package halfpipe.metrics;
+
+import static org.hamcrest.MatcherAssert.*;
+import static org.hamcrest.Matchers.*;
+
+import com.google.common.base.Charsets;
+import com.yammer.metrics.core.Gauge;
+import com.yammer.metrics.core.MetricName;
+import com.yammer.metrics.core.MetricsRegistry;
+import com.yammer.metrics.core.Timer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Checks names, grouping and values of the Prometheus text format
+ */
+public class PrometheusWriterTest {
+    private MetricsRegistry registry;
+    private PrometheusWriter writer;
+
+    @Before
+    public void setUp() {
+        registry = new MetricsRegistry();
+        writer = new PrometheusWriter(registry);
+    }
+
+    @After
+    public void tearDown() {
+        registry.shutdown();
+    }
+
+    @Test
+    public void sanitizesNamesAndLabels() {
+        assertThat(PrometheusWriter.sanitize("com.example-app.Foo_bar:baz"), is("com_example_app_Foo_bar:baz"));
+        assertThat(PrometheusWriter.sanitize("9lives"), is("_9lives"));
+        assertThat(PrometheusWriter.escape("a\"b\\c\nd"), is("a\\\"b\\\\c\\nd"));
+    }
+
+    @Test
+    public void keepsScopesOfOneNameTogether() throws IOException {
+        registry.newCounter(new MetricName("com.example", "Foo", "hits", "b")).inc(2);
+        registry.newCounter(new MetricName("com.example", "Foo", "misses")).inc();
+        registry.newCounter(new MetricName("com.example", "Foo", "hits")).inc(3);
+        registry.newCounter(new MetricName("com.example", "Foo", "hits", "a\"")).inc(1);
+
+        assertThat(write(null), is(
+                "# TYPE com_example_Foo_hits gauge\n" +
+                "com_example_Foo_hits 3\n" +
+                "com_example_Foo_hits{scope=\"a\\\"\"} 1\n" +
+                "com_example_Foo_hits{scope=\"b\"} 2\n" +
+                "# TYPE com_example_Foo_misses gauge\n" +
+                "com_example_Foo_misses 1\n"));
+    }
+
+    @Test
+    public void writesEachKind() throws IOException {
+        registry.newMeter(new MetricName("com.example", "Foo", "calls"), "calls", TimeUnit.SECONDS).mark(5);
+        registry.newGauge(new MetricName("com.example", "Foo", "up"), new Gauge<Boolean>() {
+            @Override
+            public Boolean value() {
+                return true;
+            }
+        });
+        registry.newGauge(new MetricName("com.example", "Foo", "label"), new Gauge<String>() {
+            @Override
+            public String value() {
+                return "not a number";
+            }
+        });
+        final Timer timer = registry.newTimer(new MetricName("com.example", "Foo", "get"), TimeUnit.MILLISECONDS,
+                TimeUnit.SECONDS);
+        timer.update(250, TimeUnit.MILLISECONDS);
+        timer.update(250, TimeUnit.MILLISECONDS);
+
+        final String text = write(null);
+        assertThat(text, containsString("# TYPE com_example_Foo_calls_total counter\ncom_example_Foo_calls_total 5\n"));
+        assertThat(text, containsString("# TYPE com_example_Foo_up gauge\ncom_example_Foo_up 1\n"));
+        assertThat(text, not(containsString("label")));
+        assertThat(text, containsString("# TYPE com_example_Foo_get_seconds summary\n"));
+        assertThat(text, containsString("com_example_Foo_get_seconds{quantile=\"0.99\"} 0.25\n"));
+        assertThat(text, containsString("com_example_Foo_get_seconds_sum 0.5\n"));
+        assertThat(text, containsString("com_example_Foo_get_seconds_count 2\n"));
+    }
+
+    @Test
+    public void skipsOtherKindsUnderAWrittenName() throws IOException {
+        registry.newCounter(new MetricName("com.example", "Foo", "x", "a")).inc();
+        registry.newHistogram(new MetricName("com.example", "Foo", "x", "b"), false).update(1);
+
+        assertThat(write(null), is("# TYPE com_example_Foo_x gauge\ncom_example_Foo_x{scope=\"a\"} 1\n"));
+    }
+
+    @Test
+    public void filtersByQuery() throws IOException {
+        registry.newCounter(new MetricName("com.example", "Foo", "hits")).inc();
+        registry.newCounter(new MetricName("org.example", "Bar", "hits")).inc();
+
+        assertThat(write("org."), is("# TYPE org_example_Bar_hits gauge\norg_example_Bar_hits 1\n"));
+    }
+
+    private String write(String prefix) throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        writer.write(out, new MetricsQuery(prefix, null, null));
+        return new String(out.toByteArray(), Charsets.UTF_8);
+    }
+}
@@ -0,0 +1,76 @@
+package halfpipe.metrics;
+
+import static org.hamcrest.MatcherAssert.*;
+import static org.hamcrest.Matchers.*;
+
+import com.google.common.base.Charsets;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Checks that {@link RenderCache} shares renderings until they expire
+ */
+public class RenderCacheTest {
+    private final RenderCache cache = new RenderCache();
+
+    @Test
+    public void sharesRenderingsOfOneKey() throws IOException {
+        final CountingRenderer renderer = new CountingRenderer();
+        assertThat(render("a", 60000, renderer), is("1"));
+        assertThat(render("a", 60000, renderer), is("1"));
+        assertThat(render("b", 60000, renderer), is("2"));
+        assertThat(render("a", 60000, renderer), is("1"));
+        assertThat(renderer.renderings.get(), is(2));
+    }
+
+    @Test
+    public void rendersAgainOnceExpired() throws Exception {
+        final CountingRenderer renderer = new CountingRenderer();
+        assertThat(render("a", 50, renderer), is("1"));
+        Thread.sleep(100);
+        assertThat(render("a", 50, renderer), is("2"));
+        assertThat(render("a", 50, renderer), is("2"));
+    }
+
+    @Test
+    public void rendersAgainWhenTheTtlChanges() throws IOException {
+        final CountingRenderer renderer = new CountingRenderer();
+        assertThat(render("a", 60000, renderer), is("1"));
+        assertThat(render("a", 30000, renderer), is("2"));
+        assertThat(render("a", 30000, renderer), is("2"));
+    }
+
+    @Test
+    public void propagatesRenderingErrors() throws IOException {
+        final IOException error = new IOException("test");
+        try {
+            cache.get("a", 60000, new RenderCache.Renderer() {
+                @Override
+                public void render(OutputStream out) throws IOException {
+                    throw error;
+                }
+            });
+            throw new AssertionError("expected " + error);
+        } catch (IOException e) {
+            assertThat(e, sameInstance(error));
+        }
+        // failures aren't cached
+        assertThat(render("a", 60000, new CountingRenderer()), is("1"));
+    }
+
+    private String render(String key, long ttl, RenderCache.Renderer renderer) throws IOException {
+        return new String(cache.get(key, ttl, renderer), Charsets.UTF_8);
+    }
+
+    private static class CountingRenderer implements RenderCache.Renderer {
+        final AtomicInteger renderings = new AtomicInteger();
+
+        @Override
+        public void render(OutputStream out) throws IOException {
+            out.write(String.valueOf(renderings.incrementAndGet()).getBytes(Charsets.UTF_8));
+        }
+    }
+}
@@ -0,0 +1,196 @@
+package halfpipe.metrics;
+
+import static org.hamcrest.MatcherAssert.*;
+import static org.hamcrest.Matchers.*;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.Lists;
+import com.google.common.io.Files;
+import com.yammer.metrics.core.Clock;
+import com.yammer.metrics.core.MetricName;
+import com.yammer.metrics.core.MetricsRegistry;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.InputStreamReader;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs the reporters against local stand-ins for Graphite and StatsD, and a temporary directory
+ */
+public class ReporterTest {
+    private static final long NOW = 1381000000000L;
+
+    private final ManualClock clock = new ManualClock();
+    private MetricsRegistry registry;
+
+    @Before
+    public void setUp() {
+        registry = new MetricsRegistry();
+        registry.newCounter(new MetricName("com.example", "Foo", "hits", "a b")).inc(3);
+        registry.newCounter(new MetricName("com.example", "Foo", "misses")).dec(2);
+        registry.newMeter(new MetricName("com.example", "Bar", "calls"), "calls", TimeUnit.SECONDS).mark();
+    }
+
+    @After
+    public void tearDown() {
+        registry.shutdown();
+    }
+
+    @Test
+    public void graphiteSendsLinesOverOneConnection() throws Exception {
+        final ServerSocket server = new ServerSocket(0);
+        final GraphiteReporter reporter = new GraphiteReporter(registry, "app", "Foo", null, clock, "localhost",
+                server.getLocalPort());
+        try {
+            reporter.report();
+            final Socket connection = server.accept();
+            final BufferedReader in = new BufferedReader(new InputStreamReader(connection.getInputStream(),
+                    Charsets.UTF_8));
+            assertThat(in.readLine(), is("app.com.example.Foo.misses.count -2 1381000000"));
+            assertThat(in.readLine(), is("app.com.example.Foo.a_b.hits.count 3 1381000000"));
+
+            clock.now += 60000;
+            reporter.report();
+            assertThat(in.readLine(), is("app.com.example.Foo.misses.count -2 1381000060"));
+            connection.close();
+        } finally {
+            reporter.close();
+            server.close();
+        }
+    }
+
+    @Test
+    public void closedReporterSendsNothing() throws Exception {
+        final ServerSocket server = new ServerSocket(0);
+        server.setSoTimeout(500);
+        final GraphiteReporter reporter = new GraphiteReporter(registry, "app", null, null, clock, "localhost",
+                server.getLocalPort());
+        try {
+            reporter.close();
+            reporter.report();
+            server.accept();
+            throw new AssertionError("a closed reporter connected");
+        } catch (SocketTimeoutException e) {
+            // nothing connected
+        } finally {
+            server.close();
+        }
+    }
+
+    @Test
+    public void graphiteCloseEndsBlockedReport() throws Exception {
+        // more than the socket buffers hold, so the report blocks writing to a server that never reads
+        for (int i = 0; i < 100000; i++) {
+            registry.newCounter(new MetricName("com.example", "Blocked", "counter" + i)).inc();
+        }
+        final ServerSocket server = new ServerSocket();
+        server.setReceiveBufferSize(4096);
+        server.bind(new InetSocketAddress("localhost", 0));
+        final GraphiteReporter reporter = new GraphiteReporter(registry, "app", null, null, clock, "localhost",
+                server.getLocalPort());
+        final Thread reporting = new Thread(reporter, "blocked-report");
+        try {
+            reporting.start();
+            final Socket connection = server.accept();
+            TimeUnit.MILLISECONDS.sleep(500);
+
+            final Thread closing = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    reporter.close();
+                }
+            }, "close");
+            closing.start();
+            closing.join(5000);
+            assertThat("close is blocked", closing.isAlive(), is(false));
+            reporting.join(5000);
+            assertThat("report is blocked", reporting.isAlive(), is(false));
+            connection.close();
+        } finally {
+            reporter.close();
+            server.close();
+        }
+    }
+
+    @Test
+    public void statsdPacksLinesIntoPackets() throws Exception {
+        final DatagramSocket server = new DatagramSocket(0);
+        server.setSoTimeout(5000);
+        final int maxPacketSize = 64;
+        final StatsdReporter reporter = new StatsdReporter(registry, null, null, "Bar", clock, "localhost",
+                server.getLocalPort(), maxPacketSize);
+        try {
+            reporter.report();
+            final List<String> lines = Lists.newArrayList();
+            while (lines.size() < 3) {
+                final DatagramPacket packet = new DatagramPacket(new byte[1024], 1024);
+                server.receive(packet);
+                assertThat(packet.getLength(), lessThanOrEqualTo(maxPacketSize));
+                lines.addAll(Arrays.asList(
+                        new String(packet.getData(), 0, packet.getLength(), Charsets.UTF_8).split("\n")));
+            }
+            assertThat(lines, is(Arrays.asList(
+                    "com.example.Foo.misses.count:0|g",
+                    "com.example.Foo.misses.count:-2|g",
+                    "com.example.Foo.a_b.hits.count:3|g")));
+        } finally {
+            reporter.close();
+            server.close();
+        }
+    }
+
+    @Test
+    public void csvRollsDailyAndKeepsHistory() throws Exception {
+        final File directory = Files.createTempDir();
+        final CsvReporter reporter = new CsvReporter(registry, null, "misses", null, clock, directory, 2);
+        try {
+            reporter.report();
+            reporter.report();
+            final File first = new File(directory, "metrics-2013-10-05.csv");
+            assertThat(Files.readLines(first, Charsets.UTF_8), is(Arrays.asList(
+                    "timestamp,metric,field,value",
+                    "1381000000,com.example.Foo.misses,count,-2",
+                    "1381000000,com.example.Foo.misses,count,-2")));
+
+            clock.now += TimeUnit.DAYS.toMillis(1);
+            reporter.report();
+            clock.now += TimeUnit.DAYS.toMillis(1);
+            reporter.report();
+            final String[] files = directory.list();
+            Arrays.sort(files);
+            assertThat(files, is(new String[] {"metrics-2013-10-06.csv", "metrics-2013-10-07.csv"}));
+        } finally {
+            reporter.close();
+            for (File file : directory.listFiles()) {
+                file.delete();
+            }
+            directory.delete();
+        }
+    }
+
+    private static class ManualClock extends Clock {
+        long now = NOW;
+
+        @Override
+        public long tick() {
+            return TimeUnit.MILLISECONDS.toNanos(now);
+        }
+
+        @Override
+        public long time() {
+            return now;
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package halfpipe.metrics;
+
+import static org.hamcrest.MatcherAssert.*;
+import static org.hamcrest.Matchers.*;
+
+import com.yammer.metrics.core.MetricName;
+import com.yammer.metrics.core.MetricsRegistry;
+import com.yammer.metrics.core.Timer;
+import halfpipe.metrics.RequestTiming.Phase;
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Checks the phase bookkeeping of {@link RequestTiming}
+ */
+public class RequestTimingTest {
+    private final MetricsRegistry registry = new MetricsRegistry();
+
+    @After
+    public void tearDown() {
+        final RequestTiming timing = RequestTiming.current();
+        if (timing != null) {
+            timing.end();
+        }
+        registry.shutdown();
+    }
+
+    @Test
+    public void recordsOnlyPhasesGoneThrough() {
+        final Timer[] timers = new Timer[Phase.values().length];
+        final DurationTimer[] durationTimers = new DurationTimer[timers.length];
+        for (Phase phase : Phase.values()) {
+            timers[phase.ordinal()] = registry.newTimer(new MetricName("g", "T", "m", phase.getLabel()),
+                    TimeUnit.MILLISECONDS, TimeUnit.SECONDS);
+            durationTimers[phase.ordinal()] = Timers.sampled(timers[phase.ordinal()]);
+        }
+        final RequestTiming timing = RequestTiming.start(false);
+        assertThat(RequestTiming.start(false), is(nullValue()));
+        assertThat(RequestTiming.current(), is(sameInstance(timing)));
+
+        timing.mark(Phase.FILTERS);
+        timing.mark(Phase.ROUTING);
+        timing.mark(Phase.RESOURCE);
+        timing.setTimers(durationTimers);
+        timing.end();
+
+        assertThat(RequestTiming.current(), is(nullValue()));
+        assertThat(timers[Phase.FILTERS.ordinal()].count(), is(1L));
+        assertThat(timers[Phase.RESOURCE.ordinal()].count(), is(1L));
+        assertThat(timers[Phase.READ.ordinal()].count(), is(0L));
+        assertThat(timers[Phase.WRITE.ordinal()].count(), is(0L));
+    }
+
+    @Test
+    public void serverTimingInMilliseconds() {
+        final RequestTiming timing = RequestTiming.start(true);
+        timing.add(Phase.FILTERS, TimeUnit.MICROSECONDS.toNanos(1500));
+        timing.add(Phase.READ, TimeUnit.MICROSECONDS.toNanos(42));
+        timing.add(Phase.RESOURCE, TimeUnit.MILLISECONDS.toNanos(12));
+
+        assertThat(timing.serverTimingHeader(), is("filters;dur=1.500, read;dur=0.042, resource;dur=12.000"));
+    }
+}
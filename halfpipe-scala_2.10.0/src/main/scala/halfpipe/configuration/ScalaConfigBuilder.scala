@@ -60,7 +60,7 @@ class ScalaConfigBuilder(conversionService: ConversionService) extends Configura
   builders.add(new DoubleBuilder)
 
   @SuppressWarnings(Array("unchecked"))
-  protected override def addCallback(config: Any, prop: Any, propertyCallback: PropertyCallback) {
+  protected override def addCallback(config: Any, prop: Any, propName: String, propertyCallback: PropertyCallback) {
     if (propertyCallback == null)
       return
 
@@ -75,15 +75,23 @@ class ScalaConfigBuilder(conversionService: ConversionService) extends Configura
         val scalaCallback = callback.asInstanceOf[AbstractScalaCallback[Configuration, _]]
         scalaCallback.config = config.asInstanceOf[Configuration]
         scalaCallback.setProp(property)
-        property.addCallback(scalaCallback)
+        property.addCallback(CallbackDispatcher.dispatch(scalaCallback, propertyCallback.dispatch(), propName))
       } else if (callback.isInstanceOf[Runnable]) {
-        property.addCallback(callback.asInstanceOf[Runnable])
+        property.addCallback(CallbackDispatcher.dispatch(callback.asInstanceOf[Runnable], propertyCallback.dispatch(), propName))
       } else {
         System.err.println("unknown callback class: "+callbackClass); //TODO: replace with logging
       }
 
     } else {
-      super.addCallback(config, prop, propertyCallback)
+      super.addCallback(config, prop, propName, propertyCallback)
+    }
+  }
+
+  protected override def addCallback(prop: Any, callback: Runnable) {
+    if (prop.isInstanceOf[ScalaPropertyWrapper[_]]) {
+      prop.asInstanceOf[ScalaPropertyWrapper[_]].addCallback(callback)
+    } else {
+      super.addCallback(prop, callback)
     }
   }
 }